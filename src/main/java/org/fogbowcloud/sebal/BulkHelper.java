@@ -1,5 +1,8 @@
 package org.fogbowcloud.sebal;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class BulkHelper {
 	
@@ -36,4 +39,145 @@ public class BulkHelper {
 		int xPartitionInterval = xImageInterval / numberOfPartitions;		
 		return xPartitionInterval;
 	}
+
+	/**
+	 * Same as {@link #getSelectedPartition}, but the bounds split the cost of
+	 * the columns, e.g. their valid pixels, instead of the width evenly.
+	 * Partitions keep at least one column when the interval allows it, and an
+	 * interval without cost is split in equal widths.
+	 *
+	 * @param columnCosts the cost of each column of the image, from column 0
+	 */
+	public static XPartitionInterval getBalancedPartition(int leftX, int rightX,
+			int numberOfPartitions, int partitionIndex, long[] columnCosts) {
+		if (partitionIndex < 1 || partitionIndex > numberOfPartitions) {
+			throw new IllegalArgumentException("There is no partition " + partitionIndex
+					+ " of " + numberOfPartitions);
+		}
+		int[] bounds = getBalancedBounds(leftX, rightX, numberOfPartitions, columnCosts);
+		return new XPartitionInterval(bounds[partitionIndex - 1], bounds[partitionIndex]);
+	}
+
+	protected static int[] getBalancedBounds(int leftX, int rightX, int numberOfPartitions,
+			long[] columnCosts) {
+		int[] bounds = splitInterval(leftX, rightX, numberOfPartitions);
+
+		// costs[k] is the cost of the columns before leftX + k
+		long[] costs = new long[rightX - leftX + 1];
+		for (int column = leftX; column < rightX; column++) {
+			long cost = column >= 0 && column < columnCosts.length ? columnCosts[column] : 0;
+			costs[column - leftX + 1] = costs[column - leftX] + cost;
+		}
+		long totalCost = costs[costs.length - 1];
+		if (totalCost == 0) {
+			return bounds;
+		}
+
+		int minWidth = rightX - leftX >= numberOfPartitions ? 1 : 0;
+		for (int partition = 1; partition < numberOfPartitions; partition++) {
+			long targetCost = totalCost * partition / numberOfPartitions;
+			int bound = Arrays.binarySearch(costs, targetCost);
+			if (bound < 0) {
+				// the nearest of the bounds around the target
+				bound = -bound - 1;
+				if (targetCost - costs[bound - 1] < costs[bound] - targetCost) {
+					bound--;
+				}
+			} else {
+				// the first of the bounds with the target cost
+				while (bound > 0 && costs[bound - 1] == targetCost) {
+					bound--;
+				}
+			}
+			bound += leftX;
+			bounds[partition] = Math.min(Math.max(bound, bounds[partition - 1] + minWidth),
+					rightX - (numberOfPartitions - partition) * minWidth);
+		}
+		return bounds;
+	}
+
+	/**
+	 * @return whether the number of partitions is a tile grid, see
+	 *         {@link #getSelectedTile}
+	 */
+	public static boolean isTileGrid(String partitions) {
+		return partitions.indexOf('x') >= 0;
+	}
+
+	/**
+	 * @param grid "ROWSxCOLUMNS", optionally followed by "+HALO" in pixels, e.g.
+	 *            "2x4+4"
+	 * @param tileIndex 1-based, in row-major order
+	 */
+	public static TilePartition getSelectedTile(int leftX, int upperY, int rightX, int lowerY,
+			String grid, int tileIndex) {
+		int[] gridSize = parseGrid(grid);
+		List<TilePartition> tiles = getTiles(leftX, upperY, rightX, lowerY, gridSize[0],
+				gridSize[1], gridSize[2]);
+		if (tileIndex < 1 || tileIndex > tiles.size()) {
+			throw new IllegalArgumentException("The grid [" + grid + "] has no tile " + tileIndex);
+		}
+		return tiles.get(tileIndex - 1);
+	}
+
+	/**
+	 * Splits the image in rows x columns tiles, each axis being split as
+	 * {@link #getSelectedPartition} splits the X interval, so a single row
+	 * gives the same partitions.
+	 */
+	public static List<TilePartition> getTiles(int leftX, int upperY, int rightX, int lowerY,
+			int rows, int columns, int halo) {
+		if (halo < 0) {
+			throw new IllegalArgumentException("Invalid halo [" + halo + "]");
+		}
+		int[] xBounds = splitInterval(leftX, rightX, columns);
+		int[] yBounds = splitInterval(upperY, lowerY, rows);
+
+		List<TilePartition> tiles = new ArrayList<TilePartition>(rows * columns);
+		for (int row = 0; row < rows; row++) {
+			for (int column = 0; column < columns; column++) {
+				tiles.add(new TilePartition(row * columns + column + 1, row + 1, column + 1,
+						xBounds[column], xBounds[column + 1], yBounds[row], yBounds[row + 1],
+						Math.max(leftX, xBounds[column] - halo),
+						Math.min(rightX, xBounds[column + 1] + halo),
+						Math.max(upperY, yBounds[row] - halo),
+						Math.min(lowerY, yBounds[row + 1] + halo)));
+			}
+		}
+		return tiles;
+	}
+
+	/**
+	 * @return the parts + 1 bounds of the parts of the interval
+	 */
+	protected static int[] splitInterval(int begin, int end, int parts) {
+		int interval = calcXInterval(begin, end, parts);
+		int[] bounds = new int[parts + 1];
+		for (int part = 0; part < parts; part++) {
+			bounds[part] = begin + part * interval;
+		}
+		bounds[parts] = end;
+		return bounds;
+	}
+
+	/**
+	 * @return the rows, columns and halo of the grid
+	 */
+	protected static int[] parseGrid(String grid) {
+		int[] gridSize;
+		try {
+			int columnsBegin = grid.indexOf('x') + 1;
+			int haloBegin = grid.indexOf('+') + 1;
+			gridSize = new int[] { Integer.parseInt(grid.substring(0, columnsBegin - 1)),
+					Integer.parseInt(haloBegin > 0 ? grid.substring(columnsBegin, haloBegin - 1)
+							: grid.substring(columnsBegin)),
+					haloBegin > 0 ? Integer.parseInt(grid.substring(haloBegin)) : 0 };
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException("Invalid tile grid [" + grid + "]", e);
+		}
+		if (gridSize[0] < 1 || gridSize[1] < 1) {
+			throw new IllegalArgumentException("Invalid tile grid [" + grid + "]");
+		}
+		return gridSize;
+	}
 }
@@ -0,0 +1,274 @@
+package org.fogbowcloud.sebal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Size and georeferencing of a GeoTIFF, read from its first image directory
+ * without touching the raster data: ImageWidth, ImageLength,
+ * ModelTiepointTag, ModelPixelScaleTag and the GTRasterTypeGeoKey. The strip
+ * layout is also kept, so uncompressed rasters such as QA and Fmask bands
+ * can be scanned without an image library.
+ */
+public class GeoTiffHeader {
+
+	private static final int CLASSIC_TIFF = 42;
+	private static final int ENTRY_SIZE = 12;
+
+	private static final int IMAGE_WIDTH = 256;
+	private static final int IMAGE_LENGTH = 257;
+	private static final int BITS_PER_SAMPLE = 258;
+	private static final int COMPRESSION = 259;
+	private static final int STRIP_OFFSETS = 273;
+	private static final int SAMPLES_PER_PIXEL = 277;
+	private static final int ROWS_PER_STRIP = 278;
+	private static final int MODEL_PIXEL_SCALE = 33550;
+	private static final int MODEL_TIEPOINT = 33922;
+	private static final int GEO_KEY_DIRECTORY = 34735;
+
+	private static final int TYPE_SHORT = 3;
+	private static final int NO_COMPRESSION = 1;
+	private static final int RASTER_TYPE_GEO_KEY = 1025;
+	private static final int RASTER_PIXEL_IS_POINT = 2;
+
+	private final int width;
+	private final int height;
+	private final double[] tiePoint;
+	private final double[] pixelScale;
+	private final boolean pixelIsPoint;
+
+	private ByteOrder order;
+	private int compression = NO_COMPRESSION;
+	private int bitsPerSample = 1;
+	private int samplesPerPixel = 1;
+	private long rowsPerStrip;
+	private long[] stripOffsets;
+
+	protected GeoTiffHeader(int width, int height, double[] tiePoint, double[] pixelScale,
+			boolean pixelIsPoint) {
+		this.width = width;
+		this.height = height;
+		this.tiePoint = tiePoint;
+		this.pixelScale = pixelScale;
+		this.pixelIsPoint = pixelIsPoint;
+		this.rowsPerStrip = height;
+	}
+
+	public static GeoTiffHeader read(File tiffFile) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(tiffFile, "r");
+		try {
+			byte[] header = new byte[8];
+			file.readFully(header);
+			ByteOrder order;
+			if (header[0] == 'I' && header[1] == 'I') {
+				order = ByteOrder.LITTLE_ENDIAN;
+			} else if (header[0] == 'M' && header[1] == 'M') {
+				order = ByteOrder.BIG_ENDIAN;
+			} else {
+				throw new IOException("[" + tiffFile + "] is not a TIFF file");
+			}
+			ByteBuffer headerBuffer = ByteBuffer.wrap(header).order(order);
+			if (headerBuffer.getShort(2) != CLASSIC_TIFF) {
+				throw new IOException("[" + tiffFile + "] is not a classic TIFF file");
+			}
+
+			file.seek(headerBuffer.getInt(4) & 0xffffffffL);
+			byte[] entryCount = new byte[2];
+			file.readFully(entryCount);
+			byte[] directory = new byte[(ByteBuffer.wrap(entryCount).order(order).getShort() & 0xffff)
+					* ENTRY_SIZE];
+			file.readFully(directory);
+			ByteBuffer entries = ByteBuffer.wrap(directory).order(order);
+
+			int width = -1;
+			int height = -1;
+			double[] tiePoint = null;
+			double[] pixelScale = null;
+			boolean pixelIsPoint = false;
+			int compression = NO_COMPRESSION;
+			int bitsPerSample = 1;
+			int samplesPerPixel = 1;
+			long rowsPerStrip = -1;
+			long[] stripOffsets = null;
+			for (int entry = 0; entry < directory.length; entry += ENTRY_SIZE) {
+				int tag = entries.getShort(entry) & 0xffff;
+				if (tag == IMAGE_WIDTH) {
+					width = getInteger(entries, entry);
+				} else if (tag == IMAGE_LENGTH) {
+					height = getInteger(entries, entry);
+				} else if (tag == MODEL_TIEPOINT) {
+					tiePoint = getDoubles(file, entries, entry, order);
+				} else if (tag == MODEL_PIXEL_SCALE) {
+					pixelScale = getDoubles(file, entries, entry, order);
+				} else if (tag == GEO_KEY_DIRECTORY) {
+					pixelIsPoint = isPixelIsPoint(getValues(file, entries, entry, 2, order));
+				} else if (tag == COMPRESSION) {
+					compression = getInteger(entries, entry);
+				} else if (tag == BITS_PER_SAMPLE) {
+					bitsPerSample = getInteger(entries, entry);
+				} else if (tag == SAMPLES_PER_PIXEL) {
+					samplesPerPixel = getInteger(entries, entry);
+				} else if (tag == ROWS_PER_STRIP) {
+					rowsPerStrip = getInteger(entries, entry) & 0xffffffffL;
+				} else if (tag == STRIP_OFFSETS) {
+					stripOffsets = getLongs(file, entries, entry, order);
+				}
+			}
+
+			if (width <= 0 || height <= 0 || tiePoint == null || tiePoint.length < 6
+					|| pixelScale == null || pixelScale.length < 2) {
+				throw new IOException("[" + tiffFile + "] is not georeferenced by tie point");
+			}
+			GeoTiffHeader tiffHeader = new GeoTiffHeader(width, height, tiePoint, pixelScale,
+					pixelIsPoint);
+			tiffHeader.order = order;
+			tiffHeader.compression = compression;
+			tiffHeader.bitsPerSample = bitsPerSample;
+			tiffHeader.samplesPerPixel = samplesPerPixel;
+			tiffHeader.rowsPerStrip = rowsPerStrip > 0 ? rowsPerStrip : height;
+			tiffHeader.stripOffsets = stripOffsets;
+			return tiffHeader;
+		} finally {
+			file.close();
+		}
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return the model easting of the left edge of pixel column i
+	 */
+	public double getModelX(double i) {
+		return tiePoint[3] + (i - tiePoint[0] - getPixelOffset()) * pixelScale[0];
+	}
+
+	/**
+	 * @return the model northing of the top edge of pixel row j
+	 */
+	public double getModelY(double j) {
+		return tiePoint[4] - (j - tiePoint[1] - getPixelOffset()) * pixelScale[1];
+	}
+
+	/**
+	 * Counts, in each column, the pixels whose first sample is the given value.
+	 * The raster is read a row at a time.
+	 *
+	 * @throws IOException if the raster is not in uncompressed 8 or 16 bit
+	 *             strips
+	 */
+	public long[] countPerColumn(File tiffFile, int value) throws IOException {
+		if (compression != NO_COMPRESSION || stripOffsets == null
+				|| (bitsPerSample != 8 && bitsPerSample != 16)) {
+			throw new IOException("[" + tiffFile
+					+ "] is not in uncompressed 8 or 16 bit strips");
+		}
+		int sampleSize = bitsPerSample / 8;
+		int pixelSize = sampleSize * samplesPerPixel;
+		byte[] row = new byte[width * pixelSize];
+		ByteBuffer rowBuffer = ByteBuffer.wrap(row).order(order);
+
+		long[] counts = new long[width];
+		RandomAccessFile file = new RandomAccessFile(tiffFile, "r");
+		try {
+			for (int j = 0; j < height; j++) {
+				int strip = (int) (j / rowsPerStrip);
+				if (strip >= stripOffsets.length) {
+					throw new IOException("[" + tiffFile + "] has no strip for row " + j);
+				}
+				file.seek(stripOffsets[strip] + (j % rowsPerStrip) * row.length);
+				file.readFully(row);
+
+				for (int i = 0, offset = 0; i < width; i++, offset += pixelSize) {
+					int sample = sampleSize == 1 ? row[offset] & 0xff
+							: rowBuffer.getShort(offset) & 0xffff;
+					if (sample == value) {
+						counts[i]++;
+					}
+				}
+			}
+		} finally {
+			file.close();
+		}
+		return counts;
+	}
+
+	/**
+	 * A PixelIsPoint tie point is the center of its pixel, half a pixel from
+	 * the edges.
+	 */
+	private double getPixelOffset() {
+		return pixelIsPoint ? 0.5 : 0;
+	}
+
+	private static int getInteger(ByteBuffer entries, int entry) {
+		if ((entries.getShort(entry + 2) & 0xffff) == TYPE_SHORT) {
+			return entries.getShort(entry + 8) & 0xffff;
+		}
+		return entries.getInt(entry + 8);
+	}
+
+	private static long[] getLongs(RandomAccessFile file, ByteBuffer entries, int entry,
+			ByteOrder order) throws IOException {
+		boolean shorts = (entries.getShort(entry + 2) & 0xffff) == TYPE_SHORT;
+		ByteBuffer values = getValues(file, entries, entry, shorts ? 2 : 4, order);
+		long[] longs = new long[values.remaining() / (shorts ? 2 : 4)];
+		for (int i = 0; i < longs.length; i++) {
+			longs[i] = shorts ? values.getShort() & 0xffff : values.getInt() & 0xffffffffL;
+		}
+		return longs;
+	}
+
+	private static double[] getDoubles(RandomAccessFile file, ByteBuffer entries, int entry,
+			ByteOrder order) throws IOException {
+		ByteBuffer values = getValues(file, entries, entry, 8, order);
+		double[] doubles = new double[values.remaining() / 8];
+		for (int i = 0; i < doubles.length; i++) {
+			doubles[i] = values.getDouble();
+		}
+		return doubles;
+	}
+
+	/**
+	 * @return the values of an entry, stored in the entry itself when they fit
+	 *         in 4 bytes
+	 */
+	private static ByteBuffer getValues(RandomAccessFile file, ByteBuffer entries, int entry,
+			int valueSize, ByteOrder order) throws IOException {
+		int size = entries.getInt(entry + 4) * valueSize;
+		byte[] values = new byte[size];
+		if (size <= 4) {
+			for (int i = 0; i < size; i++) {
+				values[i] = entries.get(entry + 8 + i);
+			}
+		} else {
+			file.seek(entries.getInt(entry + 8) & 0xffffffffL);
+			file.readFully(values);
+		}
+		return ByteBuffer.wrap(values).order(order);
+	}
+
+	/**
+	 * The GeoKey directory is a 4 short header followed by KeyID,
+	 * TIFFTagLocation, Count and Value_Offset of each key.
+	 */
+	private static boolean isPixelIsPoint(ByteBuffer geoKeys) {
+		int keyCount = geoKeys.getShort(6) & 0xffff;
+		for (int key = 1; key <= keyCount && (key + 1) * 8 <= geoKeys.limit(); key++) {
+			int keyId = geoKeys.getShort(key * 8) & 0xffff;
+			int location = geoKeys.getShort(key * 8 + 2) & 0xffff;
+			if (keyId == RASTER_TYPE_GEO_KEY && location == 0) {
+				return (geoKeys.getShort(key * 8 + 6) & 0xffff) == RASTER_PIXEL_IS_POINT;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,77 @@
+package org.fogbowcloud.sebal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.fogbowcloud.sebal.util.SEBALAppConstants;
+
+/**
+ * Parses Landsat "_MTL.txt" files into {@link SceneMetadata}, without BEAM or
+ * GeoTools.
+ *
+ * The text is scanned once as "KEY = value" lines. Groups are dropped, MTL
+ * keys being unique, and values lose their surrounding quotes.
+ */
+public class MTLParser {
+
+	public static SceneMetadata parse(File mtlFile) throws IOException {
+		return parse(FileUtils.readFileToString(mtlFile, SEBALAppConstants.FILE_ENCODING));
+	}
+
+	public static SceneMetadata parse(String text) {
+		return new SceneMetadata(parseValues(text));
+	}
+
+	protected static Map<String, String> parseValues(String text) {
+		Map<String, String> values = new HashMap<String, String>();
+
+		int length = text.length();
+		int lineBegin = 0;
+		while (lineBegin < length) {
+			int separator = -1;
+			int lineEnd = lineBegin;
+			for (char c; lineEnd < length && (c = text.charAt(lineEnd)) != '\n' && c != '\r'; lineEnd++) {
+				if (c == '=' && separator < 0) {
+					separator = lineEnd;
+				}
+			}
+
+			if (separator >= 0) {
+				int keyBegin = skipSpaces(text, lineBegin, separator);
+				int keyEnd = trimSpaces(text, keyBegin, separator);
+				int valueBegin = skipSpaces(text, separator + 1, lineEnd);
+				int valueEnd = trimSpaces(text, valueBegin, lineEnd);
+				if (valueBegin < valueEnd && text.charAt(valueBegin) == '"') {
+					valueBegin++;
+				}
+				if (valueBegin < valueEnd && text.charAt(valueEnd - 1) == '"') {
+					valueEnd--;
+				}
+
+				String key = text.substring(keyBegin, keyEnd);
+				if (!key.equals("GROUP") && !key.equals("END_GROUP")) {
+					values.put(key, text.substring(valueBegin, valueEnd));
+				}
+			}
+			lineBegin = lineEnd + 1;
+		}
+		return values;
+	}
+
+	private static int skipSpaces(String text, int begin, int end) {
+		while (begin < end && text.charAt(begin) <= ' ') {
+			begin++;
+		}
+		return begin;
+	}
+
+	private static int trimSpaces(String text, int begin, int end) {
+		while (end > begin && text.charAt(end - 1) <= ' ') {
+			end--;
+		}
+		return end;
+	}
+}
@@ -0,0 +1,261 @@
+package org.fogbowcloud.sebal;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.FileAppender;
+import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.spi.Filter;
+import org.apache.log4j.spi.LoggingEvent;
+import org.esa.beam.dataio.landsat.geotiff.LandsatGeotiffReader;
+import org.esa.beam.dataio.landsat.geotiff.LandsatGeotiffReaderPlugin;
+import org.fogbowcloud.sebal.util.SEBALAppConstants;
+import org.geotools.referencing.ReferencingFactoryFinder;
+
+/**
+ * Runs {@link PreProcessMain} jobs in a single long-lived JVM, so class
+ * loading and the BEAM and GeoTools factories are initialized once instead of
+ * once per scene and partition.
+ *
+ * A job is a "name.job" file in the spool directory with the arguments of
+ * PreProcessMain, one per line. The daemon claims it by renaming it to
+ * "name.running", so many daemons may share a spool, and logs the run to
+ * "name.log", including what the threads it starts log. When the job ends,
+ * its exit status (0 or 1) is written to "name.exit" and the job file is
+ * renamed to "name.done".
+ *
+ * Run it with [spool directory] [concurrent jobs] [poll interval in millis],
+ * the last two being optional.
+ */
+public class PreProcessDaemon {
+
+	private static final Logger LOGGER = Logger.getLogger(PreProcessDaemon.class);
+
+	protected static final String JOB_SUFFIX = ".job";
+	protected static final String RUNNING_SUFFIX = ".running";
+	protected static final String DONE_SUFFIX = ".done";
+	protected static final String LOG_SUFFIX = ".log";
+	protected static final String EXIT_SUFFIX = ".exit";
+
+	/**
+	 * MDC key holding the name of the job, inherited by the threads a job
+	 * starts.
+	 */
+	public static final String JOB_MDC_KEY = "preprocessJob";
+
+	private static final long DEFAULT_POLL_INTERVAL_MILLIS = 1000;
+	private static final String LOG_PATTERN = "%d{yyyy-MM-dd HH:mm:ss} %-5p %c{1}:%L - %m%n";
+
+	private final File spoolDir;
+	private final Semaphore freeSlots;
+	private final long pollIntervalMillis;
+	private final ExecutorService executor;
+
+	public PreProcessDaemon(File spoolDir, int concurrentJobs, long pollIntervalMillis) {
+		this.spoolDir = spoolDir;
+		this.freeSlots = new Semaphore(concurrentJobs);
+		this.pollIntervalMillis = pollIntervalMillis;
+		this.executor = Executors.newFixedThreadPool(concurrentJobs, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "preprocess-job");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1 || args.length > 3) {
+			System.err.println("Usage: PreProcessDaemon <spool dir> [concurrent jobs]"
+					+ " [poll interval millis]");
+			System.exit(1);
+		}
+
+		File spoolDir = new File(args[0]);
+		int concurrentJobs = args.length > 1 ? Integer.parseInt(args[1])
+				: Runtime.getRuntime().availableProcessors();
+		long pollIntervalMillis = args.length > 2 ? Long.parseLong(args[2])
+				: DEFAULT_POLL_INTERVAL_MILLIS;
+
+		new PreProcessDaemon(spoolDir, concurrentJobs, pollIntervalMillis).run();
+	}
+
+	/**
+	 * Polls the spool until interrupted.
+	 */
+	public void run() throws InterruptedException {
+		LOGGER.info("Preprocessing jobs from [" + spoolDir + "]");
+		warmUp();
+
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				pollSpool();
+				Thread.sleep(pollIntervalMillis);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Loads the product reader and the referencing factories before the first
+	 * job needs them.
+	 */
+	protected void warmUp() {
+		long now = System.currentTimeMillis();
+		try {
+			new LandsatGeotiffReader(new LandsatGeotiffReaderPlugin());
+			ReferencingFactoryFinder.getMathTransformFactory(null);
+			LOGGER.info("Warm up time [" + (System.currentTimeMillis() - now) + "] ms");
+		} catch (Throwable e) {
+			LOGGER.warn("Could not warm up, jobs will initialize what they need", e);
+		}
+	}
+
+	/**
+	 * Claims as many pending jobs, in name order, as there are free slots.
+	 *
+	 * @return the names of the jobs started
+	 */
+	protected List<String> pollSpool() {
+		List<String> startedJobs = new ArrayList<String>();
+
+		File[] jobFiles = spoolDir.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.isFile() && file.getName().endsWith(JOB_SUFFIX);
+			}
+		});
+		if (jobFiles == null) {
+			LOGGER.warn("Could not list spool [" + spoolDir + "]");
+			return startedJobs;
+		}
+		Arrays.sort(jobFiles);
+
+		for (File jobFile : jobFiles) {
+			if (!freeSlots.tryAcquire()) {
+				break;
+			}
+			String jobName = jobFile.getName().substring(0,
+					jobFile.getName().length() - JOB_SUFFIX.length());
+			File runningFile = new File(spoolDir, jobName + RUNNING_SUFFIX);
+			if (!jobFile.renameTo(runningFile)) {
+				// claimed by another daemon
+				freeSlots.release();
+				continue;
+			}
+
+			LOGGER.info("Starting job [" + jobName + "]");
+			executor.execute(new Job(jobName, runningFile));
+			startedJobs.add(jobName);
+		}
+		return startedJobs;
+	}
+
+	protected void runJob(String[] args) throws Exception {
+		PreProcessMain.run(args);
+	}
+
+	protected static String[] readArguments(File jobFile) throws IOException {
+		List<String> args = new ArrayList<String>();
+		for (String line : FileUtils.readLines(jobFile, SEBALAppConstants.FILE_ENCODING)) {
+			if (!line.trim().isEmpty()) {
+				args.add(line.trim());
+			}
+		}
+		// the Fmask file is an optional last argument
+		if (args.size() < PreProcessMain.NUMBER_OF_ARGUMENTS
+				|| args.size() > PreProcessMain.NUMBER_OF_ARGUMENTS + 1) {
+			throw new IOException("[" + jobFile + "] has " + args.size() + " arguments instead of "
+					+ PreProcessMain.NUMBER_OF_ARGUMENTS);
+		}
+		return args.toArray(new String[args.size()]);
+	}
+
+	private class Job implements Runnable {
+
+		private final String name;
+		private final File runningFile;
+
+		Job(String name, File runningFile) {
+			this.name = name;
+			this.runningFile = runningFile;
+		}
+
+		@Override
+		public void run() {
+			Thread thread = Thread.currentThread();
+			String threadName = thread.getName();
+			thread.setName("preprocess-job-" + name);
+
+			FileAppender jobLog = null;
+			int exitStatus = 1;
+			long now = System.currentTimeMillis();
+			MDC.put(JOB_MDC_KEY, name);
+			try {
+				jobLog = new FileAppender(new PatternLayout(LOG_PATTERN),
+						new File(spoolDir, name + LOG_SUFFIX).getPath(), false);
+				jobLog.addFilter(new JobFilter(name));
+				Logger.getRootLogger().addAppender(jobLog);
+
+				runJob(readArguments(runningFile));
+				exitStatus = 0;
+			} catch (Throwable e) {
+				LOGGER.error("Job [" + name + "] failed", e);
+			} finally {
+				LOGGER.info("Job [" + name + "] exited with status [" + exitStatus + "] in ["
+						+ (System.currentTimeMillis() - now) + "] ms");
+				if (jobLog != null) {
+					Logger.getRootLogger().removeAppender(jobLog);
+					jobLog.close();
+				}
+				MDC.remove(JOB_MDC_KEY);
+				finish(exitStatus);
+				thread.setName(threadName);
+				freeSlots.release();
+			}
+		}
+
+		private void finish(int exitStatus) {
+			try {
+				FileUtils.writeStringToFile(new File(spoolDir, name + EXIT_SUFFIX),
+						exitStatus + "\n", SEBALAppConstants.FILE_ENCODING);
+			} catch (IOException e) {
+				LOGGER.error("Could not write the exit status of job [" + name + "]", e);
+			}
+			if (!runningFile.renameTo(new File(spoolDir, name + DONE_SUFFIX))) {
+				LOGGER.error("Could not mark job [" + name + "] as done");
+			}
+		}
+	}
+
+	/**
+	 * Keeps the events logged on behalf of a job, by its thread or by the
+	 * threads it started, concurrent jobs logging to the same loggers.
+	 */
+	private static class JobFilter extends Filter {
+
+		private final String jobName;
+
+		JobFilter(String jobName) {
+			this.jobName = jobName;
+		}
+
+		@Override
+		public int decide(LoggingEvent event) {
+			return jobName.equals(event.getMDC(JOB_MDC_KEY)) ? NEUTRAL : DENY;
+		}
+	}
+}
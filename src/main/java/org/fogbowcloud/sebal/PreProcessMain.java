@@ -1,14 +1,30 @@
 package org.fogbowcloud.sebal;
 
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.util.Properties;
 
+import org.apache.log4j.Logger;
+import org.fogbowcloud.sebal.util.SEBALAppConstants;
 import org.fogbowcloud.sebal.wrapper.RWrapper;
 import org.fogbowcloud.sebal.wrapper.TaskType;
 
 public class PreProcessMain {
 
+	private static final Logger LOGGER = Logger.getLogger(PreProcessMain.class);
+
+	public static final int NUMBER_OF_ARGUMENTS = 12;
+
 	public static void main(String[] args) throws Exception {
+		run(args);
+	}
+
+	/**
+	 * Preprocesses a partition of a scene, see {@link PreProcessDaemon} to run
+	 * many in the same JVM.
+	 */
+	public static void run(String[] args) throws Exception {
 		String imageName = args[0];
 		String imagesPath = args[1];
 		String mtlFilePath = args[2];
@@ -19,7 +35,8 @@ public class PreProcessMain {
 		int rightX = Integer.parseInt(args[6]);
 		int lowerY = Integer.parseInt(args[7]);
 
-		int numberOfPartitions = Integer.parseInt(args[8]);
+		// a number of X partitions or a tile grid, see BulkHelper
+		String partitions = args[8];
 		int partitionIndex = Integer.parseInt(args[9]);
 
 		String boundingBoxPath = args[10];
@@ -27,15 +44,64 @@ public class PreProcessMain {
 		String confFile = args[11];
 		Properties properties = new Properties();
 		FileInputStream input = new FileInputStream(confFile);
-		properties.load(input);
+		try {
+			properties.load(input);
+		} finally {
+			input.close();
+		}
 
-		XPartitionInterval imagePartition = BulkHelper.getSelectedPartition(leftX, rightX,
-				numberOfPartitions, partitionIndex);
+		RWrapper rwrapper;
+		if (BulkHelper.isTileGrid(partitions)) {
+			TilePartition tile = BulkHelper.getSelectedTile(leftX, upperY, rightX, lowerY,
+					partitions, partitionIndex);
+			rwrapper = new RWrapper(outputDir, imageName, mtlFilePath, tile, boundingBoxPath,
+					properties);
+		} else {
+			// an optional thirteenth argument, the Fmask file of the scene
+			String maskFilePath = args.length > NUMBER_OF_ARGUMENTS ? args[NUMBER_OF_ARGUMENTS]
+					: null;
+			XPartitionInterval imagePartition = getSelectedPartition(leftX, rightX,
+					Integer.parseInt(partitions), partitionIndex, mtlFilePath, maskFilePath,
+					properties);
 
-		RWrapper rwrapper = new RWrapper(outputDir, imageName, mtlFilePath,
-				imagePartition.getIBegin(), imagePartition.getIFinal(), upperY, lowerY,
-				boundingBoxPath, properties);
+			rwrapper = new RWrapper(outputDir, imageName, mtlFilePath,
+					imagePartition.getIBegin(), imagePartition.getIFinal(), upperY, lowerY,
+					boundingBoxPath, properties);
+		}
 		rwrapper.doTask(TaskType.PREPROCESS);
 	}
 
+	/**
+	 * Splits the valid pixels of the Fmask evenly when partition_by_valid_pixels
+	 * is set, so cloudy partitions are not left nearly empty, and uses equal
+	 * widths when there is no mask.
+	 *
+	 * Each partition computes its bounds in its own process, so an unreadable
+	 * mask fails the partition instead of falling back to equal widths, which
+	 * would overlap or leave gaps with the balanced bounds of its siblings.
+	 */
+	private static XPartitionInterval getSelectedPartition(int leftX, int rightX,
+			int numberOfPartitions, int partitionIndex, String mtlFilePath, String maskFilePath,
+			Properties properties) throws IOException {
+		boolean byValidPixels = Boolean.parseBoolean(properties.getProperty(
+				SEBALAppConstants.PARTITION_BY_VALID_PIXELS, "false").trim());
+		if (!byValidPixels || maskFilePath == null) {
+			return BulkHelper.getSelectedPartition(leftX, rightX, numberOfPartitions,
+					partitionIndex);
+		}
+
+		File maskFile = new File(maskFilePath);
+		try {
+			ValidPixelHistogram histogram = ValidPixelHistogram.read(maskFile,
+					ValidPixelHistogram.getClearValue(MTLParser.parse(new File(mtlFilePath))),
+					ValidPixelHistogram.getCacheFile(properties.getProperty(
+							SEBALAppConstants.VALID_PIXEL_HISTOGRAM_CACHE_PATH), maskFile));
+			return BulkHelper.getBalancedPartition(leftX, rightX, numberOfPartitions,
+					partitionIndex, histogram.getColumnCounts());
+		} catch (IOException e) {
+			LOGGER.error("Could not count the valid pixels of [" + maskFile + "]", e);
+			throw e;
+		}
+	}
+
 }
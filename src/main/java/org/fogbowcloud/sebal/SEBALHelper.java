@@ -4,22 +4,14 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Properties;
-import java.util.StringTokenizer;
-import java.util.regex.Pattern;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.http.HttpException;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
 import org.apache.log4j.Logger;
 import org.esa.beam.dataio.landsat.geotiff.LandsatGeotiffReader;
 import org.esa.beam.dataio.landsat.geotiff.LandsatGeotiffReaderPlugin;
@@ -30,24 +22,14 @@ import org.esa.beam.framework.datamodel.PixelPos;
 import org.esa.beam.framework.datamodel.Product;
 import org.esa.beam.framework.datamodel.ProductData.UTC;
 import org.fogbowcloud.sebal.model.image.BoundingBox;
+import org.fogbowcloud.sebal.parsers.StationData;
 import org.fogbowcloud.sebal.parsers.WeatherStation;
 import org.fogbowcloud.sebal.util.SEBALAppConstants;
-import org.geotools.referencing.CRS;
-import org.geotools.referencing.ReferencingFactoryFinder;
-import org.geotools.referencing.factory.ReferencingFactoryContainer;
-import org.opengis.parameter.ParameterValueGroup;
 import org.opengis.referencing.FactoryException;
-import org.opengis.referencing.crs.GeographicCRS;
-import org.opengis.referencing.crs.ProjectedCRS;
-import org.opengis.referencing.cs.CartesianCS;
-import org.opengis.referencing.operation.MathTransform;
-import org.opengis.referencing.operation.MathTransformFactory;
 import org.opengis.referencing.operation.TransformException;
 
 public class SEBALHelper {
 
-	private static Map<Integer, Integer> zoneToCentralMeridian = new HashMap<Integer, Integer>();
-
 	private static final Logger LOGGER = Logger.getLogger(SEBALHelper.class);
 
 	public static Product readProduct(String mtlFileName,
@@ -58,10 +40,40 @@ public class SEBALHelper {
 		return reader.readProductNodes(mtlFile, null);
 	}
 
+	/**
+	 * Reads the acquisition date and scene center time straight from the MTL
+	 * text, without reading the product, so work that only depends on the date
+	 * can start early.
+	 *
+	 * @return the acquisition time, in UTC, or null if the MTL has no
+	 *         acquisition date
+	 */
+	public static Date getAcquisitionDate(String mtlFileName) throws IOException {
+		return MTLParser.parse(new File(mtlFileName)).getAcquisitionTime();
+	}
+
+	/**
+	 * Same as {@link #buildBoundingBox(List, Product)}, taking the zone and
+	 * upper left corner from the parsed MTL when it has them instead of
+	 * walking the metadata tree of the product.
+	 *
+	 * @param metadata the parsed MTL, or null
+	 */
 	public static BoundingBox buildBoundingBox(List<BoundingBoxVertice> boudingVertices,
-			Product product) throws Exception {
+			Product product, SceneMetadata metadata) throws Exception {
+		if (metadata != null) {
+			int zoneNumber = metadata.getUtmZone();
+			double ULx = metadata.getCornerEasting(SceneMetadata.Corner.UL);
+			double ULy = metadata.getCornerNorthing(SceneMetadata.Corner.UL);
+			if (zoneNumber >= 0 && !Double.isNaN(ULx) && !Double.isNaN(ULy)) {
+				return buildBoundingBox(boudingVertices, zoneNumber, ULx, ULy);
+			}
+		}
+		return buildBoundingBox(boudingVertices, product);
+	}
 
-		List<UTMCoordinate> utmCoordinates = new ArrayList<UTMCoordinate>();
+	public static BoundingBox buildBoundingBox(List<BoundingBoxVertice> boudingVertices,
+			Product product) throws Exception {
 
 		MetadataElement metadataRoot = product.getMetadataRoot();
 
@@ -69,25 +81,36 @@ public class SEBALHelper {
 				.getElement("PROJECTION_PARAMETERS").getAttribute("UTM_ZONE").getData()
 				.getElemInt();
 
-		int centralMeridian = SEBALHelper.centralMeridian(zoneNumber);
+		double ULx = metadataRoot.getElement("L1_METADATA_FILE").getElement("PRODUCT_METADATA")
+				.getAttribute("CORNER_UL_PROJECTION_X_PRODUCT").getData().getElemDouble();
+		double ULy = metadataRoot.getElement("L1_METADATA_FILE").getElement("PRODUCT_METADATA")
+				.getAttribute("CORNER_UL_PROJECTION_Y_PRODUCT").getData().getElemDouble();
 
-		for (BoundingBoxVertice boundingBoxVertice : boudingVertices) {
-			utmCoordinates.add(convertLatLonToUtm(boundingBoxVertice.getLat(),
-					boundingBoxVertice.getLon(), zoneNumber, centralMeridian));
-		}
+		return buildBoundingBox(boudingVertices, zoneNumber, ULx, ULy);
+	}
 
-		LOGGER.debug("Boundingbox UTM coordinates: " + utmCoordinates);
+	/**
+	 * @param ULx easting of the upper left corner of the product
+	 * @param ULy northing of the upper left corner of the product
+	 */
+	public static BoundingBox buildBoundingBox(List<BoundingBoxVertice> boudingVertices,
+			int zoneNumber, double ULx, double ULy) throws FactoryException, TransformException {
 
-		double x0 = SEBALHelper.getMinimunX(utmCoordinates);
-		double y0 = SEBALHelper.getMaximunY(utmCoordinates);
+		double[] coordinates = new double[boudingVertices.size() * 2];
+		for (int i = 0; i < boudingVertices.size(); i++) {
+			coordinates[2 * i] = boudingVertices.get(i).getLat();
+			coordinates[2 * i + 1] = boudingVertices.get(i).getLon();
+		}
+		// rounded to meters, as the vertices always were
+		double[] utmCoordinates = convertLatLonToUtm(coordinates, zoneNumber, 0);
 
-		double x1 = SEBALHelper.getMaximunX(utmCoordinates);
-		double y1 = SEBALHelper.getMinimunY(utmCoordinates);
+		LOGGER.debug("Boundingbox UTM coordinates: " + Arrays.toString(utmCoordinates));
 
-		double ULx = metadataRoot.getElement("L1_METADATA_FILE").getElement("PRODUCT_METADATA")
-				.getAttribute("CORNER_UL_PROJECTION_X_PRODUCT").getData().getElemDouble();
-		double ULy = metadataRoot.getElement("L1_METADATA_FILE").getElement("PRODUCT_METADATA")
-				.getAttribute("CORNER_UL_PROJECTION_Y_PRODUCT").getData().getElemDouble();
+		double x0 = SEBALHelper.getMinimun(utmCoordinates, 0);
+		double y0 = SEBALHelper.getMaximun(utmCoordinates, 1);
+
+		double x1 = SEBALHelper.getMaximun(utmCoordinates, 0);
+		double y1 = SEBALHelper.getMinimun(utmCoordinates, 1);
 
 		int offsetX = (int) ((x0 - ULx) / 30);
 		int offsetY = (int) ((ULy - y0) / 30);
@@ -98,118 +121,67 @@ public class SEBALHelper {
 		return boundingBox;
 	}
 
-	public static int centralMeridian(int zoneNumber) throws Exception {
-		Integer result = null;
-
-		if (zoneToCentralMeridian.get(zoneNumber) != null) {
-			result = zoneToCentralMeridian.get(zoneNumber);
-		} else {
-
-			CloseableHttpClient httpClient = HttpClients.createMinimal();
-
-			HttpGet homeGet = new HttpGet(
-					"http://www.spatialreference.org/ref/epsg/327" + zoneNumber + "/prettywkt/");
-			HttpResponse response = httpClient.execute(homeGet);
-			String responseStr = EntityUtils.toString(response.getEntity());
-
-			StringTokenizer tokenizedResponse = new StringTokenizer(responseStr, "\n");
-			while (tokenizedResponse.hasMoreTokens()) {
-				String line = tokenizedResponse.nextToken();
-
-				if (line.contains("central_meridian")) {
-					line = line.replaceAll(Pattern.quote("["), "");
-					line = line.replaceAll(Pattern.quote("]"), "");
-
-					StringTokenizer tokenizedLine = new StringTokenizer(line, ",");
-					tokenizedLine.nextToken();
-
-					int centralMeridian = Integer.parseInt(tokenizedLine.nextToken().trim());
-					zoneToCentralMeridian.put(zoneNumber, centralMeridian);
-					result = centralMeridian;
-				}
-			}
-		}
-
-		if (result == null) {
-			throw new Exception(
-					"The central meridian was not found to zone number [" + zoneNumber + "]");
-		}
-		return result;
+	public static int centralMeridian(int zoneNumber) {
+		return UTMProjections.centralMeridian(zoneNumber);
 	}
 
-	private static double getMinimunX(List<UTMCoordinate> vertices) {
-		double minimunX = vertices.get(0).getEasting(); // initializing with first value
-		for (UTMCoordinate utmCoordinate : vertices) {
-			if (utmCoordinate.getEasting() < minimunX) {
-				minimunX = utmCoordinate.getEasting();
+	/**
+	 * @return the minimum of the coordinates of the pairs at the given index,
+	 *         0 for eastings and 1 for northings
+	 */
+	private static double getMinimun(double[] pairs, int index) {
+		double minimun = pairs[index]; // initializing with first value
+		for (int i = index; i < pairs.length; i += 2) {
+			if (pairs[i] < minimun) {
+				minimun = pairs[i];
 			}
 		}
-		return minimunX;
+		return minimun;
 	}
 
-	private static double getMaximunX(List<UTMCoordinate> vertices) {
-		double maximunX = vertices.get(0).getEasting();
-		for (UTMCoordinate utmCoordinate : vertices) {
-			if (utmCoordinate.getEasting() > maximunX) {
-				maximunX = utmCoordinate.getEasting();
+	private static double getMaximun(double[] pairs, int index) {
+		double maximun = pairs[index];
+		for (int i = index; i < pairs.length; i += 2) {
+			if (pairs[i] > maximun) {
+				maximun = pairs[i];
 			}
 		}
-		return maximunX;
+		return maximun;
 	}
 
-	private static double getMaximunY(List<UTMCoordinate> vertices) {
-		double maximunY = vertices.get(0).getNorthing();
-		for (UTMCoordinate utmCoordinate : vertices) {
-			if (utmCoordinate.getNorthing() > maximunY) {
-				maximunY = utmCoordinate.getNorthing();
-			}
-		}
-		return maximunY;
+	protected static UTMCoordinate convertLatLonToUtm(double latitude, double longitude,
+			int zoneNumber) throws FactoryException, TransformException {
+		return UTMProjections.toUTM(latitude, longitude, zoneNumber);
 	}
 
-	private static double getMinimunY(List<UTMCoordinate> vertices) {
-		double minimunY = vertices.get(0).getNorthing();
-		for (UTMCoordinate utmCoordinate : vertices) {
-			if (utmCoordinate.getNorthing() < minimunY) {
-				minimunY = utmCoordinate.getNorthing();
-			}
+	/**
+	 * Projects any number of points, e.g. vertices, stations or a grid of
+	 * pixels, to a UTM zone in a single transform call.
+	 *
+	 * @param coordinates latitude and longitude pairs
+	 * @param decimals decimal places the projected coordinates are rounded to,
+	 *            or a negative value to keep them unrounded
+	 * @return the easting and northing pairs, in meters
+	 */
+	public static double[] convertLatLonToUtm(double[] coordinates, int zoneNumber,
+			int decimals) throws FactoryException, TransformException {
+		int points = coordinates.length / 2;
+		double[] projected = new double[points * 2];
+		for (int i = 0; i < points; i++) {
+			// transforms take longitude first
+			projected[2 * i] = coordinates[2 * i + 1];
+			projected[2 * i + 1] = coordinates[2 * i];
 		}
-		return minimunY;
-	}
-
-	protected static UTMCoordinate convertLatLonToUtm(double latitude, double longitude,
-			double zoneNumber, double utmZoneCenterLongitude)
-			throws FactoryException, TransformException {
 
-		MathTransformFactory mtFactory = ReferencingFactoryFinder.getMathTransformFactory(null);
-		ReferencingFactoryContainer factories = new ReferencingFactoryContainer(null);
+		UTMProjections.getTransform(zoneNumber).transform(projected, 0, projected, 0, points);
 
-		GeographicCRS geoCRS = org.geotools.referencing.crs.DefaultGeographicCRS.WGS84;
-		CartesianCS cartCS = org.geotools.referencing.cs.DefaultCartesianCS.GENERIC_2D;
-
-		ParameterValueGroup parameters = mtFactory.getDefaultParameters("Transverse_Mercator");
-		parameters.parameter("central_meridian").setValue(utmZoneCenterLongitude);
-		parameters.parameter("latitude_of_origin").setValue(0.0);
-		parameters.parameter("scale_factor").setValue(0.9996);
-		parameters.parameter("false_easting").setValue(500000.0);
-		parameters.parameter("false_northing").setValue(0.0);
-
-		Map<String, String> properties = Collections.singletonMap("name",
-				"WGS 84 / UTM Zone " + zoneNumber);
-
-		@SuppressWarnings("deprecation")
-		ProjectedCRS projCRS = factories.createProjectedCRS(properties, geoCRS, null, parameters,
-				cartCS);
-
-		MathTransform transform = CRS.findMathTransform(geoCRS, projCRS);
-
-		double[] dest = new double[2];
-		transform.transform(new double[] { longitude, latitude }, 0, dest, 0, 1);
-
-		int easting = (int) Math.round(dest[0]);
-		int northing = (int) Math.round(dest[1]);
-
-		return new UTMCoordinate(easting, northing);
+		if (decimals >= 0) {
+			double scale = Math.pow(10, decimals);
+			for (int i = 0; i < projected.length; i++) {
+				projected[i] = Math.round(projected[i] * scale) / scale;
+			}
+		}
+		return projected;
 	}
 
 	public static String getWeatherFilePath(String outputDir, String mtlName,
@@ -251,42 +223,147 @@ public class SEBALHelper {
 	public static String getStationData(Properties properties, Product product, int iBegin,
 			int iFinal, int jBegin, int jFinal, BoundingBox boundingBox)
 			throws URISyntaxException, HttpException, IOException {
+		StationData stationData = getStationRecords(properties, product, iBegin, iFinal, jBegin,
+				jFinal, boundingBox);
+		return stationData == null ? null : stationData.toCSV();
+	}
 
-		LOGGER.info("Starting station collect...");
+	/**
+	 * Same as {@link #getStationData}, keeping the records to be streamed.
+	 */
+	public static StationData getStationRecords(Properties properties, Product product,
+			int iBegin, int iFinal, int jBegin, int jFinal, BoundingBox boundingBox)
+			throws URISyntaxException, HttpException, IOException {
+		return getStationRecords(new WeatherStation(properties), product, iBegin, iFinal, jBegin,
+				jFinal, boundingBox);
+	}
 
-		Locale.setDefault(Locale.ROOT);
+	/**
+	 * Same as above, searching with the given station, e.g. one whose index
+	 * was prefetched while the product was read.
+	 */
+	public static StationData getStationRecords(WeatherStation station, Product product,
+			int iBegin, int iFinal, int jBegin, int jFinal, BoundingBox boundingBox) {
+		return getStationRecords(station, product, null, iBegin, iFinal, jBegin, jFinal,
+				boundingBox);
+	}
+
+	/**
+	 * Same as above, taking the scene center time from the parsed MTL, or null,
+	 * when it has one.
+	 */
+	public static StationData getStationRecords(WeatherStation station, Product product,
+			SceneMetadata metadata, int iBegin, int iFinal, int jBegin, int jFinal,
+			BoundingBox boundingBox) {
 
+		LOGGER.info("Starting station collect...");
+
+		// the raster size and the geocoding do not need the band data
 		Band bandAt = product.getBandAt(0);
-		bandAt.ensureRasterData();
 
+		PixelPos pixelPos = getCenterPixel(bandAt.getRasterWidth(), bandAt.getRasterHeight(),
+				iBegin, iFinal, jBegin, jFinal, boundingBox);
+		GeoPos geoPos = bandAt.getGeoCoding().getGeoPos(pixelPos, null);
+
+		String sceneCenterTime = getSceneCenterTime(product, metadata);
+
+		UTC startTime = product.getStartTime();
+		return station.getStationRecords(toStationCoordinate(geoPos.getLat()),
+				toStationCoordinate(geoPos.getLon()), startTime.getAsDate(), sceneCenterTime);
+	}
+
+	/**
+	 * Same as above without reading the product: the scene geometry comes from
+	 * the MTL and from the header of the band 1 GeoTIFF, so no raster is read
+	 * and the BEAM reader is not initialized.
+	 *
+	 * @param metadata the parsed MTL file, see {@link MTLParser}
+	 * @throws IOException if the MTL or the GeoTIFF lack any needed value or
+	 *             the scene geometry cannot be projected
+	 */
+	public static StationData getStationRecords(WeatherStation station, String mtlFileName,
+			SceneMetadata metadata, List<BoundingBoxVertice> boundingBoxVertices, int iBegin,
+			int iFinal, int jBegin, int jFinal) throws IOException {
+
+		LOGGER.info("Starting station collect from metadata...");
+
+		String bandFileName = metadata.getBandFileName("1");
+		int zone = metadata.getUtmZone();
+		double ULx = metadata.getCornerEasting(SceneMetadata.Corner.UL);
+		double ULy = metadata.getCornerNorthing(SceneMetadata.Corner.UL);
+		String sceneCenterTime = metadata.getSceneCenterTime();
+		Date date = metadata.getAcquisitionTime();
+		if (bandFileName == null || zone < 0 || Double.isNaN(ULx) || Double.isNaN(ULy)
+				|| sceneCenterTime == null || date == null) {
+			throw new IOException("[" + mtlFileName + "] lacks the scene geometry or date");
+		}
+
+		GeoTiffHeader band = GeoTiffHeader
+				.read(new File(new File(mtlFileName).getAbsoluteFile().getParentFile(), bandFileName));
+
+		double[] latLon;
+		try {
+			BoundingBox boundingBox = null;
+			if (boundingBoxVertices.size() > 3) {
+				boundingBox = buildBoundingBox(boundingBoxVertices, zone, ULx, ULy);
+			}
+
+			PixelPos pixelPos = getCenterPixel(band.getWidth(), band.getHeight(), iBegin, iFinal,
+					jBegin, jFinal, boundingBox);
+			latLon = UTMProjections.toLatLon(band.getModelX(pixelPos.getX()),
+					band.getModelY(pixelPos.getY()), zone);
+		} catch (FactoryException | TransformException | IllegalArgumentException e) {
+			// e.g. an invalid UTM zone, the product path may still read the scene
+			throw new IOException("Could not project the scene of [" + mtlFileName + "]", e);
+		}
+
+		return station.getStationRecords(toStationCoordinate((float) latLon[0]),
+				toStationCoordinate((float) latLon[1]), date,
+				parseSceneCenterTime(sceneCenterTime));
+	}
+
+	/**
+	 * @return the pixel at the center of the part of the partition within the
+	 *         bounding box, the whole raster when there is none
+	 */
+	private static PixelPos getCenterPixel(int rasterWidth, int rasterHeight, int iBegin,
+			int iFinal, int jBegin, int jFinal, BoundingBox boundingBox) {
 		if (boundingBox == null) {
-			boundingBox = new BoundingBox(0, 0, bandAt.getRasterWidth(), bandAt.getRasterHeight());
+			boundingBox = new BoundingBox(0, 0, rasterWidth, rasterHeight);
 		}
 
 		int offSetX = boundingBox.getX();
 		int offSetY = boundingBox.getY();
 
-		int widthMax = Math.min(bandAt.getRasterWidth(),
-				Math.min(iFinal, offSetX + boundingBox.getW()));
+		int widthMax = Math.min(rasterWidth, Math.min(iFinal, offSetX + boundingBox.getW()));
 		int widthMin = Math.max(iBegin, offSetX);
 
-		int heightMax = Math.min(bandAt.getRasterHeight(),
-				Math.min(jFinal, offSetY + boundingBox.getH()));
+		int heightMax = Math.min(rasterHeight, Math.min(jFinal, offSetY + boundingBox.getH()));
 		int heightMin = Math.max(jBegin, offSetY);
 
 		int i = (widthMax - widthMin) / 2 + widthMin;
 		int j = (heightMax - heightMin) / 2 + heightMin;
 
-		PixelPos pixelPos = new PixelPos(i, j);
-		GeoPos geoPos = bandAt.getGeoCoding().getGeoPos(pixelPos, null);
-		double latitude = Double.valueOf(String.format("%.10g%n", geoPos.getLat()));
-		double longitude = Double.valueOf(String.format("%.10g%n", geoPos.getLon()));
+		return new PixelPos(i, j);
+	}
 
-		String sceneCenterTime = SEBALHelper.getSceneCenterTime(product);
+	/**
+	 * Geocoded coordinates are single precision, kept to 10 significant digits.
+	 */
+	private static double toStationCoordinate(float coordinate) {
+		Locale.setDefault(Locale.ROOT);
+		return Double.valueOf(String.format("%.10g%n", coordinate));
+	}
 
-		WeatherStation station = new WeatherStation(properties);
-		UTC startTime = product.getStartTime();
-		return station.getStationData(latitude, longitude, startTime.getAsDate(), sceneCenterTime);
+	/**
+	 * @param metadata the parsed MTL, read instead of the metadata tree of the
+	 *        product when it has a scene center time, or null
+	 */
+	public static String getSceneCenterTime(Product product, SceneMetadata metadata) {
+		if (metadata != null && metadata.getSceneCenterTime() != null) {
+			return parseSceneCenterTime(metadata.getSceneCenterTime());
+		}
+		return getSceneCenterTime(product);
 	}
 
 	public static String getSceneCenterTime(Product product) {
@@ -296,6 +373,10 @@ public class SEBALHelper {
 				.getElement("PRODUCT_METADATA").getAttribute("SCENE_CENTER_TIME").getData()
 				.toString();
 
+		return parseSceneCenterTime(sceneCenterTime);
+	}
+
+	private static String parseSceneCenterTime(String sceneCenterTime) {
 		LOGGER.info("Scene Center Time: [" + sceneCenterTime + "]");
 
 		String[] splitedTime = sceneCenterTime.split(":");
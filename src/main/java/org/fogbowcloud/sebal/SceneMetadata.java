@@ -0,0 +1,297 @@
+package org.fogbowcloud.sebal;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Typed, immutable view of the values of a Landsat MTL file, see
+ * {@link MTLParser}. Both the current key names and the older ones (e.g.
+ * ZONE_NUMBER, PRODUCT_UL_CORNER_MAPX, BAND1_FILE_NAME) are read.
+ *
+ * Missing values are null for text and dates, -1 for integers and NaN for
+ * decimals. Malformed numbers are treated as missing, so one bad value does
+ * not make the whole file unreadable. Band values are keyed by band name as
+ * it appears in the keys, e.g. "1", "10" or "6_VCID_1".
+ */
+public class SceneMetadata {
+
+	public enum Corner {
+		UL, UR, LL, LR
+	}
+
+	private static final String DEFAULT_ACQUISITION_TIME = "00:00:00";
+
+	private static final Logger LOGGER = Logger.getLogger(SceneMetadata.class);
+
+	/**
+	 * Latitude, longitude, easting and northing keys of each corner, in the
+	 * current and in the older format.
+	 */
+	private static final String[][] CORNER_KEYS = new String[Corner.values().length][];
+	static {
+		for (Corner corner : Corner.values()) {
+			CORNER_KEYS[corner.ordinal()] = new String[] { "CORNER_" + corner + "_LAT_PRODUCT",
+					"PRODUCT_" + corner + "_CORNER_LAT", "CORNER_" + corner + "_LON_PRODUCT",
+					"PRODUCT_" + corner + "_CORNER_LON",
+					"CORNER_" + corner + "_PROJECTION_X_PRODUCT",
+					"PRODUCT_" + corner + "_CORNER_MAPX",
+					"CORNER_" + corner + "_PROJECTION_Y_PRODUCT",
+					"PRODUCT_" + corner + "_CORNER_MAPY" };
+		}
+	}
+
+	private final Map<String, String> values;
+
+	private final String spacecraftId;
+	private final String sensorId;
+	private final int wrsPath;
+	private final int wrsRow;
+	private final int utmZone;
+	private final String dateAcquired;
+	private final String sceneCenterTime;
+	private final double sunElevation;
+	private final double sunAzimuth;
+
+	private final double[] cornerLatitudes = new double[Corner.values().length];
+	private final double[] cornerLongitudes = new double[Corner.values().length];
+	private final double[] cornerEastings = new double[Corner.values().length];
+	private final double[] cornerNorthings = new double[Corner.values().length];
+
+	private final Map<String, String> bandFileNames = new HashMap<String, String>();
+	private final Map<String, String> radianceMultipliers = new HashMap<String, String>();
+	private final Map<String, String> radianceAdditions = new HashMap<String, String>();
+	private final Map<String, String> reflectanceMultipliers = new HashMap<String, String>();
+	private final Map<String, String> reflectanceAdditions = new HashMap<String, String>();
+	private final Map<String, String> k1Constants = new HashMap<String, String>();
+	private final Map<String, String> k2Constants = new HashMap<String, String>();
+
+	/**
+	 * @param values the MTL values, owned by this object from then on
+	 */
+	protected SceneMetadata(Map<String, String> values) {
+		this.values = values;
+
+		this.spacecraftId = getText("SPACECRAFT_ID");
+		this.sensorId = getText("SENSOR_ID");
+		this.wrsPath = getInteger("WRS_PATH");
+		this.wrsRow = getInteger("WRS_ROW", "STARTING_ROW");
+		this.utmZone = getInteger("UTM_ZONE", "ZONE_NUMBER");
+		this.dateAcquired = getText("DATE_ACQUIRED", "ACQUISITION_DATE");
+		this.sceneCenterTime = getText("SCENE_CENTER_TIME", "SCENE_CENTER_SCAN_TIME");
+		this.sunElevation = getDecimal("SUN_ELEVATION");
+		this.sunAzimuth = getDecimal("SUN_AZIMUTH");
+
+		for (int corner = 0; corner < CORNER_KEYS.length; corner++) {
+			String[] keys = CORNER_KEYS[corner];
+			cornerLatitudes[corner] = getDecimal(keys[0], keys[1]);
+			cornerLongitudes[corner] = getDecimal(keys[2], keys[3]);
+			cornerEastings[corner] = getDecimal(keys[4], keys[5]);
+			cornerNorthings[corner] = getDecimal(keys[6], keys[7]);
+		}
+
+		// band keys are picked in a single pass, their values being parsed when
+		// asked for
+		for (Map.Entry<String, String> value : values.entrySet()) {
+			String key = value.getKey();
+			if (key.startsWith("FILE_NAME_BAND_")) {
+				bandFileNames.put(key.substring("FILE_NAME_BAND_".length()), value.getValue());
+			} else if (key.startsWith("BAND") && key.endsWith("_FILE_NAME")) {
+				bandFileNames.put(key.substring("BAND".length(), key.length() - "_FILE_NAME".length()),
+						value.getValue());
+			} else {
+				putBandValue(key, value.getValue(), "RADIANCE_MULT_BAND_", radianceMultipliers);
+				putBandValue(key, value.getValue(), "RADIANCE_ADD_BAND_", radianceAdditions);
+				putBandValue(key, value.getValue(), "REFLECTANCE_MULT_BAND_", reflectanceMultipliers);
+				putBandValue(key, value.getValue(), "REFLECTANCE_ADD_BAND_", reflectanceAdditions);
+				putBandValue(key, value.getValue(), "K1_CONSTANT_BAND_", k1Constants);
+				putBandValue(key, value.getValue(), "K2_CONSTANT_BAND_", k2Constants);
+			}
+		}
+	}
+
+	/**
+	 * @return the raw value of any MTL key, or null
+	 */
+	public String getValue(String key) {
+		return values.get(key);
+	}
+
+	public String getSpacecraftId() {
+		return spacecraftId;
+	}
+
+	public String getSensorId() {
+		return sensorId;
+	}
+
+	public int getWrsPath() {
+		return wrsPath;
+	}
+
+	public int getWrsRow() {
+		return wrsRow;
+	}
+
+	public int getUtmZone() {
+		return utmZone;
+	}
+
+	/**
+	 * @return the acquisition date, as yyyy-MM-dd
+	 */
+	public String getDateAcquired() {
+		return dateAcquired;
+	}
+
+	/**
+	 * @return the scene center time, as HH:mm:ss.sssssssZ
+	 */
+	public String getSceneCenterTime() {
+		return sceneCenterTime;
+	}
+
+	/**
+	 * @return the acquisition date and scene center time, in UTC and to the
+	 *         second, or null if there is no valid acquisition date
+	 */
+	public Date getAcquisitionTime() {
+		if (dateAcquired == null) {
+			return null;
+		}
+		String time = DEFAULT_ACQUISITION_TIME;
+		if (sceneCenterTime != null && sceneCenterTime.length() >= time.length()) {
+			time = sceneCenterTime.substring(0, time.length());
+		}
+
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		try {
+			return format.parse(dateAcquired + " " + time);
+		} catch (ParseException e) {
+			return null;
+		}
+	}
+
+	public double getSunElevation() {
+		return sunElevation;
+	}
+
+	public double getSunAzimuth() {
+		return sunAzimuth;
+	}
+
+	public double getCornerLatitude(Corner corner) {
+		return cornerLatitudes[corner.ordinal()];
+	}
+
+	public double getCornerLongitude(Corner corner) {
+		return cornerLongitudes[corner.ordinal()];
+	}
+
+	/**
+	 * @return the UTM easting of the center of the corner pixel
+	 */
+	public double getCornerEasting(Corner corner) {
+		return cornerEastings[corner.ordinal()];
+	}
+
+	/**
+	 * @return the UTM northing of the center of the corner pixel
+	 */
+	public double getCornerNorthing(Corner corner) {
+		return cornerNorthings[corner.ordinal()];
+	}
+
+	/**
+	 * @return the GeoTIFF file name of the band, relative to the MTL
+	 *         directory, or null
+	 */
+	public String getBandFileName(String band) {
+		return bandFileNames.get(band);
+	}
+
+	public Map<String, String> getBandFileNames() {
+		return Collections.unmodifiableMap(bandFileNames);
+	}
+
+	public double getRadianceMultiplier(String band) {
+		return getBandValue(radianceMultipliers, band);
+	}
+
+	public double getRadianceAddition(String band) {
+		return getBandValue(radianceAdditions, band);
+	}
+
+	public double getReflectanceMultiplier(String band) {
+		return getBandValue(reflectanceMultipliers, band);
+	}
+
+	public double getReflectanceAddition(String band) {
+		return getBandValue(reflectanceAdditions, band);
+	}
+
+	public double getK1Constant(String band) {
+		return getBandValue(k1Constants, band);
+	}
+
+	public double getK2Constant(String band) {
+		return getBandValue(k2Constants, band);
+	}
+
+	private String getText(String... keys) {
+		for (String key : keys) {
+			String value = values.get(key);
+			if (value != null) {
+				return value;
+			}
+		}
+		return null;
+	}
+
+	private int getInteger(String... keys) {
+		String value = getText(keys);
+		if (value == null) {
+			return -1;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			LOGGER.warn("Ignoring malformed MTL integer [" + keys[0] + " = " + value + "]");
+			return -1;
+		}
+	}
+
+	private double getDecimal(String... keys) {
+		return parseDecimal(keys[0], getText(keys));
+	}
+
+	private static void putBandValue(String key, String value, String prefix,
+			Map<String, String> bandValues) {
+		if (key.startsWith(prefix)) {
+			bandValues.put(key.substring(prefix.length()), value);
+		}
+	}
+
+	private static double getBandValue(Map<String, String> bandValues, String band) {
+		return parseDecimal(band, bandValues.get(band));
+	}
+
+	private static double parseDecimal(String key, String value) {
+		if (value == null) {
+			return Double.NaN;
+		}
+		try {
+			return Double.parseDouble(value.trim());
+		} catch (NumberFormatException e) {
+			LOGGER.warn("Ignoring malformed MTL decimal [" + key + " = " + value + "]");
+			return Double.NaN;
+		}
+	}
+}
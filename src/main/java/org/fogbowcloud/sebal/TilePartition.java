@@ -0,0 +1,92 @@
+package org.fogbowcloud.sebal;
+
+/**
+ * A tile of a grid partitioning of the image, see
+ * {@link BulkHelper#getSelectedTile}. Its bounds follow
+ * {@link XPartitionInterval}: neighbour tiles share the bound between them.
+ * The halo bounds widen the tile by the halo on each side, within the image,
+ * for steps that look at the neighbourhood of a pixel.
+ */
+public class TilePartition {
+
+	private int index;
+	private int row;
+	private int column;
+	private int iBegin;
+	private int iFinal;
+	private int jBegin;
+	private int jFinal;
+	private int haloIBegin;
+	private int haloIFinal;
+	private int haloJBegin;
+	private int haloJFinal;
+
+	public TilePartition(int index, int row, int column, int iBegin, int iFinal, int jBegin,
+			int jFinal, int haloIBegin, int haloIFinal, int haloJBegin, int haloJFinal) {
+		this.index = index;
+		this.row = row;
+		this.column = column;
+		this.iBegin = iBegin;
+		this.iFinal = iFinal;
+		this.jBegin = jBegin;
+		this.jFinal = jFinal;
+		this.haloIBegin = haloIBegin;
+		this.haloIFinal = haloIFinal;
+		this.haloJBegin = haloJBegin;
+		this.haloJFinal = haloJFinal;
+	}
+
+	/**
+	 * @return the 1-based index of the tile, in row-major order
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	public int getRow() {
+		return row;
+	}
+
+	public int getColumn() {
+		return column;
+	}
+
+	public int getIBegin() {
+		return iBegin;
+	}
+
+	public int getIFinal() {
+		return iFinal;
+	}
+
+	public int getJBegin() {
+		return jBegin;
+	}
+
+	public int getJFinal() {
+		return jFinal;
+	}
+
+	public int getHaloIBegin() {
+		return haloIBegin;
+	}
+
+	public int getHaloIFinal() {
+		return haloIFinal;
+	}
+
+	public int getHaloJBegin() {
+		return haloJBegin;
+	}
+
+	public int getHaloJFinal() {
+		return haloJFinal;
+	}
+
+	@Override
+	public String toString() {
+		return "tile " + index + " (row " + row + ", column " + column + ") i=" + iBegin + "-"
+				+ iFinal + " j=" + jBegin + "-" + jFinal + " halo i=" + haloIBegin + "-"
+				+ haloIFinal + " j=" + haloJBegin + "-" + haloJFinal;
+	}
+}
@@ -0,0 +1,100 @@
+package org.fogbowcloud.sebal;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.ReferencingFactoryFinder;
+import org.geotools.referencing.factory.ReferencingFactoryContainer;
+import org.opengis.parameter.ParameterValueGroup;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.GeographicCRS;
+import org.opengis.referencing.crs.ProjectedCRS;
+import org.opengis.referencing.cs.CartesianCS;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.MathTransformFactory;
+import org.opengis.referencing.operation.TransformException;
+
+/**
+ * Offline registry of the WGS 84 to UTM transforms used to place bounding box
+ * vertices in a scene.
+ *
+ * Zone parameters are derived locally, the central meridian of zone n being
+ * n * 6 - 183. The false northing is 0 on both hemispheres, as in the
+ * projection of Landsat products, so a zone has a single transform. It is
+ * built on first use and shared, geotools transforms being immutable.
+ */
+public class UTMProjections {
+
+	private static final int MIN_ZONE = 1;
+	private static final int MAX_ZONE = 60;
+
+	private static final ConcurrentMap<Integer, MathTransform> TRANSFORMS = new ConcurrentHashMap<Integer, MathTransform>();
+
+	public static int centralMeridian(int zoneNumber) {
+		if (zoneNumber < MIN_ZONE || zoneNumber > MAX_ZONE) {
+			throw new IllegalArgumentException("Invalid UTM zone number [" + zoneNumber + "]");
+		}
+		return zoneNumber * 6 - 183;
+	}
+
+	public static MathTransform getTransform(int zoneNumber) throws FactoryException {
+		MathTransform transform = TRANSFORMS.get(zoneNumber);
+		if (transform == null) {
+			transform = createTransform(zoneNumber);
+			MathTransform previous = TRANSFORMS.putIfAbsent(zoneNumber, transform);
+			if (previous != null) {
+				transform = previous;
+			}
+		}
+		return transform;
+	}
+
+	public static UTMCoordinate toUTM(double latitude, double longitude, int zoneNumber)
+			throws FactoryException, TransformException {
+		double[] dest = new double[2];
+		getTransform(zoneNumber).transform(new double[] { longitude, latitude }, 0, dest, 0, 1);
+
+		int easting = (int) Math.round(dest[0]);
+		int northing = (int) Math.round(dest[1]);
+
+		return new UTMCoordinate(easting, northing);
+	}
+
+	/**
+	 * @return the latitude and longitude of the UTM coordinate
+	 */
+	public static double[] toLatLon(double easting, double northing, int zoneNumber)
+			throws FactoryException, TransformException {
+		double[] dest = new double[2];
+		getTransform(zoneNumber).inverse().transform(new double[] { easting, northing }, 0, dest,
+				0, 1);
+		return new double[] { dest[1], dest[0] };
+	}
+
+	private static MathTransform createTransform(int zoneNumber) throws FactoryException {
+		MathTransformFactory mtFactory = ReferencingFactoryFinder.getMathTransformFactory(null);
+		ReferencingFactoryContainer factories = new ReferencingFactoryContainer(null);
+
+		GeographicCRS geoCRS = org.geotools.referencing.crs.DefaultGeographicCRS.WGS84;
+		CartesianCS cartCS = org.geotools.referencing.cs.DefaultCartesianCS.GENERIC_2D;
+
+		ParameterValueGroup parameters = mtFactory.getDefaultParameters("Transverse_Mercator");
+		parameters.parameter("central_meridian").setValue((double) centralMeridian(zoneNumber));
+		parameters.parameter("latitude_of_origin").setValue(0.0);
+		parameters.parameter("scale_factor").setValue(0.9996);
+		parameters.parameter("false_easting").setValue(500000.0);
+		parameters.parameter("false_northing").setValue(0.0);
+
+		Map<String, String> properties = Collections.singletonMap("name",
+				"WGS 84 / UTM Zone " + zoneNumber);
+
+		@SuppressWarnings("deprecation")
+		ProjectedCRS projCRS = factories.createProjectedCRS(properties, geoCRS, null, parameters,
+				cartCS);
+
+		return CRS.findMathTransform(geoCRS, projCRS);
+	}
+}
@@ -0,0 +1,159 @@
+package org.fogbowcloud.sebal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Number of valid pixels in each column of a scene, counted on its Fmask band.
+ * Valid pixels are the ones the R algorithm keeps: clear land, 672, or 2720 on
+ * Landsat 8.
+ *
+ * Counting reads the whole mask, so the histogram is cached per scene. The
+ * cache is a 32 byte header followed by the counts. The header records the
+ * clear value and the length and modification time of the mask, so a cached
+ * histogram is only trusted while its mask is unchanged.
+ */
+public class ValidPixelHistogram {
+
+	public static final int CLEAR_VALUE = 672;
+	public static final int LANDSAT_8_CLEAR_VALUE = 2720;
+
+	private static final int MAGIC = 0x53424c48; // "SBLH"
+	private static final int VERSION = 1;
+	private static final String CACHE_SUFFIX = ".histogram";
+
+	private static final Logger LOGGER = Logger.getLogger(ValidPixelHistogram.class);
+
+	private final long[] columnCounts;
+
+	public ValidPixelHistogram(long[] columnCounts) {
+		this.columnCounts = columnCounts;
+	}
+
+	public static int getClearValue(SceneMetadata metadata) {
+		return "LANDSAT_8".equals(metadata.getSpacecraftId()) ? LANDSAT_8_CLEAR_VALUE
+				: CLEAR_VALUE;
+	}
+
+	/**
+	 * @return the cache file of a mask, in the cache directory or, when there
+	 *         is none, next to the mask
+	 */
+	public static File getCacheFile(String cacheDirectory, File maskFile) {
+		if (cacheDirectory == null || cacheDirectory.trim().isEmpty()) {
+			return new File(maskFile.getPath() + CACHE_SUFFIX);
+		}
+		return new File(cacheDirectory.trim(), maskFile.getName() + CACHE_SUFFIX);
+	}
+
+	/**
+	 * Reads the histogram from the cache file or, if it is missing or stale,
+	 * counts it on the mask and caches it.
+	 */
+	public static ValidPixelHistogram read(File maskFile, int clearValue, File cacheFile)
+			throws IOException {
+		if (cacheFile.exists()) {
+			try {
+				ValidPixelHistogram histogram = load(cacheFile, maskFile, clearValue);
+				if (histogram != null) {
+					return histogram;
+				}
+			} catch (IOException e) {
+				LOGGER.warn("Could not read cached histogram [" + cacheFile + "]", e);
+			}
+		}
+
+		long now = System.currentTimeMillis();
+		ValidPixelHistogram histogram = new ValidPixelHistogram(GeoTiffHeader.read(maskFile)
+				.countPerColumn(maskFile, clearValue));
+		LOGGER.debug("Counting valid pixels of [" + maskFile + "] took ["
+				+ (System.currentTimeMillis() - now) + "] ms");
+
+		try {
+			histogram.write(cacheFile, maskFile, clearValue);
+		} catch (IOException e) {
+			LOGGER.warn("Could not cache the valid pixels of [" + maskFile + "]", e);
+		}
+		return histogram;
+	}
+
+	public int getWidth() {
+		return columnCounts.length;
+	}
+
+	public long[] getColumnCounts() {
+		return columnCounts.clone();
+	}
+
+	/**
+	 * Writes the histogram to a temporary file moved over the cache file, as
+	 * all the partitions of a scene may count and cache it at the same time.
+	 */
+	public void write(File cacheFile, File maskFile, int clearValue) throws IOException {
+		File partialFile = File.createTempFile(cacheFile.getName(), ".part",
+				cacheFile.getAbsoluteFile().getParentFile());
+		try {
+			DataOutputStream output = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(partialFile)));
+			try {
+				output.writeInt(MAGIC);
+				output.writeInt(VERSION);
+				output.writeInt(columnCounts.length);
+				output.writeInt(clearValue);
+				output.writeLong(maskFile.length());
+				output.writeLong(maskFile.lastModified());
+				for (long count : columnCounts) {
+					output.writeLong(count);
+				}
+			} finally {
+				output.close();
+			}
+
+			Files.move(partialFile.toPath(), cacheFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			// left behind only when writing or moving failed
+			partialFile.delete();
+		}
+	}
+
+	/**
+	 * @return the cached histogram, or null if the file is not a histogram or
+	 *         was counted on another version of the mask or for another value
+	 */
+	public static ValidPixelHistogram load(File cacheFile, File maskFile, int clearValue)
+			throws IOException {
+		DataInputStream input = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(cacheFile)));
+		try {
+			if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+				LOGGER.warn("Ignoring [" + cacheFile + "]: not a valid pixel histogram");
+				return null;
+			}
+
+			int width = input.readInt();
+			if (input.readInt() != clearValue || input.readLong() != maskFile.length()
+					|| input.readLong() != maskFile.lastModified()) {
+				return null;
+			}
+
+			long[] columnCounts = new long[width];
+			for (int i = 0; i < width; i++) {
+				columnCounts[i] = input.readLong();
+			}
+			return new ValidPixelHistogram(columnCounts);
+		} finally {
+			input.close();
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package org.fogbowcloud.sebal.parsers;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.fogbowcloud.sebal.util.SEBALAppConstants;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Hourly records of one station, one array per field instead of one
+ * JSONObject per record.
+ *
+ * Fields are kept as read, so output is written exactly as the station sent
+ * it, and wind speed and air temperature are also kept parsed for the
+ * corrections.
+ */
+public class HourlyRecords {
+
+	/**
+	 * Fields in the order they are written by {@link #appendLine}.
+	 */
+	public static final String[] FIELDS = { SEBALAppConstants.JSON_STATION_ID,
+			SEBALAppConstants.JSON_STATION_DATE, SEBALAppConstants.JSON_STATION_TIME,
+			SEBALAppConstants.JSON_STATION_LATITUDE, SEBALAppConstants.JSON_STATION_LONGITUDE,
+			SEBALAppConstants.JSON_STATION_WIND_SPEED, SEBALAppConstants.JSON_AIR_TEMPERATURE,
+			SEBALAppConstants.JSON_DEWPOINT_TEMPERATURE, SEBALAppConstants.JSON_AVG_AIR_TEMPERATURE,
+			SEBALAppConstants.JSON_RELATIVE_HUMIDITY, SEBALAppConstants.JSON_MIN_TEMPERATURE,
+			SEBALAppConstants.JSON_MAX_TEMPERATURE, SEBALAppConstants.JSON_SOLAR_RADIATION };
+
+	private static final int TIME = 2;
+	private static final int WIND_SPEED = 5;
+
+	private int size;
+	private int hourMask;
+	private final String[][] values = new String[FIELDS.length][];
+	private double[] windSpeeds;
+	private double[] airTemperatures;
+
+	public HourlyRecords(int capacity) {
+		capacity = Math.max(capacity, 1);
+		for (int field = 0; field < FIELDS.length; field++) {
+			values[field] = new String[capacity];
+		}
+		windSpeeds = new double[capacity];
+		airTemperatures = new double[capacity];
+	}
+
+	/**
+	 * @return the index of the added record
+	 */
+	public int add(JSONObject record, double windSpeed, double airTemperature) {
+		if (size == windSpeeds.length) {
+			grow();
+		}
+
+		for (int field = 0; field < FIELDS.length; field++) {
+			values[field][size] = record.optString(FIELDS[field]);
+		}
+		windSpeeds[size] = windSpeed;
+		airTemperatures[size] = airTemperature;
+		hourMask |= hourBit(values[TIME][size]);
+		return size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return bit h set when some record is at hour h, i.e. has time "hh00"
+	 */
+	public int getHourMask() {
+		return hourMask;
+	}
+
+	public String getTime(int record) {
+		return values[TIME][record];
+	}
+
+	public double getWindSpeed(int record) {
+		return windSpeeds[record];
+	}
+
+	public double getAirTemperature(int record) {
+		return airTemperatures[record];
+	}
+
+	public void setWindSpeed(int record, Double windSpeed) {
+		windSpeeds[record] = windSpeed;
+		values[WIND_SPEED][record] = windSpeed.toString();
+	}
+
+	/**
+	 * Appends the record as a "field;...;distance;" line, writing "NA" for
+	 * missing fields.
+	 */
+	public void appendLine(StringBuilder builder, int record, Double stationDistance) {
+		for (int field = 0; field < FIELDS.length; field++) {
+			String value = values[field][record];
+			builder.append(value.isEmpty() ? "NA" : value).append(';');
+		}
+		builder.append(stationDistance.toString()).append(';').append(System.lineSeparator());
+	}
+
+	/**
+	 * @return the bit of an "hh00" time, or 0 for any other value
+	 */
+	public static int hourBit(String time) {
+		if (time == null || time.length() != 4 || !time.endsWith("00")) {
+			return 0;
+		}
+		char tens = time.charAt(0);
+		char units = time.charAt(1);
+		if (tens < '0' || tens > '9' || units < '0' || units > '9') {
+			return 0;
+		}
+		int hour = (tens - '0') * 10 + units - '0';
+		return hour < 24 ? 1 << hour : 0;
+	}
+
+	public static int toHourMask(Collection<String> times) {
+		int mask = 0;
+		for (String time : times) {
+			mask |= hourBit(time);
+		}
+		return mask;
+	}
+
+	public JSONArray toJSONArray() {
+		JSONArray records = new JSONArray();
+		for (int record = 0; record < size; record++) {
+			JSONObject recordObject = new JSONObject();
+			for (int field = 0; field < FIELDS.length; field++) {
+				if (!values[field][record].isEmpty()) {
+					recordObject.put(FIELDS[field], values[field][record]);
+				}
+			}
+			records.put(recordObject);
+		}
+		return records;
+	}
+
+	private void grow() {
+		int capacity = windSpeeds.length * 2;
+		for (int field = 0; field < FIELDS.length; field++) {
+			values[field] = Arrays.copyOf(values[field], capacity);
+		}
+		windSpeeds = Arrays.copyOf(windSpeeds, capacity);
+		airTemperatures = Arrays.copyOf(airTemperatures, capacity);
+	}
+}
@@ -0,0 +1,70 @@
+package org.fogbowcloud.sebal.parsers;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+/**
+ * The validated records of the selected station and its distance, written as
+ * the "field;...;distance;" lines of the station file.
+ *
+ * {@link #writeTo(Writer)} streams one line at a time, so the whole file is
+ * never built in memory. Its output is the same as the trimmed String
+ * {@link #toCSV()} returns.
+ */
+public class StationData {
+
+	private final HourlyRecords records;
+	private final Double stationDistance;
+
+	public StationData(HourlyRecords records, Double stationDistance) {
+		this.records = records;
+		this.stationDistance = stationDistance;
+	}
+
+	public int size() {
+		return records.size();
+	}
+
+	public Double getStationDistance() {
+		return stationDistance;
+	}
+
+	/**
+	 * Writes the lines separated by the line separator, with no separator
+	 * after the last one, as {@link String#trim()} left them.
+	 */
+	public void writeTo(Writer writer) throws IOException {
+		int separatorLength = System.lineSeparator().length();
+		StringBuilder line = new StringBuilder();
+		char[] chars = new char[0];
+		for (int i = 0; i < records.size(); i++) {
+			line.setLength(0);
+			records.appendLine(line, i, stationDistance);
+
+			int begin = 0;
+			if (i == 0) {
+				while (begin < line.length() && line.charAt(begin) <= ' ') {
+					begin++;
+				}
+			}
+			// lines end with "distance;" and the separator, only the last one is dropped
+			int end = i == records.size() - 1 ? line.length() - separatorLength : line.length();
+			if (chars.length < end - begin) {
+				chars = new char[line.capacity()];
+			}
+			line.getChars(begin, end, chars, 0);
+			writer.write(chars, 0, end - begin);
+		}
+	}
+
+	public String toCSV() {
+		StringWriter writer = new StringWriter();
+		try {
+			writeTo(writer);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return writer.toString();
+	}
+}
@@ -0,0 +1,110 @@
+package org.fogbowcloud.sebal.parsers;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.fogbowcloud.sebal.parsers.plugins.ISDHourlyDataParser;
+import org.fogbowcloud.sebal.parsers.plugins.StationQualityIndex;
+import org.json.JSONArray;
+
+/**
+ * Scans gzipped ISD station-year files (e.g. a mirror of pub/data/noaa/2002)
+ * once and writes the {@link WeatherStation#summarizeStationDay} of each
+ * station-day to a {@link StationQualityIndex}, replacing the index of every
+ * year found.
+ *
+ * Usage: StationQualityIndexer &lt;isd dir&gt; &lt;index dir&gt;
+ */
+public class StationQualityIndexer {
+
+	private static final Logger LOGGER = Logger.getLogger(StationQualityIndexer.class);
+
+	private final Map<String, Map<String, long[]>> years = new HashMap<String, Map<String, long[]>>();
+
+	public static void main(String[] args) throws Exception {
+		if (args.length != 2) {
+			System.err.println("Usage: StationQualityIndexer <isd dir> <index dir>");
+			System.exit(1);
+		}
+
+		File isdDir = new File(args[0]);
+		StationQualityIndexer indexer = new StationQualityIndexer();
+
+		int indexed = indexer.addDirectory(isdDir);
+		indexer.writeTo(new StationQualityIndex(new File(args[1])));
+
+		System.out.println("Indexed [" + indexed + "] station files from [" + isdDir + "]");
+	}
+
+	/**
+	 * Adds every "*.gz" ISD file found under isdDir.
+	 *
+	 * @return the number of added station-years
+	 */
+	public int addDirectory(File isdDir) {
+		int added = 0;
+		File[] files = isdDir.listFiles();
+		if (files == null) {
+			return added;
+		}
+
+		for (File file : files) {
+			if (file.isDirectory()) {
+				added += addDirectory(file);
+			} else if (file.getName().endsWith(".gz")) {
+				try {
+					add(file);
+					added++;
+				} catch (IOException e) {
+					LOGGER.error("Error while indexing [" + file + "]", e);
+				}
+			}
+		}
+		return added;
+	}
+
+	/**
+	 * Adds the days of one "&lt;id&gt;-99999-&lt;year&gt;.gz" file. Days that
+	 * could not be parsed are left out, as reading them fails online too.
+	 */
+	public void add(File compressedStationFile) throws IOException {
+		String name = compressedStationFile.getName();
+		String stationId = name.substring(0, name.indexOf('-'));
+		String year = name.substring(name.lastIndexOf('-') + 1, name.length() - 3);
+
+		Map<String, JSONArray> days = ISDHourlyDataParser.readHourlyDataByDay(compressedStationFile);
+		long[] entries = new long[days.size()];
+		int size = 0;
+		for (Map.Entry<String, JSONArray> day : days.entrySet()) {
+			if (day.getValue() == null || !day.getKey().startsWith(year)) {
+				continue;
+			}
+			try {
+				long entry = StationQualityIndex.newEntry(day.getKey(),
+						WeatherStation.summarizeStationDay(day.getValue()));
+				if (entry >= 0) {
+					entries[size++] = entry;
+				}
+			} catch (NumberFormatException e) {
+				LOGGER.debug("Not indexing [" + day.getKey() + "] of [" + name + "]", e);
+			}
+		}
+
+		Map<String, long[]> stations = years.get(year);
+		if (stations == null) {
+			stations = new HashMap<String, long[]>();
+			years.put(year, stations);
+		}
+		stations.put(stationId, Arrays.copyOf(entries, size));
+	}
+
+	public void writeTo(StationQualityIndex index) throws IOException {
+		for (Map.Entry<String, Map<String, long[]>> year : years.entrySet()) {
+			index.writeYear(year.getKey(), year.getValue());
+		}
+	}
+}
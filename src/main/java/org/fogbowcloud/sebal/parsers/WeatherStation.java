@@ -3,15 +3,27 @@ package org.fogbowcloud.sebal.parsers;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.http.HttpException;
 import org.apache.log4j.Logger;
+import org.fogbowcloud.sebal.parsers.plugins.StationIndex;
 import org.fogbowcloud.sebal.parsers.plugins.StationOperator;
 import org.fogbowcloud.sebal.parsers.plugins.StationOperatorConstants;
-import org.fogbowcloud.sebal.parsers.plugins.ftp.FTPStationOperator;
+import org.fogbowcloud.sebal.parsers.plugins.StationOperatorFactory;
+import org.fogbowcloud.sebal.parsers.plugins.StationQualityIndex;
+import org.fogbowcloud.sebal.parsers.plugins.StationValidationCache;
 import org.fogbowcloud.sebal.util.SEBALAppConstants;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -20,6 +32,10 @@ public class WeatherStation {
 
 	private Properties properties;
 	private StationOperator stationOperator;
+	private int prefetchSize;
+	private int daysWindow;
+	private StationValidationCache validationCache;
+	private StationQualityIndex qualityIndex;
 
 	private static final Logger LOGGER = Logger.getLogger(WeatherStation.class);
 
@@ -28,173 +44,517 @@ public class WeatherStation {
 	private static final Double MIN_AIR_TEMP_VALUE = 5.0;
 	private static final Double MAX_AIR_TEMP_VALUE = 55.0;
 
+	private static final int DEFAULT_PREFETCH_SIZE = 1;
+	private static final int DEFAULT_DAYS_WINDOW = 0;
+
+	private static final int HOURS_IN_DAY = 24;
+	private static final int ALL_HOURS_MASK = (1 << HOURS_IN_DAY) - 1;
+	private static final int MAIN_HOURS_SIZE = 2;
+
+	private static final List<String>[] MAIN_HOURS = newHoursTable();
+	private static final List<String>[] HOURS_INTERVALS = newHoursTable();
+	private static final int[] MAIN_HOURS_MASKS = new int[HOURS_IN_DAY];
+	private static final int[] INTERVAL_FIRST_PART_MASKS = new int[HOURS_IN_DAY];
+	private static final int[] INTERVAL_SECOND_PART_MASKS = new int[HOURS_IN_DAY];
+
+	static {
+		for (int hour = 0; hour < HOURS_IN_DAY; hour++) {
+			MAIN_HOURS[hour] = buildMainHours(hour);
+			MAIN_HOURS_MASKS[hour] = HourlyRecords.toHourMask(MAIN_HOURS[hour]);
+
+			HOURS_INTERVALS[hour] = buildHoursInterval(hour);
+			int midIndex = HOURS_INTERVALS[hour].size() / 2;
+			INTERVAL_FIRST_PART_MASKS[hour] = HourlyRecords
+					.toHourMask(HOURS_INTERVALS[hour].subList(0, midIndex));
+			INTERVAL_SECOND_PART_MASKS[hour] = HourlyRecords.toHourMask(
+					HOURS_INTERVALS[hour].subList(midIndex, HOURS_INTERVALS[hour].size()));
+		}
+	}
+
 	public WeatherStation() throws URISyntaxException, HttpException, IOException {
 		this(new Properties());
 	}
 
 	public WeatherStation(Properties properties)
 			throws URISyntaxException, HttpException, IOException {
-		this(properties, new FTPStationOperator(properties));
+		this(properties, StationOperatorFactory.create(properties));
 	}
 
-	protected WeatherStation(Properties properties, FTPStationOperator stationOperator) {
+	protected WeatherStation(Properties properties, StationOperator stationOperator) {
 		this.properties = properties;
 		this.stationOperator = stationOperator;
+		this.prefetchSize = getPrefetchSize(properties);
+		this.daysWindow = getDaysWindow(properties);
+		this.validationCache = new StationValidationCache(properties);
+		this.qualityIndex = StationQualityIndex.fromProperties(properties);
+	}
+
+	private static int getPrefetchSize(Properties properties) {
+		String value = properties.getProperty(StationOperatorConstants.STATION_PREFETCH_SIZE);
+		if (value == null || value.trim().isEmpty()) {
+			return DEFAULT_PREFETCH_SIZE;
+		}
+		return Math.max(1, Integer.parseInt(value.trim()));
+	}
+
+	/**
+	 * @return how many days before and after the scene date the station
+	 *         records are read
+	 */
+	private static int getDaysWindow(Properties properties) {
+		String value = properties.getProperty(StationOperatorConstants.STATION_DAYS_WINDOW);
+		if (value == null || value.trim().isEmpty()) {
+			return DEFAULT_DAYS_WINDOW;
+		}
+		return Math.max(0, Integer.parseInt(value.trim()));
 	}
 
 	public String getStationData(double lat, double lon, Date date, String sceneCenterTime) {
+		StationData stationData = getStationRecords(lat, lon, date, sceneCenterTime);
+		return stationData == null ? null : stationData.toCSV();
+	}
+
+	/**
+	 * @return the records of the nearest valid station, to be streamed with
+	 *         {@link StationData#writeTo}, or null if no station validates
+	 */
+	public StationData getStationRecords(double lat, double lon, Date date,
+			String sceneCenterTime) {
 		LOGGER.debug("latitude: " + lat + " longitude: " + lon + " date: " + date);
 
-		int daysWindow = 0;
-		List<JSONObject> nearStations = this.stationOperator.findNearestStation(date, lat, lon,
-				daysWindow);
+		Iterator<JSONObject> nearStations = this.stationOperator.nearestStations(date, lat, lon,
+				this.daysWindow);
 
-		String stationData = null;
+		StationData stationData = null;
 		if (nearStations != null) {
-			stationData = this.selectStation(date, nearStations, daysWindow, sceneCenterTime);
+			stationData = this.selectNearestValidStation(date, nearStations, this.daysWindow,
+					sceneCenterTime);
 		}
 		return stationData;
 	}
 
+	/**
+	 * Starts loading, in the background, the station index that
+	 * {@link #getStationRecords} will search for the date, so downloading the
+	 * catalog overlaps whatever the caller does until the scene location is
+	 * known, e.g. reading the product. A failed load is simply retried by the
+	 * search.
+	 */
+	public Future<StationIndex> prefetchStationIndex(Date date) {
+		Date beginDate = new Date(date.getTime() - daysWindow * StationOperatorConstants.A_DAY);
+		final String year = StationOperatorConstants.formatDate(beginDate).substring(0, 4);
+
+		LOGGER.debug("Prefetching station index of year [" + year + "]");
+		ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "station-index-prefetch");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			return executor.submit(new Callable<StationIndex>() {
+				@Override
+				public StationIndex call() throws Exception {
+					return stationOperator.getStationIndex(year);
+				}
+			});
+		} finally {
+			executor.shutdown();
+		}
+	}
+
 	protected String selectStation(Date date, List<JSONObject> stations, int numberOfDays,
 			String sceneCenterTime) {
+		StationData stationData = selectNearestValidStation(date,
+				stations == null ? null : stations.iterator(), numberOfDays, sceneCenterTime);
+		return stationData == null ? null : stationData.toCSV();
+	}
+
+	/**
+	 * Tries the stations in the given order and returns the data of the first
+	 * one that validates, without pulling any further candidate.
+	 *
+	 * With station_prefetch_size above 1, the next candidates are read ahead in
+	 * parallel but still judged in order, so the result is the same as the
+	 * sequential one.
+	 */
+	protected StationData selectNearestValidStation(Date date, Iterator<JSONObject> stations,
+			int numberOfDays, String sceneCenterTime) {
 
 		Date begindate = new Date(date.getTime() - numberOfDays * StationOperatorConstants.A_DAY);
 		Date endDate = new Date(date.getTime() + numberOfDays * StationOperatorConstants.A_DAY);
 
 		List<String> mainHours = getMainHours(sceneCenterTime);
+		int mainHoursMask = getMainHoursMask(sceneCenterTime);
 
-		if (stations != null && !stations.isEmpty()) {
+		if (stations != null && stations.hasNext()) {
 			LOGGER.debug("beginDate: " + begindate + " endDate: " + endDate);
 
-			for (JSONObject station : stations) {
+			String beginDateValue = StationOperatorConstants.formatDate(begindate);
+			String endDateValue = StationOperatorConstants.formatDate(endDate);
+
+			if (prefetchSize > 1) {
+				return selectWithPrefetch(stations, beginDateValue, endDateValue, mainHours,
+						mainHoursMask);
+			}
+
+			while (stations.hasNext()) {
+				JSONObject station = stations.next();
+				if (isKnownInvalid(station, beginDateValue, endDateValue, mainHours,
+						mainHoursMask)) {
+					continue;
+				}
 				try {
 					JSONArray stationData = this.stationOperator.readStation(
-							station.optString("id"),
-							StationOperatorConstants.DATE_FORMAT.format(begindate),
-							StationOperatorConstants.DATE_FORMAT.format(endDate));
+							station.optString("id"), beginDateValue, endDateValue);
 
-					Double stationDistance = station.optDouble("distance");
+					StationData result = toValidStationData(stationData, station, beginDateValue,
+							endDateValue, mainHours, mainHoursMask);
+					if (result != null) {
+						return result;
+					}
+				} catch (Exception e) {
+					LOGGER.error("Error while reading full record", e);
+				}
+			}
+		} else {
+			LOGGER.info("Stations list is empty");
+		}
 
-					stationData = removeNonRepresentativeRecords(stationData);
-					stationData = temperatureCorrection(stationData);
-					stationData = windSpeedCorrection(stationData, mainHours);
+		return null;
+	}
 
-					if (validateStationData(stationData, mainHours)) {
-						LOGGER.info("Found Station Data: " + System.lineSeparator()
-								+ stationData.toString());
-						LOGGER.info("Station Distance: [" + stationDistance + "]km");
+	private StationData selectWithPrefetch(Iterator<JSONObject> stations, String beginDate,
+			String endDate, List<String> mainHours, int mainHoursMask) {
+		ExecutorService executor = Executors.newFixedThreadPool(prefetchSize);
+		LinkedList<JSONObject> pendingStations = new LinkedList<JSONObject>();
+		LinkedList<Future<JSONArray>> pendingReads = new LinkedList<Future<JSONArray>>();
+
+		try {
+			while (true) {
+				while (pendingReads.size() < prefetchSize && stations.hasNext()) {
+					JSONObject station = stations.next();
+					if (isKnownInvalid(station, beginDate, endDate, mainHours, mainHoursMask)) {
+						continue;
+					}
+					pendingStations.add(station);
+					pendingReads.add(executor.submit(
+							new StationRead(station.optString("id"), beginDate, endDate)));
+				}
+				if (pendingReads.isEmpty()) {
+					return null;
+				}
 
-						return generateStationData(stationData, stationDistance);
+				JSONObject station = pendingStations.removeFirst();
+				Future<JSONArray> read = pendingReads.removeFirst();
+				try {
+					StationData result = toValidStationData(read.get(), station, beginDate, endDate,
+							mainHours, mainHoursMask);
+					if (result != null) {
+						return result;
 					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return null;
+				} catch (ExecutionException e) {
+					LOGGER.error("Error while reading full record", e.getCause());
 				} catch (Exception e) {
 					LOGGER.error("Error while reading full record", e);
 				}
 			}
-		} else {
-			LOGGER.info("Stations list is empty");
+		} finally {
+			if (!pendingReads.isEmpty()) {
+				LOGGER.debug("Cancelling [" + pendingReads.size() + "] station reads");
+			}
+			for (Future<JSONArray> read : pendingReads) {
+				read.cancel(true);
+			}
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @param mainHours the main hours, keying the validation cache
+	 * @param mainHoursMask the same hours as a mask, for the quality index
+	 */
+	private boolean isKnownInvalid(JSONObject station, String beginDate, String endDate,
+			List<String> mainHours, int mainHoursMask) {
+		if (validationCache.isKnownInvalid(station.optString("id"), beginDate, endDate,
+				mainHours)) {
+			LOGGER.debug("Skipping station [" + station.optString("id")
+					+ "], known to be invalid from [" + beginDate + "] to [" + endDate + "]");
+			return true;
+		}
+		if (qualityIndex != null) {
+			long summary = qualityIndex.getSummary(station.optString("id"), beginDate, endDate);
+			if (summary >= 0 && !isValidStationDay(summary, mainHoursMask)) {
+				LOGGER.debug("Skipping station [" + station.optString("id")
+						+ "], indexed as invalid from [" + beginDate + "] to [" + endDate + "]");
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the validated station data, or null if the station does not
+	 *         validate. Stations whose data was read but did not validate are
+	 *         remembered as invalid; read failures are not.
+	 */
+	private StationData toValidStationData(JSONArray stationData, JSONObject station,
+			String beginDate, String endDate, List<String> mainHours, int mainHoursMask) {
+		Double stationDistance = station.optDouble("distance");
+
+		HourlyRecords records = correctStationData(stationData, mainHoursMask);
+
+		if (validateStationRecords(records, mainHoursMask)) {
+			StationData result = new StationData(records, stationDistance);
+			LOGGER.info("Found Station Data: [" + result.size() + "] records");
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug(System.lineSeparator() + result.toCSV());
+			}
+			LOGGER.info("Station Distance: [" + stationDistance + "]km");
+
+			return result;
 		}
 
+		if (stationData != null) {
+			validationCache.markInvalid(station.optString("id"), beginDate, endDate, mainHours);
+		}
 		return null;
 	}
 
+	private class StationRead implements Callable<JSONArray> {
+
+		private final String stationId;
+		private final String beginDate;
+		private final String endDate;
+
+		StationRead(String stationId, String beginDate, String endDate) {
+			this.stationId = stationId;
+			this.beginDate = beginDate;
+			this.endDate = endDate;
+		}
+
+		@Override
+		public JSONArray call() throws Exception {
+			return stationOperator.readStation(stationId, beginDate, endDate);
+		}
+	}
+
 	protected List<String> getMainHours(String sceneCenterTime) {
+		return MAIN_HOURS[getHour(sceneCenterTime)];
+	}
+
+	protected int getMainHoursMask(String sceneCenterTime) {
+		return MAIN_HOURS_MASKS[getHour(sceneCenterTime)];
+	}
+
+	protected List<String> getHoursInterval(String hour) {
+		return HOURS_INTERVALS[getHour(hour)];
+	}
+
+	private static int getHour(String time) {
+		return Integer.parseInt(time.substring(0, 2)) % HOURS_IN_DAY;
+	}
+
+	private static List<String> buildMainHours(int hour) {
 		List<String> result = new ArrayList<String>();
-		Integer size = 2;
-		Integer hour = Integer.parseInt(sceneCenterTime.substring(0, 2));
-		for (int i = 0; i < size; i++, hour = (hour + 1) % 24) {
-			String strHour = hour + "00";
-			if (strHour.length() < 4) {
-				strHour = "0" + strHour;
-			}
-			result.add(i, strHour);
+		for (int i = 0; i < MAIN_HOURS_SIZE; i++, hour = (hour + 1) % HOURS_IN_DAY) {
+			result.add(formatHour(hour));
 		}
-		return result;
+		return Collections.unmodifiableList(result);
 	}
 
-	protected List<String> getHoursInterval(String hour) {
+	/**
+	 * Hours from six hours after the given one up to six hours before it.
+	 */
+	private static List<String> buildHoursInterval(int hour) {
 		List<String> intervalHours = new ArrayList<String>();
 
-		Integer intHour = Integer.parseInt(hour.substring(0, 2));
-		Integer lowerBound = (intHour - 6) % 24;
-		Integer upperBound = (intHour + 6) % 24;
+		int lowerBound = (hour + HOURS_IN_DAY - 6) % HOURS_IN_DAY;
+		int upperBound = (hour + 6) % HOURS_IN_DAY;
 
-		for (Integer i = upperBound; i != ((lowerBound + 1) % 24); i = (i + 1) % 24) {
-			String strHour = i + "00";
-			if (strHour.length() < 4) {
-				strHour = "0" + strHour;
-			}
-			intervalHours.add(strHour);
+		for (int i = upperBound; i != ((lowerBound + 1) % HOURS_IN_DAY); i = (i + 1)
+				% HOURS_IN_DAY) {
+			intervalHours.add(formatHour(i));
+		}
+		return Collections.unmodifiableList(intervalHours);
+	}
+
+	private static String formatHour(int hour) {
+		String strHour = hour + "00";
+		if (strHour.length() < 4) {
+			strHour = "0" + strHour;
 		}
-		return intervalHours;
+		return strHour;
 	}
 
 	protected boolean validateStationData(JSONArray stationData, List<String> mainHours) {
-		boolean result = false;
-		if (stationData != null) {
-			boolean hasAtLeastOneMainHour = hasHoursInStationData(stationData, mainHours);
+		if (stationData == null) {
+			return false;
+		}
 
-			List<String> intervalHours = getHoursInterval(mainHours.get(0));
-			int midIndex = intervalHours.size() / 2;
+		int hourMask = 0;
+		for (int i = 0; i < stationData.length(); i++) {
+			hourMask |= HourlyRecords.hourBit(
+					stationData.optJSONObject(i).optString(SEBALAppConstants.JSON_STATION_TIME));
+		}
+		return hasValidHours(hourMask, HourlyRecords.toHourMask(mainHours));
+	}
 
-			boolean hasOneHourInFirstPart = hasHoursInStationData(stationData,
-					intervalHours.subList(0, midIndex));
-			boolean hasOneHourInSecondPart = hasHoursInStationData(stationData,
-					intervalHours.subList(midIndex, intervalHours.size()));
+	protected boolean validateStationRecords(HourlyRecords records, List<String> mainHours) {
+		return validateStationRecords(records, HourlyRecords.toHourMask(mainHours));
+	}
 
-			result = hasAtLeastOneMainHour && hasOneHourInFirstPart && hasOneHourInSecondPart;
+	protected boolean validateStationRecords(HourlyRecords records, int mainHoursMask) {
+		if (records == null) {
+			return false;
 		}
-		return result;
+		return hasValidHours(records.getHourMask(), mainHoursMask);
 	}
 
-	private boolean hasHoursInStationData(JSONArray stationData, List<String> hours) {
-		boolean hasHour = false;
-		for (int i = 0; i < hours.size() && !hasHour; i++) {
-			if (hasRecord(stationData, SEBALAppConstants.JSON_STATION_TIME, hours.get(i))) {
-				hasHour = true;
+	/**
+	 * A station-day is valid with a record at one of the main hours and one in
+	 * each half of the interval of the first main hour.
+	 */
+	private static boolean hasValidHours(int hourMask, int mainHoursMask) {
+		if (mainHoursMask == 0) {
+			return false;
+		}
+		// the first main hour is the one not preceded by another main hour, the
+		// lowest one when every hour is a main hour
+		int followingHours = (mainHoursMask << 1 | mainHoursMask >>> (HOURS_IN_DAY - 1))
+				& ALL_HOURS_MASK;
+		int firstHours = mainHoursMask & ~followingHours;
+		int hour = Integer.numberOfTrailingZeros(firstHours != 0 ? firstHours : mainHoursMask);
+		return (hourMask & mainHoursMask) != 0
+				&& (hourMask & INTERVAL_FIRST_PART_MASKS[hour]) != 0
+				&& (hourMask & INTERVAL_SECOND_PART_MASKS[hour]) != 0;
+	}
+
+	protected HourlyRecords correctStationData(JSONArray stationData, List<String> mainHours) {
+		return correctStationData(stationData, HourlyRecords.toHourMask(mainHours));
+	}
+
+	/**
+	 * Single pass equivalent of removeNonRepresentativeRecords,
+	 * temperatureCorrection and windSpeedCorrection, applied in this order.
+	 */
+	protected HourlyRecords correctStationData(JSONArray stationData, int mainHoursMask) {
+		if (stationData == null) {
+			return null;
+		}
+
+		HourlyRecords records = new HourlyRecords(stationData.length());
+		for (int i = 0; i < stationData.length(); i++) {
+			JSONObject stationDataRecord = stationData.optJSONObject(i);
+			if (!containsNeededStationValues(stationDataRecord)) {
+				continue;
+			}
+
+			double airTemp = Double.parseDouble(
+					stationDataRecord.optString(SEBALAppConstants.JSON_AIR_TEMPERATURE));
+			if (!isAirTemperatureInRange(airTemp)) {
+				continue;
+			}
+
+			double windSpeed = Double.parseDouble(
+					stationDataRecord.optString(SEBALAppConstants.JSON_STATION_WIND_SPEED));
+			int hourBit = HourlyRecords.hourBit(
+					stationDataRecord.optString(SEBALAppConstants.JSON_STATION_TIME));
+			if ((hourBit & mainHoursMask) != 0
+					&& windSpeed > WeatherStation.MAX_WIND_SPEED_VALUE) {
+				continue;
+			}
+
+			int record = records.add(stationDataRecord, windSpeed, airTemp);
+			if (windSpeed < WeatherStation.MIN_WIND_SPEED_VALUE) {
+				records.setWindSpeed(record, WeatherStation.MIN_WIND_SPEED_VALUE);
 			}
 		}
-		return hasHour;
+		return records;
 	}
 
-	private boolean hasRecord(JSONArray stationData, String key, String value) {
-		boolean result = false;
-		for (int i = 0; i < stationData.length() && !result; i++) {
+	/**
+	 * Summarizes what {@link #correctStationData} keeps of the records of one
+	 * station-day, whatever the main hours are.
+	 *
+	 * @return the hours with a record passing the value and air temperature
+	 *         checks in the low 24 bits, and the hours where such a record also
+	 *         is within the maximum wind speed in the next 24 bits
+	 */
+	public static long summarizeStationDay(JSONArray stationData) {
+		long keptHours = 0;
+		long windHours = 0;
+		for (int i = 0; i < stationData.length(); i++) {
 			JSONObject stationDataRecord = stationData.optJSONObject(i);
+			if (!containsNeededStationValues(stationDataRecord)) {
+				continue;
+			}
+
+			double airTemp = Double.parseDouble(
+					stationDataRecord.optString(SEBALAppConstants.JSON_AIR_TEMPERATURE));
+			if (!isAirTemperatureInRange(airTemp)) {
+				continue;
+			}
 
-			if (stationDataRecord.optString(key).equals(value)) {
-				result = true;
+			double windSpeed = Double.parseDouble(
+					stationDataRecord.optString(SEBALAppConstants.JSON_STATION_WIND_SPEED));
+			int hourBit = HourlyRecords.hourBit(
+					stationDataRecord.optString(SEBALAppConstants.JSON_STATION_TIME));
+			keptHours |= hourBit;
+			if (windSpeed <= WeatherStation.MAX_WIND_SPEED_VALUE) {
+				windHours |= hourBit;
 			}
 		}
-		return result;
+		return windHours << HOURS_IN_DAY | keptHours;
+	}
+
+	/**
+	 * @return whether the station-day of the summary validates for the main
+	 *         hours, as {@link #validateStationRecords} would after
+	 *         {@link #correctStationData}
+	 */
+	public static boolean isValidStationDay(long summary, List<String> mainHours) {
+		return isValidStationDay(summary, HourlyRecords.toHourMask(mainHours));
+	}
+
+	public static boolean isValidStationDay(long summary, int mainHoursMask) {
+		int keptHours = (int) summary & ALL_HOURS_MASK;
+		int windHours = (int) (summary >>> HOURS_IN_DAY) & ALL_HOURS_MASK;
+		return hasValidHours((keptHours & ~mainHoursMask) | (windHours & mainHoursMask),
+				mainHoursMask);
 	}
 
 	protected JSONArray windSpeedCorrection(JSONArray stationData, List<String> mainHours) {
 		JSONArray adjustedStationData = null;
 
 		if (stationData != null) {
-			adjustedStationData = new JSONArray(stationData.toString());
+			adjustedStationData = new JSONArray();
 
-			for (int i = 0; i < adjustedStationData.length(); i++) {
-				JSONObject stationDataRecord = adjustedStationData.optJSONObject(i);
+			for (int i = 0; i < stationData.length(); i++) {
+				JSONObject stationDataRecord = stationData.optJSONObject(i);
 
 				String JSONHour = stationDataRecord.optString(SEBALAppConstants.JSON_STATION_TIME);
 
 				Double JSONWindSpeed = Double.parseDouble(
 						stationDataRecord.optString(SEBALAppConstants.JSON_STATION_WIND_SPEED));
 
-				if (mainHours.contains(JSONHour)
-						&& JSONWindSpeed > WeatherStation.MAX_WIND_SPEED_VALUE) {
-					adjustedStationData.remove(i);
-					i--;
+				if (exceedsMaxWindSpeed(JSONHour, JSONWindSpeed, mainHours)) {
+					continue;
 				}
 
 				if (JSONWindSpeed < WeatherStation.MIN_WIND_SPEED_VALUE) {
+					stationDataRecord = new JSONObject(stationDataRecord,
+							JSONObject.getNames(stationDataRecord));
 					stationDataRecord.remove(SEBALAppConstants.JSON_STATION_WIND_SPEED);
 					stationDataRecord.put(SEBALAppConstants.JSON_STATION_WIND_SPEED,
 							WeatherStation.MIN_WIND_SPEED_VALUE);
 				}
-
+				adjustedStationData.put(stationDataRecord);
 			}
 		}
 		return adjustedStationData;
@@ -204,19 +564,16 @@ public class WeatherStation {
 		JSONArray adjustedStationData = null;
 
 		if (stationData != null) {
-			adjustedStationData = new JSONArray(stationData.toString());
+			adjustedStationData = new JSONArray();
 
-			for (int i = 0; i < adjustedStationData.length(); i++) {
-				JSONObject stationDataRecord = adjustedStationData.optJSONObject(i);
+			for (int i = 0; i < stationData.length(); i++) {
+				JSONObject stationDataRecord = stationData.optJSONObject(i);
 
 				Double JSONAirTemp = Double.parseDouble(
 						stationDataRecord.optString(SEBALAppConstants.JSON_AIR_TEMPERATURE));
 
-				if (JSONAirTemp < WeatherStation.MIN_AIR_TEMP_VALUE
-						|| JSONAirTemp > WeatherStation.MAX_AIR_TEMP_VALUE) {
-
-					adjustedStationData.remove(i);
-					i--;
+				if (isAirTemperatureInRange(JSONAirTemp)) {
+					adjustedStationData.put(stationDataRecord);
 				}
 			}
 		}
@@ -227,21 +584,34 @@ public class WeatherStation {
 		JSONArray adjustedStationData = null;
 
 		if (stationData != null) {
-			adjustedStationData = new JSONArray(stationData.toString());
+			adjustedStationData = new JSONArray();
 
-			for (int i = 0; i < adjustedStationData.length(); i++) {
-				JSONObject stationDataRecord = adjustedStationData.optJSONObject(i);
+			for (int i = 0; i < stationData.length(); i++) {
+				JSONObject stationDataRecord = stationData.optJSONObject(i);
 
-				if (!containsNeededStationValues(stationDataRecord)) {
-					adjustedStationData.remove(i);
-					i--;
+				if (containsNeededStationValues(stationDataRecord)) {
+					adjustedStationData.put(stationDataRecord);
 				}
 			}
 		}
 		return adjustedStationData;
 	}
 
-	private boolean containsNeededStationValues(JSONObject data) {
+	private static boolean isAirTemperatureInRange(double airTemp) {
+		return airTemp >= WeatherStation.MIN_AIR_TEMP_VALUE
+				&& airTemp <= WeatherStation.MAX_AIR_TEMP_VALUE;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<String>[] newHoursTable() {
+		return new List[HOURS_IN_DAY];
+	}
+
+	private boolean exceedsMaxWindSpeed(String hour, double windSpeed, List<String> mainHours) {
+		return mainHours.contains(hour) && windSpeed > WeatherStation.MAX_WIND_SPEED_VALUE;
+	}
+
+	private static boolean containsNeededStationValues(JSONObject data) {
 		String[] neededStationValues = new String[] { SEBALAppConstants.JSON_STATION_DATE,
 				SEBALAppConstants.JSON_STATION_TIME, SEBALAppConstants.JSON_STATION_LATITUDE,
 				SEBALAppConstants.JSON_STATION_LONGITUDE, SEBALAppConstants.JSON_AIR_TEMPERATURE,
@@ -258,15 +628,6 @@ public class WeatherStation {
 		return result;
 	}
 
-	private String generateStationData(JSONArray stationData, Double stationDistance) {
-		StringBuilder result = new StringBuilder();
-		for (int i = 0; i < stationData.length(); i++) {
-			result.append(
-					checkVariablesAndBuildString(stationData.optJSONObject(i), stationDistance));
-		}
-		return result.toString().trim();
-	}
-
 	protected String checkVariablesAndBuildString(JSONObject stationDataRecord,
 			Double stationDistance) {
 
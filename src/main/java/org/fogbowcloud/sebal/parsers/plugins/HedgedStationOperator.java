@@ -0,0 +1,239 @@
+package org.fogbowcloud.sebal.parsers.plugins;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Reads stations from a primary backend, also asking a secondary one when the
+ * primary takes longer than usual, and keeps whichever answers first.
+ *
+ * "Longer than usual" is the station_hedge_percentile of the primary's read
+ * latencies, or station_hedge_initial_delay_millis until enough reads were
+ * seen. A read that fails or finds nothing is also retried on the secondary
+ * right away. Catalog and index lookups only go to the primary.
+ *
+ * A primary read cancelled because the secondary answered first is recorded
+ * as taking at least the hedge delay, otherwise the slowest reads would never
+ * be seen and the delay would shrink until nearly every read is hedged.
+ */
+public class HedgedStationOperator implements StationOperator {
+
+	public static final double DEFAULT_HEDGE_PERCENTILE = 95;
+	public static final long DEFAULT_HEDGE_INITIAL_DELAY_MILLIS = 5000;
+
+	private static final int MIN_SAMPLES = 20;
+
+	private static final Logger LOGGER = Logger.getLogger(HedgedStationOperator.class);
+
+	private final StationOperator primary;
+	private final StationOperator secondary;
+	private final LatencyHistogram primaryLatencies = new LatencyHistogram();
+	private final LatencyHistogram secondaryLatencies = new LatencyHistogram();
+	private final double hedgePercentile;
+	private final long hedgeInitialDelay;
+	private final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "hedged-station-read");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	public HedgedStationOperator(StationOperator primary, StationOperator secondary,
+			Properties properties) {
+		this.primary = primary;
+		this.secondary = secondary;
+
+		String percentile = properties.getProperty(StationOperatorConstants.STATION_HEDGE_PERCENTILE);
+		if (percentile != null && !percentile.trim().isEmpty()) {
+			this.hedgePercentile = Double.parseDouble(percentile.trim());
+		} else {
+			this.hedgePercentile = DEFAULT_HEDGE_PERCENTILE;
+		}
+
+		String initialDelay = properties
+				.getProperty(StationOperatorConstants.STATION_HEDGE_INITIAL_DELAY_MILLIS);
+		if (initialDelay != null && !initialDelay.trim().isEmpty()) {
+			this.hedgeInitialDelay = Long.parseLong(initialDelay.trim());
+		} else {
+			this.hedgeInitialDelay = DEFAULT_HEDGE_INITIAL_DELAY_MILLIS;
+		}
+	}
+
+	@Override
+	public JSONArray getStations(String year) {
+		return primary.getStations(year);
+	}
+
+	@Override
+	public JSONArray readStationCSVFile(String localStationsCSVFilePath) {
+		return primary.readStationCSVFile(localStationsCSVFilePath);
+	}
+
+	@Override
+	public StationCatalog getStationCatalog(String year) {
+		return primary.getStationCatalog(year);
+	}
+
+	@Override
+	public StationIndex getStationIndex(String year) {
+		return primary.getStationIndex(year);
+	}
+
+	@Override
+	public List<JSONObject> findNearestStation(Date date, double lat, double lon,
+			int numberOfDays) {
+		return primary.findNearestStation(date, lat, lon, numberOfDays);
+	}
+
+	@Override
+	public Iterator<JSONObject> nearestStations(Date date, double lat, double lon,
+			int numberOfDays) {
+		return primary.nearestStations(date, lat, lon, numberOfDays);
+	}
+
+	@Override
+	public JSONArray readStation(String stationId, String beginDate, String endDate)
+			throws Exception {
+		CompletionService<JSONArray> reads = new ExecutorCompletionService<JSONArray>(executor);
+		List<Future<JSONArray>> started = new ArrayList<Future<JSONArray>>(2);
+		Exception failure = null;
+		boolean interrupted = false;
+
+		long hedgeDelay = getHedgeDelay();
+		long begin = System.currentTimeMillis();
+		TimedRead primaryRead = new TimedRead(primary, primaryLatencies, stationId, beginDate,
+				endDate);
+		started.add(reads.submit(primaryRead));
+		try {
+			Future<JSONArray> done = reads.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+			if (done == null) {
+				LOGGER.info("Station [" + stationId + "] not read from primary backend in ["
+						+ hedgeDelay + "] ms, also reading it from secondary");
+				started.add(reads.submit(new TimedRead(secondary, secondaryLatencies, stationId,
+						beginDate, endDate)));
+				done = reads.take();
+			}
+
+			int completed = 0;
+			while (true) {
+				completed++;
+				try {
+					JSONArray records = done.get();
+					if (records != null) {
+						return records;
+					}
+				} catch (ExecutionException e) {
+					failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+				}
+
+				if (started.size() == 1) {
+					LOGGER.info("Station [" + stationId
+							+ "] not read from primary backend, reading it from secondary");
+					started.add(reads.submit(new TimedRead(secondary, secondaryLatencies,
+							stationId, beginDate, endDate)));
+				} else if (completed == started.size()) {
+					break;
+				}
+				done = reads.take();
+			}
+		} catch (InterruptedException e) {
+			interrupted = true;
+			Thread.currentThread().interrupt();
+			return null;
+		} finally {
+			if (started.get(0).cancel(true) && !interrupted) {
+				primaryRead.record(Math.max(System.currentTimeMillis() - begin, hedgeDelay));
+			}
+			for (Future<JSONArray> read : started) {
+				read.cancel(true);
+			}
+			LOGGER.debug("Station read latencies, primary [" + primaryLatencies
+					+ "], secondary [" + secondaryLatencies + "]");
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+		return null;
+	}
+
+	public LatencyHistogram getPrimaryLatencies() {
+		return primaryLatencies;
+	}
+
+	public LatencyHistogram getSecondaryLatencies() {
+		return secondaryLatencies;
+	}
+
+	protected long getHedgeDelay() {
+		if (primaryLatencies.getCount() < MIN_SAMPLES) {
+			return hedgeInitialDelay;
+		}
+		return primaryLatencies.getPercentile(hedgePercentile);
+	}
+
+	/**
+	 * Reads one station from a backend, recording how long it took unless it
+	 * was cancelled. A cancelled read is recorded by the caller, and only one
+	 * of the two samples is kept.
+	 */
+	private static class TimedRead implements Callable<JSONArray> {
+
+		private final StationOperator backend;
+		private final LatencyHistogram latencies;
+		private final String stationId;
+		private final String beginDate;
+		private final String endDate;
+		private final AtomicBoolean recorded = new AtomicBoolean();
+
+		TimedRead(StationOperator backend, LatencyHistogram latencies, String stationId,
+				String beginDate, String endDate) {
+			this.backend = backend;
+			this.latencies = latencies;
+			this.stationId = stationId;
+			this.beginDate = beginDate;
+			this.endDate = endDate;
+		}
+
+		@Override
+		public JSONArray call() throws Exception {
+			long begin = System.currentTimeMillis();
+			boolean interrupted = false;
+			try {
+				return backend.readStation(stationId, beginDate, endDate);
+			} catch (InterruptedException e) {
+				interrupted = true;
+				throw e;
+			} finally {
+				if (!interrupted && !Thread.currentThread().isInterrupted()) {
+					record(System.currentTimeMillis() - begin);
+				}
+			}
+		}
+
+		void record(long latency) {
+			if (recorded.compareAndSet(false, true)) {
+				latencies.record(latency);
+			}
+		}
+	}
+}
@@ -0,0 +1,445 @@
+package org.fogbowcloud.sebal.parsers.plugins;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.log4j.Logger;
+import org.fogbowcloud.sebal.util.SEBALAppConstants;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Reads the hourly records of a day, or of a window of days, straight from a
+ * gzipped NOAA ISD station-year file.
+ *
+ * The compressed stream is decoded once, line by line. A line becomes a
+ * record only when its date columns (15-23) are within the requested days,
+ * and reading stops at the first later day, since ISD files are sorted by date
+ * and time.
+ */
+public class ISDHourlyDataParser {
+
+	public static final int DATE_BEGIN = 15;
+	public static final int DATE_LENGTH = 8;
+	public static final int MIN_RECORD_LENGTH = 98;
+
+	/**
+	 * Begin and end columns of the fields kept from each line: station id,
+	 * time, latitude, longitude, wind speed, air and dew point temperature.
+	 */
+	public static final int[][] RECORD_COLUMNS = { { 4, 10 }, { 23, 27 }, { 28, 34 },
+			{ 34, 41 }, { 65, 69 }, { 87, 92 }, { 93, 98 } };
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final Charset CHARSET = Charset.forName("ISO-8859-1");
+
+	private static final Logger LOGGER = Logger.getLogger(ISDHourlyDataParser.class);
+
+	public static JSONArray readHourlyData(File compressedStationFile, String date)
+			throws IOException {
+		return readHourlyData(compressedStationFile, date, date);
+	}
+
+	/**
+	 * Reads the records of the days from beginDate to endDate, both included,
+	 * in a single pass over the file.
+	 */
+	public static JSONArray readHourlyData(File compressedStationFile, String beginDate,
+			String endDate) throws IOException {
+		LOGGER.info("Getting hourly data from date [" + beginDate + "] to date [" + endDate
+				+ "] from [" + compressedStationFile + "]");
+
+		InputStream input = new FileInputStream(compressedStationFile);
+		try {
+			return readHourlyData(input, beginDate, endDate);
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * @param compressedStream gzipped ISD content, left open
+	 * @param date day to read, as yyyyMMdd
+	 */
+	public static JSONArray readHourlyData(InputStream compressedStream, String date)
+			throws IOException {
+		return readHourlyData(compressedStream, date, date);
+	}
+
+	/**
+	 * Lines are split and decoded as bytes by an {@link ISDRecordDecoder}, so
+	 * only the records of the requested days create Strings. Lines the decoder
+	 * rejects are read as Strings, as they always were.
+	 *
+	 * @param compressedStream gzipped ISD content, left open
+	 * @param beginDate first day to read, as yyyyMMdd
+	 * @param endDate last day to read, as yyyyMMdd
+	 */
+	public static JSONArray readHourlyData(InputStream compressedStream, String beginDate,
+			String endDate) throws IOException {
+		JSONArray dataArray = new JSONArray();
+
+		int requestedBegin = toRequestedDate(beginDate);
+		int requestedEnd = toRequestedDate(endDate);
+		boolean decodable = requestedBegin >= 0 && requestedEnd >= 0;
+		ISDRecordDecoder decoder = new ISDRecordDecoder();
+		LineReader lines = new LineReader(new GZIPInputStream(compressedStream, BUFFER_SIZE));
+		while (lines.next()) {
+			byte[] buffer = lines.getBuffer();
+			int begin = lines.getBegin();
+			int length = lines.getLength();
+			if (length < MIN_RECORD_LENGTH) {
+				continue;
+			}
+			if (decodable && decoder.decode(buffer, begin, length)) {
+				int lineDate = decoder.getDate();
+				if (lineDate > requestedEnd) {
+					break;
+				} else if (lineDate >= requestedBegin) {
+					dataArray.put(toHourlyRecord(lineDate == requestedBegin ? beginDate
+							: zeroPadded(lineDate, DATE_LENGTH), decoder));
+				}
+			} else {
+				String line = new String(buffer, begin, length, CHARSET);
+				String lineDate = line.substring(DATE_BEGIN, DATE_BEGIN + DATE_LENGTH);
+				if (lineDate.compareTo(endDate) > 0) {
+					break;
+				} else if (lineDate.compareTo(beginDate) >= 0) {
+					dataArray.put(toHourlyRecord(line));
+				}
+			}
+		}
+
+		LOGGER.info("Successfully got [" + dataArray.length() + "] hourly records from date ["
+				+ beginDate + "] to date [" + endDate + "]");
+		return dataArray;
+	}
+
+	/**
+	 * Reads the records of every day of a station file in one pass.
+	 *
+	 * Each day gets the records {@link #readHourlyData(File, String)} returns
+	 * for it: a line only counts if no earlier line has a later date, as that
+	 * method stops there. Days where it would fail to parse a line are mapped to
+	 * null.
+	 */
+	public static Map<String, JSONArray> readHourlyDataByDay(File compressedStationFile)
+			throws IOException {
+		Map<String, JSONArray> days = new LinkedHashMap<String, JSONArray>();
+
+		InputStream input = new FileInputStream(compressedStationFile);
+		try {
+			ISDRecordDecoder decoder = new ISDRecordDecoder();
+			LineReader lines = new LineReader(new GZIPInputStream(input, BUFFER_SIZE));
+			String lastDate = null;
+			while (lines.next()) {
+				byte[] buffer = lines.getBuffer();
+				int begin = lines.getBegin();
+				int length = lines.getLength();
+				if (length < MIN_RECORD_LENGTH) {
+					continue;
+				}
+
+				String date;
+				String line = null;
+				if (decoder.decode(buffer, begin, length)) {
+					date = zeroPadded(decoder.getDate(), DATE_LENGTH);
+				} else {
+					line = new String(buffer, begin, length, CHARSET);
+					date = line.substring(DATE_BEGIN, DATE_BEGIN + DATE_LENGTH);
+				}
+				if (lastDate != null && date.compareTo(lastDate) < 0) {
+					continue;
+				}
+				lastDate = date;
+
+				if (days.containsKey(date) && days.get(date) == null) {
+					continue;
+				}
+				JSONArray records = days.get(date);
+				if (records == null) {
+					records = new JSONArray();
+					days.put(date, records);
+				}
+				try {
+					records.put(line == null ? toHourlyRecord(date, decoder) : toHourlyRecord(line));
+				} catch (RuntimeException e) {
+					LOGGER.debug("Could not parse a record of [" + date + "] in ["
+							+ compressedStationFile + "]", e);
+					days.put(date, null);
+				}
+			}
+		} finally {
+			input.close();
+		}
+		return days;
+	}
+
+	/**
+	 * @return the date as yyyyMMdd digits, or -1 if it is not in that format
+	 */
+	private static int toRequestedDate(String date) {
+		if (date == null || date.length() != DATE_LENGTH) {
+			return -1;
+		}
+
+		int value = 0;
+		for (int i = 0; i < DATE_LENGTH; i++) {
+			char digit = date.charAt(i);
+			if (digit < '0' || digit > '9') {
+				return -1;
+			}
+			value = value * 10 + digit - '0';
+		}
+		return value;
+	}
+
+	/**
+	 * Builds the same record {@link #toHourlyRecord(String)} builds for the
+	 * decoded line.
+	 */
+	protected static JSONObject toHourlyRecord(String date, ISDRecordDecoder decoder) {
+		JSONObject jsonObject = new JSONObject();
+
+		jsonObject.put(SEBALAppConstants.JSON_STATION_ID, zeroPadded(decoder.getStationId(), 6));
+		jsonObject.put(SEBALAppConstants.JSON_STATION_DATE, date);
+		jsonObject.put(SEBALAppConstants.JSON_STATION_TIME, zeroPadded(decoder.getTime(), 4));
+		jsonObject.put(SEBALAppConstants.JSON_STATION_LATITUDE,
+				String.valueOf(decoder.getLatitude()));
+		jsonObject.put(SEBALAppConstants.JSON_STATION_LONGITUDE,
+				String.valueOf(decoder.getLongitude()));
+		jsonObject.put(SEBALAppConstants.JSON_STATION_WIND_SPEED,
+				String.valueOf(decoder.getWindSpeed()));
+		jsonObject.put(SEBALAppConstants.JSON_AIR_TEMPERATURE,
+				String.valueOf(decoder.getAirTemperature()));
+		jsonObject.put(SEBALAppConstants.JSON_DEWPOINT_TEMPERATURE,
+				String.valueOf(decoder.getDewPointTemperature()));
+
+		return jsonObject;
+	}
+
+	private static String zeroPadded(int value, int length) {
+		String digits = String.valueOf(value);
+		StringBuilder padded = new StringBuilder(length);
+		for (int i = digits.length(); i < length; i++) {
+			padded.append('0');
+		}
+		return padded.append(digits).toString();
+	}
+
+	protected static JSONObject toHourlyRecord(String data) {
+		String[] fields = new String[RECORD_COLUMNS.length];
+		for (int i = 0; i < RECORD_COLUMNS.length; i++) {
+			fields[i] = data.substring(RECORD_COLUMNS[i][0], RECORD_COLUMNS[i][1]);
+		}
+		return toHourlyRecord(data.substring(DATE_BEGIN, DATE_BEGIN + DATE_LENGTH), fields);
+	}
+
+	/**
+	 * @param fields the raw {@link #RECORD_COLUMNS} values of one line
+	 */
+	public static JSONObject toHourlyRecord(String date, String[] fields) {
+		JSONObject jsonObject = new JSONObject();
+
+		String stationId = fields[0];
+		String time = fields[1];
+		String latitude = changeToLatitudeFormat(fields[2]);
+		String longitude = changeToLongitudeFormat(fields[3]);
+		String windSpeed = changeToWindSpeedFormat(fields[4]);
+		String airTemp = changeToAirTempFormat(fields[5]);
+		String dewTemp = changeToDewTempFormat(fields[6]);
+
+		jsonObject.put(SEBALAppConstants.JSON_STATION_ID, stationId);
+		jsonObject.put(SEBALAppConstants.JSON_STATION_DATE, date);
+		jsonObject.put(SEBALAppConstants.JSON_STATION_TIME, time);
+		jsonObject.put(SEBALAppConstants.JSON_STATION_LATITUDE, latitude);
+		jsonObject.put(SEBALAppConstants.JSON_STATION_LONGITUDE, longitude);
+		jsonObject.put(SEBALAppConstants.JSON_STATION_WIND_SPEED, windSpeed);
+		jsonObject.put(SEBALAppConstants.JSON_AIR_TEMPERATURE, airTemp);
+		jsonObject.put(SEBALAppConstants.JSON_DEWPOINT_TEMPERATURE, dewTemp);
+
+		return jsonObject;
+	}
+
+	private static String changeToLatitudeFormat(String latitude) {
+
+		StringBuilder sb = new StringBuilder(latitude);
+		if (latitude.contains("+")) {
+			sb.deleteCharAt(0);
+		}
+		latitude = sb.toString();
+		double latitudeValue = Double.valueOf(latitude) / 1000.0;
+		return String.valueOf(latitudeValue);
+	}
+
+	private static String changeToLongitudeFormat(String longitude) {
+
+		StringBuilder sb = new StringBuilder(longitude);
+		if (longitude.contains("+")) {
+			sb.deleteCharAt(0);
+		}
+		longitude = sb.toString();
+		double longitudeValue = Double.valueOf(longitude) / 1000.0;
+		return String.valueOf(longitudeValue);
+	}
+
+	private static String changeToWindSpeedFormat(String windSpeed)
+			throws NumberFormatException {
+
+		if (windSpeed.equals("99999")) {
+			windSpeed = "***";
+		} else {
+			windSpeed = formatWindSpeed(windSpeed);
+		}
+		return windSpeed;
+	}
+
+	private static String changeToAirTempFormat(String airTemp) throws NumberFormatException {
+
+		StringBuilder sb;
+		String airTempSign = airTemp.substring(0, 0);
+		sb = new StringBuilder(airTemp);
+		sb.deleteCharAt(0);
+		airTemp = sb.toString();
+		if (airTemp.equals("99999")) {
+			airTemp = "****";
+		} else {
+			airTemp = formatAirTemp(airTemp, airTempSign);
+		}
+		return airTemp;
+	}
+
+	private static String changeToDewTempFormat(String dewTemp) throws NumberFormatException {
+
+		StringBuilder sb;
+		String dewTempSign = dewTemp.substring(0, 0);
+		sb = new StringBuilder(dewTemp);
+		sb.deleteCharAt(0);
+		dewTemp = sb.toString();
+		if (dewTemp.equals("99999")) {
+			dewTemp = "****";
+		} else {
+			dewTemp = formatDewTemp(dewTemp, dewTempSign);
+		}
+		return dewTemp;
+	}
+
+	private static String formatWindSpeed(String windSpeed) throws NumberFormatException {
+
+		double integerConvertion = Integer.parseInt(windSpeed);
+		integerConvertion = integerConvertion / 10.0;
+		return String.valueOf(integerConvertion);
+	}
+
+	private static String formatAirTemp(String airTemp, String airTempSign)
+			throws NumberFormatException {
+
+		double integerConvertion = Integer.parseInt(airTemp);
+		if (airTempSign.equals("-")) {
+			integerConvertion *= -1;
+		}
+
+		integerConvertion = integerConvertion / 10.0;
+		return String.valueOf(integerConvertion);
+	}
+
+	private static String formatDewTemp(String dewTemp, String dewTempSign)
+			throws NumberFormatException {
+
+		double integerConvertion = Integer.parseInt(dewTemp);
+		if (dewTempSign.equals("-")) {
+			integerConvertion *= -1;
+		}
+
+		integerConvertion = integerConvertion / 10.0;
+		return String.valueOf(integerConvertion);
+	}
+
+	/**
+	 * Splits a stream into lines the way BufferedReader does ('\n', '\r' or
+	 * "\r\n"), exposing each one as a range of a reused byte buffer.
+	 */
+	private static class LineReader {
+
+		private final InputStream input;
+		private byte[] buffer = new byte[BUFFER_SIZE];
+		private int end;
+		private int next;
+		private int lineBegin;
+		private int lineLength;
+		private boolean endOfStream;
+
+		LineReader(InputStream input) {
+			this.input = input;
+		}
+
+		/**
+		 * @return false once there are no more lines
+		 */
+		boolean next() throws IOException {
+			while (true) {
+				int lineEnd = indexOfLineEnd(next);
+				// a '\r' last in the buffer may still be followed by its '\n'
+				boolean needsMore = lineEnd < 0 || (lineEnd == end - 1 && buffer[lineEnd] == '\r');
+				if (!needsMore || endOfStream) {
+					if (lineEnd < 0 && next == end) {
+						return false;
+					}
+
+					lineBegin = next;
+					if (lineEnd < 0) {
+						lineEnd = end;
+						next = end;
+					} else {
+						next = lineEnd + 1;
+						if (buffer[lineEnd] == '\r' && next < end && buffer[next] == '\n') {
+							next++;
+						}
+					}
+					lineLength = lineEnd - lineBegin;
+					return true;
+				}
+
+				System.arraycopy(buffer, next, buffer, 0, end - next);
+				end -= next;
+				next = 0;
+				if (end == buffer.length) {
+					buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				}
+				int read = input.read(buffer, end, buffer.length - end);
+				if (read < 0) {
+					endOfStream = true;
+				} else {
+					end += read;
+				}
+			}
+		}
+
+		byte[] getBuffer() {
+			return buffer;
+		}
+
+		int getBegin() {
+			return lineBegin;
+		}
+
+		int getLength() {
+			return lineLength;
+		}
+
+		private int indexOfLineEnd(int begin) {
+			for (int i = begin; i < end; i++) {
+				if (buffer[i] == '\n' || buffer[i] == '\r') {
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+}
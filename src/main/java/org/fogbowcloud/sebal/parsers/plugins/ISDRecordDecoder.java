@@ -0,0 +1,136 @@
+package org.fogbowcloud.sebal.parsers.plugins;
+
+/**
+ * Decodes the fixed-width columns of one ISD line (station id, date, time,
+ * latitude, longitude, wind speed, air and dew point temperature) straight
+ * from its bytes into primitives, without creating any String. One instance
+ * is meant to be reused for every line of a file.
+ *
+ * Values are computed exactly as the String path of
+ * {@link ISDHourlyDataParser} does, including ignoring the sign column of the
+ * temperatures. A line using any other notation (e.g. a signed wind speed) is
+ * rejected, so callers can fall back to the String path for it.
+ */
+public class ISDRecordDecoder {
+
+	private static final int INVALID = Integer.MIN_VALUE;
+
+	private int stationId;
+	private int date;
+	private int time;
+	private double latitude;
+	private double longitude;
+	private double windSpeed;
+	private double airTemperature;
+	private double dewPointTemperature;
+
+	/**
+	 * @return false if the line is too short or a column is not in the plain
+	 *         notation this decoder reads
+	 */
+	public boolean decode(byte[] line, int offset, int length) {
+		if (length < ISDHourlyDataParser.MIN_RECORD_LENGTH) {
+			return false;
+		}
+
+		stationId = digits(line, offset + 4, 6);
+		date = digits(line, offset + ISDHourlyDataParser.DATE_BEGIN,
+				ISDHourlyDataParser.DATE_LENGTH);
+		time = digits(line, offset + 23, 4);
+		int wind = digits(line, offset + 65, 4);
+		int air = digits(line, offset + 88, 4);
+		int dew = digits(line, offset + 94, 4);
+		if (stationId == INVALID || date == INVALID || time == INVALID || wind == INVALID
+				|| air == INVALID || dew == INVALID) {
+			return false;
+		}
+
+		latitude = signedThousandths(line, offset + 28, 6);
+		longitude = signedThousandths(line, offset + 34, 7);
+		if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+			return false;
+		}
+
+		windSpeed = wind / 10.0;
+		airTemperature = air / 10.0;
+		dewPointTemperature = dew / 10.0;
+		return true;
+	}
+
+	/**
+	 * @return yyyyMMdd of the decoded line
+	 */
+	public int getDate() {
+		return date;
+	}
+
+	public int getStationId() {
+		return stationId;
+	}
+
+	/**
+	 * @return hhmm of the decoded line
+	 */
+	public int getTime() {
+		return time;
+	}
+
+	public double getLatitude() {
+		return latitude;
+	}
+
+	public double getLongitude() {
+		return longitude;
+	}
+
+	public double getWindSpeed() {
+		return windSpeed;
+	}
+
+	public double getAirTemperature() {
+		return airTemperature;
+	}
+
+	public double getDewPointTemperature() {
+		return dewPointTemperature;
+	}
+
+	/**
+	 * Parses an optional sign followed by digits filling the column, divided
+	 * by 1000 (NaN if the column holds anything else).
+	 */
+	private static double signedThousandths(byte[] line, int begin, int length) {
+		boolean negative = line[begin] == '-';
+		int start = begin;
+		if (negative || line[begin] == '+') {
+			start++;
+		}
+		int magnitude = digits(line, start, begin + length - start);
+		if (magnitude == INVALID) {
+			return Double.NaN;
+		}
+
+		// as a double, so "-00000" stays -0.0 as Double.valueOf reads it
+		double value = magnitude;
+		if (negative) {
+			value = -value;
+		}
+		return value / 1000.0;
+	}
+
+	private static int digits(byte[] line, int begin, int length) {
+		if (length <= 0) {
+			return INVALID;
+		}
+
+		int value = 0;
+		for (int i = begin; i < begin + length; i++) {
+			int digit = line[i] - '0';
+			if (digit < 0 || digit > 9) {
+				return INVALID;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+}
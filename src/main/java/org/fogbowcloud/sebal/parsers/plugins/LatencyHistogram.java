@@ -0,0 +1,68 @@
+package org.fogbowcloud.sebal.parsers.plugins;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies in buckets a quarter power of two wide, so percentiles are
+ * known within about 20% without keeping the samples. Safe to update from
+ * many threads.
+ */
+public class LatencyHistogram {
+
+	private static final int BUCKETS_PER_DOUBLING = 4;
+	private static final int BUCKETS = 30 * BUCKETS_PER_DOUBLING;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	public void record(long millis) {
+		counts.incrementAndGet(getBucket(millis));
+	}
+
+	public long getCount() {
+		long count = 0;
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			count += counts.get(bucket);
+		}
+		return count;
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the upper bound, in milliseconds, of the bucket holding the
+	 *         percentile, or 0 if nothing was recorded
+	 */
+	public long getPercentile(double percentile) {
+		long count = getCount();
+		if (count == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long seen = 0;
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			seen += counts.get(bucket);
+			if (seen >= rank) {
+				return getUpperBound(bucket);
+			}
+		}
+		return getUpperBound(BUCKETS - 1);
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + getCount() + " p50=" + getPercentile(50) + "ms p95="
+				+ getPercentile(95) + "ms p99=" + getPercentile(99) + "ms";
+	}
+
+	private static int getBucket(long millis) {
+		if (millis <= 1) {
+			return 0;
+		}
+		int bucket = (int) Math.ceil(BUCKETS_PER_DOUBLING * Math.log(millis) / Math.log(2));
+		return Math.min(bucket, BUCKETS - 1);
+	}
+
+	private static long getUpperBound(int bucket) {
+		return (long) Math.ceil(Math.pow(2, (double) bucket / BUCKETS_PER_DOUBLING));
+	}
+}
@@ -0,0 +1,355 @@
+package org.fogbowcloud.sebal.parsers.plugins;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import org.fogbowcloud.sebal.util.SEBALAppConstants;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Columnar station catalog: one primitive array per attribute instead of one
+ * JSONObject per station.
+ *
+ * Numeric station ids are kept as ints together with their digit count, so ids
+ * with leading zeros (e.g. "010010") are written back exactly as they were
+ * read. Other ids (e.g. "A00023") have no digit count and are kept as strings
+ * in a side table.
+ *
+ * The compiled binary form is a 32 byte header followed by the latitude,
+ * longitude, id and id digit columns and by the side table. The header
+ * records the length and modification time of the file it was compiled from,
+ * so a compiled catalog is only trusted while its source is unchanged. A
+ * mapped catalog reads its columns straight from the mapping.
+ */
+public class StationCatalog {
+
+	private static final int MAGIC = 0x53424c43; // "SBLC"
+	private static final int VERSION = 2;
+	private static final int MAX_NUMERIC_ID_DIGITS = 9;
+	private static final int HEADER_SIZE = 32;
+
+	private static final Logger LOGGER = Logger.getLogger(StationCatalog.class);
+
+	private final IntBuffer ids;
+	private final ByteBuffer idDigits;
+	private final DoubleBuffer latitudes;
+	private final DoubleBuffer longitudes;
+	private final Map<Integer, String> textIds;
+
+	public StationCatalog(int[] ids, byte[] idDigits, double[] latitudes, double[] longitudes,
+			Map<Integer, String> textIds) {
+		this(IntBuffer.wrap(ids), ByteBuffer.wrap(idDigits), DoubleBuffer.wrap(latitudes),
+				DoubleBuffer.wrap(longitudes), textIds);
+	}
+
+	private StationCatalog(IntBuffer ids, ByteBuffer idDigits, DoubleBuffer latitudes,
+			DoubleBuffer longitudes, Map<Integer, String> textIds) {
+		this.ids = ids;
+		this.idDigits = idDigits;
+		this.latitudes = latitudes;
+		this.longitudes = longitudes;
+		this.textIds = textIds;
+	}
+
+	public int size() {
+		return ids.limit();
+	}
+
+	/**
+	 * @return the numeric id of the station, or -1 if its id is not numeric
+	 */
+	public int getId(int station) {
+		return ids.get(station);
+	}
+
+	/**
+	 * @return the digit count of the numeric id, or 0 if the id is not numeric
+	 */
+	public byte getIdDigits(int station) {
+		return idDigits.get(station);
+	}
+
+	public double getLatitude(int station) {
+		return latitudes.get(station);
+	}
+
+	public double getLongitude(int station) {
+		return longitudes.get(station);
+	}
+
+	public String getIdAsString(int station) {
+		byte digits = idDigits.get(station);
+		return digits == 0 ? textIds.get(station) : formatId(ids.get(station), digits);
+	}
+
+	public JSONObject toJSONObject(int station) {
+		JSONObject stationObject = new JSONObject();
+		stationObject.put("id", getIdAsString(station));
+		stationObject.put("lat", latitudes.get(station));
+		stationObject.put("lon", longitudes.get(station));
+		return stationObject;
+	}
+
+	public JSONArray toJSONArray() {
+		JSONArray stations = new JSONArray();
+		for (int i = 0; i < size(); i++) {
+			stations.put(toJSONObject(i));
+		}
+		return stations;
+	}
+
+	/**
+	 * Reads a "id;lat;lon" catalog, as served by station_csv_server_url.
+	 */
+	public static StationCatalog fromCSV(File csvFile) throws IOException {
+		Builder builder = new Builder();
+
+		BufferedReader reader = new BufferedReader(new FileReader(csvFile));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] lineSplit = line.split(";");
+				if (lineSplit.length < 3) {
+					continue;
+				}
+				builder.add(lineSplit[0].trim(), parseCoordinate(lineSplit[1]),
+						parseCoordinate(lineSplit[2]));
+			}
+		} finally {
+			reader.close();
+		}
+
+		return builder.build();
+	}
+
+	/**
+	 * Reads a catalog in the format of the bundled stations.json.
+	 */
+	public static StationCatalog fromJSON(JSONArray stations) {
+		Builder builder = new Builder();
+		for (int i = 0; i < stations.length(); i++) {
+			JSONObject station = stations.optJSONObject(i);
+			if (station != null) {
+				builder.add(station.optString("id").trim(), station.optDouble("lat"),
+						station.optDouble("lon"));
+			}
+		}
+		return builder.build();
+	}
+
+	public static StationCatalog fromJSON(File jsonFile) throws IOException {
+		return fromJSON(
+				new JSONArray(FileUtils.readFileToString(jsonFile, SEBALAppConstants.FILE_ENCODING)));
+	}
+
+	/**
+	 * Writes the compiled form, stamped with the source file it came from.
+	 */
+	public void write(File compiledFile, File sourceFile) throws IOException {
+		// unique, other backends may be compiling the same catalog
+		File partialFile = File.createTempFile(compiledFile.getName(), ".part",
+				compiledFile.getAbsoluteFile().getParentFile());
+		try {
+			DataOutputStream output = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(partialFile)));
+			try {
+				output.writeInt(MAGIC);
+				output.writeInt(VERSION);
+				output.writeInt(size());
+				output.writeInt(textIds.size());
+				output.writeLong(sourceFile == null ? 0 : sourceFile.length());
+				output.writeLong(sourceFile == null ? 0 : sourceFile.lastModified());
+				for (int i = 0; i < size(); i++) {
+					output.writeDouble(latitudes.get(i));
+				}
+				for (int i = 0; i < size(); i++) {
+					output.writeDouble(longitudes.get(i));
+				}
+				for (int i = 0; i < size(); i++) {
+					output.writeInt(ids.get(i));
+				}
+				for (int i = 0; i < size(); i++) {
+					output.writeByte(idDigits.get(i));
+				}
+				for (Map.Entry<Integer, String> textId : textIds.entrySet()) {
+					byte[] idBytes = textId.getValue().getBytes(SEBALAppConstants.FILE_ENCODING);
+					output.writeInt(textId.getKey());
+					output.writeShort(idBytes.length);
+					output.write(idBytes);
+				}
+			} finally {
+				output.close();
+			}
+			Files.move(partialFile.toPath(), compiledFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			// left behind only when writing or moving failed
+			partialFile.delete();
+		}
+	}
+
+	/**
+	 * Maps a compiled catalog into memory. Only the side table of non numeric
+	 * ids is copied to the heap, the columns are read from the mapping.
+	 *
+	 * @return the catalog, or null if the file is not a compiled catalog or,
+	 *         when a source file is given, was compiled from another version
+	 *         of it
+	 */
+	public static StationCatalog map(File compiledFile, File sourceFile) throws IOException {
+		FileInputStream input = new FileInputStream(compiledFile);
+		try {
+			FileChannel channel = input.getChannel();
+			if (channel.size() < HEADER_SIZE) {
+				return null;
+			}
+
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+				LOGGER.warn("Ignoring [" + compiledFile + "]: not a compiled station catalog");
+				return null;
+			}
+
+			int size = buffer.getInt();
+			int textIdCount = buffer.getInt();
+			long sourceLength = buffer.getLong();
+			long sourceLastModified = buffer.getLong();
+			if (sourceFile != null && (sourceFile.length() != sourceLength
+					|| sourceFile.lastModified() != sourceLastModified)) {
+				return null;
+			}
+			long textIdsPosition = HEADER_SIZE + (long) size * (8 + 8 + 4 + 1);
+			if (channel.size() < textIdsPosition) {
+				LOGGER.warn("Ignoring [" + compiledFile + "]: truncated station catalog");
+				return null;
+			}
+
+			DoubleBuffer latitudes = getColumn(buffer, size * 8).asDoubleBuffer();
+			DoubleBuffer longitudes = getColumn(buffer, size * 8).asDoubleBuffer();
+			IntBuffer ids = getColumn(buffer, size * 4).asIntBuffer();
+			ByteBuffer idDigits = getColumn(buffer, size);
+
+			Map<Integer, String> textIds = new HashMap<Integer, String>();
+			try {
+				for (int i = 0; i < textIdCount; i++) {
+					int station = buffer.getInt();
+					byte[] idBytes = new byte[buffer.getShort()];
+					buffer.get(idBytes);
+					textIds.put(station, new String(idBytes, SEBALAppConstants.FILE_ENCODING));
+				}
+			} catch (BufferUnderflowException e) {
+				LOGGER.warn("Ignoring [" + compiledFile + "]: truncated station catalog");
+				return null;
+			}
+
+			return new StationCatalog(ids, idDigits, latitudes, longitudes, textIds);
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * @return a read-only view of the next column of the buffer, which is
+	 *         then positioned after it
+	 */
+	private static ByteBuffer getColumn(ByteBuffer buffer, int length) {
+		ByteBuffer column = buffer.slice();
+		column.limit(length);
+		buffer.position(buffer.position() + length);
+		return column;
+	}
+
+	public static String formatId(int id, int digits) {
+		String idString = String.valueOf(id);
+		if (idString.length() >= digits) {
+			return idString;
+		}
+
+		StringBuilder builder = new StringBuilder(digits);
+		for (int i = idString.length(); i < digits; i++) {
+			builder.append('0');
+		}
+		return builder.append(idString).toString();
+	}
+
+	private static boolean isNumericId(String id) {
+		if (id.isEmpty() || id.length() > MAX_NUMERIC_ID_DIGITS) {
+			return false;
+		}
+		for (int i = 0; i < id.length(); i++) {
+			if (id.charAt(i) < '0' || id.charAt(i) > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static double parseCoordinate(String value) {
+		try {
+			return Double.parseDouble(value.trim());
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	private static class Builder {
+
+		private int size;
+		private int[] ids = new int[1024];
+		private byte[] idDigits = new byte[1024];
+		private double[] latitudes = new double[1024];
+		private double[] longitudes = new double[1024];
+		private final Map<Integer, String> textIds = new HashMap<Integer, String>();
+
+		void add(String id, double latitude, double longitude) {
+			if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+				LOGGER.debug("Skipping station [" + id + "] without coordinates");
+				return;
+			}
+
+			if (size == ids.length) {
+				int capacity = size * 2;
+				ids = Arrays.copyOf(ids, capacity);
+				idDigits = Arrays.copyOf(idDigits, capacity);
+				latitudes = Arrays.copyOf(latitudes, capacity);
+				longitudes = Arrays.copyOf(longitudes, capacity);
+			}
+
+			if (isNumericId(id)) {
+				ids[size] = Integer.parseInt(id);
+				idDigits[size] = (byte) id.length();
+			} else {
+				ids[size] = -1;
+				idDigits[size] = 0;
+				textIds.put(size, id);
+			}
+			latitudes[size] = latitude;
+			longitudes[size] = longitude;
+			size++;
+		}
+
+		StationCatalog build() {
+			return new StationCatalog(Arrays.copyOf(ids, size), Arrays.copyOf(idDigits, size),
+					Arrays.copyOf(latitudes, size), Arrays.copyOf(longitudes, size), textIds);
+		}
+	}
+}
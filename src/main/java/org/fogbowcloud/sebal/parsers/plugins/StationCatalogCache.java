@@ -0,0 +1,271 @@
+package org.fogbowcloud.sebal.parsers.plugins;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps the yearly station catalogs on disk between runs and parsed in memory
+ * within the JVM.
+ *
+ * A catalog file is trusted for the configured TTL after it was last validated
+ * against the server. Once the TTL expires it is revalidated with a
+ * conditional GET (If-None-Match / If-Modified-Since), so an unchanged catalog
+ * costs a 304 and no transfer. Validation state lives in a ".meta" file next
+ * to the catalog, and the compiled {@link StationCatalog} in a ".bin" file, so
+ * later runs map it instead of parsing the CSV again.
+ *
+ * Revalidations share one pooled, keep-alive HttpClient per JVM, so caches
+ * created for each job reuse its connections and never leak a pool.
+ */
+public class StationCatalogCache {
+
+	public static final long DEFAULT_TTL_HOURS = 24;
+
+	private static final String META_FILE_SUFFIX = ".meta";
+	private static final String COMPILED_FILE_SUFFIX = ".bin";
+	private static final String META_ETAG = "etag";
+	private static final String META_LAST_MODIFIED = "last_modified";
+	private static final String META_VALIDATED_AT = "validated_at";
+
+	private static final long AN_HOUR = 1000 * 60 * 60;
+
+	private static final Map<String, MemoryEntry> MEMORY = new ConcurrentHashMap<String, MemoryEntry>();
+	private static final CloseableHttpClient HTTP_CLIENT = HttpClients.custom()
+			.setConnectionManager(new PoolingHttpClientConnectionManager()).build();
+
+	private static final Logger LOGGER = Logger.getLogger(StationCatalogCache.class);
+
+	private long ttl;
+
+	public StationCatalogCache(Properties properties) {
+		this.ttl = DEFAULT_TTL_HOURS * AN_HOUR;
+
+		String ttlHours = properties.getProperty(StationOperatorConstants.STATION_CATALOG_TTL_HOURS);
+		if (ttlHours != null && !ttlHours.trim().isEmpty()) {
+			this.ttl = (long) (Double.parseDouble(ttlHours.trim()) * AN_HOUR);
+		}
+	}
+
+	/**
+	 * Returns the catalog for this CSV file, from memory, from its compiled
+	 * form when that still matches the CSV, or by compiling the CSV.
+	 */
+	public StationCatalog load(String catalogFilePath) throws IOException {
+		StationCatalog catalog = getFromMemory(catalogFilePath);
+		if (catalog != null) {
+			return catalog;
+		}
+
+		File catalogFile = new File(catalogFilePath);
+		File compiledFile = new File(catalogFilePath + COMPILED_FILE_SUFFIX);
+		if (compiledFile.exists()) {
+			try {
+				catalog = StationCatalog.map(compiledFile, catalogFile);
+			} catch (IOException e) {
+				LOGGER.warn("Error while mapping compiled catalog [" + compiledFile + "]", e);
+			}
+		}
+
+		if (catalog == null) {
+			LOGGER.info("Compiling stations file [" + catalogFilePath + "]");
+			catalog = StationCatalog.fromCSV(catalogFile);
+			try {
+				catalog.write(compiledFile, catalogFile);
+			} catch (IOException e) {
+				LOGGER.warn("Error while writing compiled catalog [" + compiledFile + "]", e);
+			}
+		}
+
+		putInMemory(catalogFilePath, catalog);
+		return catalog;
+	}
+
+	/**
+	 * Tells whether the catalog file exists and was validated within the TTL.
+	 */
+	public boolean isFresh(String catalogFilePath) {
+		if (!new File(catalogFilePath).exists()) {
+			return false;
+		}
+
+		Properties meta = readMeta(catalogFilePath);
+		long validatedAt = Long.parseLong(meta.getProperty(META_VALIDATED_AT, "0"));
+		return System.currentTimeMillis() - validatedAt < ttl;
+	}
+
+	/**
+	 * Brings the catalog file up to date with the given URL, sending the
+	 * validators of the local copy when there is one.
+	 *
+	 * @return true if the local file is now current (downloaded or confirmed
+	 *         unchanged), false if the server could not be reached or refused
+	 *         the request
+	 */
+	public synchronized boolean revalidate(String catalogFilePath, String url) {
+		File catalogFile = new File(catalogFilePath);
+		Properties meta = catalogFile.exists() ? readMeta(catalogFilePath) : new Properties();
+
+		HttpGet catalogGet = new HttpGet(url);
+		if (meta.getProperty(META_ETAG) != null) {
+			catalogGet.setHeader("If-None-Match", meta.getProperty(META_ETAG));
+		}
+		if (meta.getProperty(META_LAST_MODIFIED) != null) {
+			catalogGet.setHeader("If-Modified-Since", meta.getProperty(META_LAST_MODIFIED));
+		}
+
+		try {
+			CloseableHttpResponse response = HTTP_CLIENT.execute(catalogGet);
+			try {
+				int statusCode = response.getStatusLine().getStatusCode();
+
+				if (statusCode == HttpStatus.SC_NOT_MODIFIED) {
+					EntityUtils.consume(response.getEntity());
+					LOGGER.info("Stations file [" + catalogFilePath + "] not modified at [" + url
+							+ "]");
+				} else if (statusCode == HttpStatus.SC_OK) {
+					writeCatalog(catalogFile, response.getEntity().getContent());
+					meta = new Properties();
+					putHeader(meta, META_ETAG, response.getFirstHeader("ETag"));
+					putHeader(meta, META_LAST_MODIFIED, response.getFirstHeader("Last-Modified"));
+					LOGGER.info("Downloaded stations file [" + url + "] to [" + catalogFilePath
+							+ "]");
+				} else {
+					EntityUtils.consume(response.getEntity());
+					LOGGER.error("Unexpected status [" + statusCode + "] while downloading ["
+							+ url + "]");
+					return false;
+				}
+			} finally {
+				response.close();
+			}
+
+			meta.setProperty(META_VALIDATED_AT, String.valueOf(System.currentTimeMillis()));
+			writeMeta(catalogFilePath, meta);
+			return true;
+		} catch (IOException e) {
+			LOGGER.error("Error while revalidating stations file [" + catalogFilePath + "]", e);
+			return false;
+		}
+	}
+
+	private StationCatalog getFromMemory(String catalogFilePath) {
+		MemoryEntry entry = MEMORY.get(catalogFilePath);
+		if (entry == null) {
+			return null;
+		}
+
+		// the CSV changed on disk since it was loaded
+		File catalogFile = new File(catalogFilePath);
+		if (catalogFile.lastModified() != entry.lastModified
+				|| catalogFile.length() != entry.length) {
+			MEMORY.remove(catalogFilePath);
+			return null;
+		}
+		return entry.catalog;
+	}
+
+	private void putInMemory(String catalogFilePath, StationCatalog catalog) {
+		File catalogFile = new File(catalogFilePath);
+		MEMORY.put(catalogFilePath,
+				new MemoryEntry(catalog, catalogFile.lastModified(), catalogFile.length()));
+	}
+
+	private void writeCatalog(File catalogFile, InputStream content) throws IOException {
+		File parent = catalogFile.getAbsoluteFile().getParentFile();
+		if (!parent.exists()) {
+			parent.mkdirs();
+		}
+
+		// written aside and moved, so a broken transfer never replaces a good
+		// copy; unique, other backends may be refreshing the same catalog
+		File partialFile = File.createTempFile(catalogFile.getName(), ".part", parent);
+		try {
+			OutputStream outStream = new FileOutputStream(partialFile);
+			try {
+				IOUtils.copy(content, outStream);
+			} finally {
+				outStream.close();
+			}
+			Files.move(partialFile.toPath(), catalogFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			// left behind only when writing or moving failed
+			partialFile.delete();
+		}
+	}
+
+	private void putHeader(Properties meta, String key, Header header) {
+		if (header != null) {
+			meta.setProperty(key, header.getValue());
+		}
+	}
+
+	private Properties readMeta(String catalogFilePath) {
+		Properties meta = new Properties();
+		File metaFile = new File(catalogFilePath + META_FILE_SUFFIX);
+		if (metaFile.exists()) {
+			try {
+				InputStream input = new FileInputStream(metaFile);
+				try {
+					meta.load(input);
+				} finally {
+					input.close();
+				}
+			} catch (IOException e) {
+				LOGGER.warn("Ignoring unreadable cache metadata [" + metaFile + "]", e);
+			}
+		}
+		return meta;
+	}
+
+	private void writeMeta(String catalogFilePath, Properties meta) throws IOException {
+		File metaFile = new File(catalogFilePath + META_FILE_SUFFIX);
+		File partialFile = File.createTempFile(metaFile.getName(), ".part",
+				metaFile.getAbsoluteFile().getParentFile());
+		try {
+			OutputStream output = new FileOutputStream(partialFile);
+			try {
+				meta.store(output, null);
+			} finally {
+				output.close();
+			}
+			Files.move(partialFile.toPath(), metaFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			partialFile.delete();
+		}
+	}
+
+	private static class MemoryEntry {
+
+		private final StationCatalog catalog;
+		private final long lastModified;
+		private final long length;
+
+		MemoryEntry(StationCatalog catalog, long lastModified, long length) {
+			this.catalog = catalog;
+			this.lastModified = lastModified;
+			this.length = length;
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package org.fogbowcloud.sebal.parsers.plugins;
+
+import java.io.File;
+
+/**
+ * Compiles a station catalog (the bundled stations.json or a yearly
+ * "id;lat;lon" CSV) into the binary form read by {@link StationCatalog#map}.
+ *
+ * Usage: StationCatalogCompiler &lt;stations.json|stations.csv&gt; &lt;output&gt;
+ */
+public class StationCatalogCompiler {
+
+	public static void main(String[] args) throws Exception {
+		if (args.length != 2) {
+			System.err.println("Usage: StationCatalogCompiler <stations.json|stations.csv> <output>");
+			System.exit(1);
+		}
+
+		File sourceFile = new File(args[0]);
+		File compiledFile = new File(args[1]);
+
+		StationCatalog catalog;
+		if (sourceFile.getName().endsWith(".json")) {
+			catalog = StationCatalog.fromJSON(sourceFile);
+		} else {
+			catalog = StationCatalog.fromCSV(sourceFile);
+		}
+		catalog.write(compiledFile, sourceFile);
+
+		System.out.println("Compiled [" + catalog.size() + "] stations into [" + compiledFile + "]");
+	}
+}
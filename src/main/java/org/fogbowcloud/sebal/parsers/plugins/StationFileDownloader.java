@@ -0,0 +1,415 @@
+package org.fogbowcloud.sebal.parsers.plugins;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * Downloads station files inside the JVM, reusing connections between files:
+ * http(s) through a pooled, keep-alive HttpClient and ftp through a pool of
+ * logged in control connections (passive mode, binary type).
+ *
+ * At most station_download_max_connections downloads run at once. Content is
+ * streamed to a ".part" file that only replaces the destination once the
+ * transfer completed.
+ *
+ * Station operators use the {@link #getShared(Properties)} downloader, so the
+ * operators built for each job reuse one set of pools instead of leaking one.
+ */
+public class StationFileDownloader {
+
+	public static final int DEFAULT_MAX_CONNECTIONS = 4;
+	public static final int DEFAULT_TIMEOUT_SECONDS = 60;
+
+	private static final int FTP_DEFAULT_PORT = 21;
+	private static final String FTP_ANONYMOUS_USER = "anonymous";
+	private static final String FTP_ANONYMOUS_PASSWORD = "sebal@";
+
+	private static final Map<String, StationFileDownloader> SHARED = new HashMap<String, StationFileDownloader>();
+
+	private static final Logger LOGGER = Logger.getLogger(StationFileDownloader.class);
+
+	private final int maxConnections;
+	private final int timeout;
+	private final Semaphore permits;
+	private final CloseableHttpClient httpClient;
+	private final Map<String, Deque<FtpConnection>> idleFtpConnections = new HashMap<String, Deque<FtpConnection>>();
+
+	public StationFileDownloader(Properties properties) {
+		this.maxConnections = getIntProperty(properties,
+				StationOperatorConstants.STATION_DOWNLOAD_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS);
+		this.timeout = getIntProperty(properties,
+				StationOperatorConstants.STATION_DOWNLOAD_TIMEOUT_SECONDS, DEFAULT_TIMEOUT_SECONDS)
+				* 1000;
+		this.permits = new Semaphore(maxConnections, true);
+
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(maxConnections);
+		connectionManager.setDefaultMaxPerRoute(maxConnections);
+
+		RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(timeout)
+				.setSocketTimeout(timeout).setConnectionRequestTimeout(timeout).build();
+
+		this.httpClient = HttpClients.custom().setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig).build();
+	}
+
+	/**
+	 * @return the downloader of this JVM for the connection limit and timeout
+	 *         in properties, created on first use and never closed
+	 */
+	public static StationFileDownloader getShared(Properties properties) {
+		String key = getIntProperty(properties,
+				StationOperatorConstants.STATION_DOWNLOAD_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS)
+				+ ":" + getIntProperty(properties,
+						StationOperatorConstants.STATION_DOWNLOAD_TIMEOUT_SECONDS,
+						DEFAULT_TIMEOUT_SECONDS);
+		synchronized (SHARED) {
+			StationFileDownloader downloader = SHARED.get(key);
+			if (downloader == null) {
+				downloader = new StationFileDownloader(properties);
+				SHARED.put(key, downloader);
+			}
+			return downloader;
+		}
+	}
+
+	/**
+	 * Downloads url into destination.
+	 *
+	 * @return true if the whole file was transferred, false if the server
+	 *         refused it (e.g. not found) or the transfer failed
+	 */
+	public boolean download(String url, File destination) {
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+
+		try {
+			URI uri = new URI(url);
+			if ("ftp".equalsIgnoreCase(uri.getScheme())) {
+				return downloadFromFtp(uri, destination);
+			}
+			return downloadFromHttp(url, destination);
+		} catch (URISyntaxException e) {
+			LOGGER.error("Invalid URL [" + url + "]", e);
+			return false;
+		} finally {
+			permits.release();
+		}
+	}
+
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * Closes the pooled connections.
+	 */
+	public void close() {
+		try {
+			httpClient.close();
+		} catch (IOException e) {
+			LOGGER.warn("Error while closing http client", e);
+		}
+
+		synchronized (idleFtpConnections) {
+			for (Deque<FtpConnection> connections : idleFtpConnections.values()) {
+				for (FtpConnection connection : connections) {
+					connection.quit();
+				}
+			}
+			idleFtpConnections.clear();
+		}
+	}
+
+	private boolean downloadFromHttp(String url, File destination) {
+		HttpGet fileGet = new HttpGet(url);
+		try {
+			CloseableHttpResponse response = httpClient.execute(fileGet);
+			try {
+				int statusCode = response.getStatusLine().getStatusCode();
+				if (statusCode != HttpStatus.SC_OK) {
+					EntityUtils.consume(response.getEntity());
+					LOGGER.error("Unexpected status [" + statusCode + "] while downloading [" + url
+							+ "]");
+					return false;
+				}
+
+				File partialFile = writePartial(response.getEntity().getContent(), destination);
+				moveInto(partialFile, destination);
+				return true;
+			} finally {
+				response.close();
+			}
+		} catch (IOException e) {
+			LOGGER.error("Error while downloading [" + url + "]", e);
+			return false;
+		}
+	}
+
+	private boolean downloadFromFtp(URI uri, File destination) {
+		String key = uri.getUserInfo() + "@" + uri.getHost() + ":" + getFtpPort(uri);
+
+		while (true) {
+			FtpConnection connection = takeIdleFtpConnection(key);
+			boolean reused = connection != null;
+			try {
+				if (!reused) {
+					connection = new FtpConnection(uri, getFtpPort(uri), timeout);
+				}
+				boolean retrieved = connection.retrieve(uri.getPath(), destination);
+				releaseFtpConnection(key, connection);
+				return retrieved;
+			} catch (IOException e) {
+				if (connection != null) {
+					connection.close();
+				}
+				if (!reused) {
+					LOGGER.error("Error while downloading [" + uri + "]", e);
+					return false;
+				}
+				// the server may have dropped the idle connection, retry on a new one
+				LOGGER.debug("Pooled ftp connection to [" + uri.getHost() + "] failed, reconnecting");
+			}
+		}
+	}
+
+	private FtpConnection takeIdleFtpConnection(String key) {
+		synchronized (idleFtpConnections) {
+			Deque<FtpConnection> connections = idleFtpConnections.get(key);
+			return connections == null ? null : connections.pollFirst();
+		}
+	}
+
+	private void releaseFtpConnection(String key, FtpConnection connection) {
+		synchronized (idleFtpConnections) {
+			Deque<FtpConnection> connections = idleFtpConnections.get(key);
+			if (connections == null) {
+				connections = new ArrayDeque<FtpConnection>();
+				idleFtpConnections.put(key, connections);
+			}
+			if (connections.size() < maxConnections) {
+				connections.addFirst(connection);
+				return;
+			}
+		}
+		connection.quit();
+	}
+
+	private static int getFtpPort(URI uri) {
+		return uri.getPort() < 0 ? FTP_DEFAULT_PORT : uri.getPort();
+	}
+
+	private static File writePartial(InputStream content, File destination) throws IOException {
+		File parent = destination.getAbsoluteFile().getParentFile();
+		if (!parent.exists()) {
+			parent.mkdirs();
+		}
+
+		File partialFile = new File(destination.getPath() + ".part");
+		OutputStream outStream = new FileOutputStream(partialFile);
+		boolean written = false;
+		try {
+			IOUtils.copy(content, outStream);
+			written = true;
+		} finally {
+			content.close();
+			outStream.close();
+			if (!written) {
+				partialFile.delete();
+			}
+		}
+		return partialFile;
+	}
+
+	private static void moveInto(File partialFile, File destination) throws IOException {
+		if (destination.exists() && !destination.delete()) {
+			throw new IOException("Could not replace [" + destination + "]");
+		}
+		if (!partialFile.renameTo(destination)) {
+			throw new IOException("Could not move [" + partialFile + "] to [" + destination + "]");
+		}
+	}
+
+	private static int getIntProperty(Properties properties, String key, int defaultValue) {
+		String value = properties.getProperty(key);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		return Integer.parseInt(value.trim());
+	}
+
+	/**
+	 * A logged in ftp control connection, kept open between transfers.
+	 */
+	private static class FtpConnection {
+
+		private static final Pattern PASSIVE_ADDRESS = Pattern
+				.compile("(\\d+),(\\d+),(\\d+),(\\d+),(\\d+),(\\d+)");
+
+		private final Socket control;
+		private final BufferedReader reader;
+		private final Writer writer;
+		private final int timeout;
+		private String lastReply;
+
+		FtpConnection(URI uri, int port, int timeout) throws IOException {
+			this.timeout = timeout;
+			this.control = new Socket();
+			try {
+				control.connect(new InetSocketAddress(uri.getHost(), port), timeout);
+				control.setSoTimeout(timeout);
+				this.reader = new BufferedReader(
+						new InputStreamReader(control.getInputStream(), "ISO-8859-1"));
+				this.writer = new OutputStreamWriter(control.getOutputStream(), "ISO-8859-1");
+
+				expect(readReply(), 220);
+
+				String user = FTP_ANONYMOUS_USER;
+				String password = FTP_ANONYMOUS_PASSWORD;
+				if (uri.getUserInfo() != null) {
+					String[] userInfo = uri.getUserInfo().split(":", 2);
+					user = userInfo[0];
+					password = userInfo.length > 1 ? userInfo[1] : "";
+				}
+
+				int reply = command("USER " + user);
+				if (reply == 331) {
+					reply = command("PASS " + password);
+				}
+				expect(reply, 230);
+				expect(command("TYPE I"), 200);
+			} catch (IOException e) {
+				control.close();
+				throw e;
+			}
+		}
+
+		/**
+		 * @return false if the server refused to send the file
+		 */
+		boolean retrieve(String path, File destination) throws IOException {
+			expect(command("PASV"), 227);
+			Matcher matcher = PASSIVE_ADDRESS.matcher(lastReply);
+			if (!matcher.find()) {
+				throw new IOException("Unexpected passive reply [" + lastReply + "]");
+			}
+			int dataPort = Integer.parseInt(matcher.group(5)) * 256
+					+ Integer.parseInt(matcher.group(6));
+
+			// the advertised host is often a private address, the control peer is not
+			Socket data = new Socket();
+			File partialFile;
+			try {
+				data.connect(new InetSocketAddress(control.getInetAddress(), dataPort), timeout);
+				data.setSoTimeout(timeout);
+
+				int reply = command("RETR " + path);
+				if (reply >= 400) {
+					LOGGER.error("Server refused [" + path + "]: [" + lastReply + "]");
+					return false;
+				}
+				if (reply != 125 && reply != 150) {
+					throw new IOException("Unexpected reply [" + lastReply + "]");
+				}
+
+				partialFile = writePartial(data.getInputStream(), destination);
+			} finally {
+				data.close();
+			}
+
+			int reply = readReply();
+			if (reply != 226 && reply != 250) {
+				partialFile.delete();
+				LOGGER.error("Transfer of [" + path + "] failed: [" + lastReply + "]");
+				return false;
+			}
+
+			moveInto(partialFile, destination);
+			return true;
+		}
+
+		void quit() {
+			try {
+				command("QUIT");
+			} catch (IOException e) {
+				LOGGER.debug("Error while closing ftp connection", e);
+			}
+			close();
+		}
+
+		void close() {
+			try {
+				control.close();
+			} catch (IOException e) {
+				LOGGER.debug("Error while closing ftp connection", e);
+			}
+		}
+
+		private int command(String command) throws IOException {
+			writer.write(command + "\r\n");
+			writer.flush();
+			return readReply();
+		}
+
+		private int readReply() throws IOException {
+			String line = reader.readLine();
+			if (line == null || line.length() < 3) {
+				throw new EOFException("Ftp connection closed");
+			}
+			lastReply = line;
+
+			String code = line.substring(0, 3);
+			if (line.length() > 3 && line.charAt(3) == '-') {
+				// multi line reply, ends at "<code> "
+				do {
+					line = reader.readLine();
+					if (line == null) {
+						throw new EOFException("Ftp connection closed");
+					}
+				} while (!line.startsWith(code + " "));
+			}
+			return Integer.parseInt(code);
+		}
+
+		private void expect(int reply, int expected) throws IOException {
+			if (reply != expected) {
+				throw new IOException("Unexpected ftp reply [" + lastReply + "]");
+			}
+		}
+	}
+}
@@ -0,0 +1,573 @@
+package org.fogbowcloud.sebal.parsers.plugins;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.json.JSONObject;
+
+/**
+ * Static k-d tree over the stations of one {@link StationCatalog}.
+ *
+ * Stations are placed on the unit sphere (x, y, z), so the euclidean chord
+ * distance grows with the great circle distance and the tree needs no special
+ * handling for the antimeridian. Searches only touch primitive arrays; a
+ * JSONObject is created for each returned station, carrying the haversine
+ * "distance" (km) to the query point, and results are sorted by it.
+ */
+public class StationIndex {
+
+	private static final int DIMENSIONS = 3;
+
+	private final StationCatalog catalog;
+	private final int[] catalogPositions;
+	private final double[] latitudes;
+	private final double[] longitudes;
+	private final double[] points;
+
+	public StationIndex(StationCatalog catalog) {
+		this.catalog = catalog;
+
+		int size = catalog.size();
+		this.catalogPositions = new int[size];
+		this.latitudes = new double[size];
+		this.longitudes = new double[size];
+		this.points = new double[size * DIMENSIONS];
+
+		for (int i = 0; i < size; i++) {
+			catalogPositions[i] = i;
+			latitudes[i] = catalog.getLatitude(i);
+			longitudes[i] = catalog.getLongitude(i);
+			toUnitVector(latitudes[i], longitudes[i], points, i * DIMENSIONS);
+		}
+
+		build(0, size, 0);
+	}
+
+	public int size() {
+		return catalogPositions.length;
+	}
+
+	/**
+	 * Returns every station whose great circle distance to (lat, lon) is at
+	 * most radiusKm, nearest first.
+	 */
+	public List<JSONObject> withinRadius(double lat, double lon, double radiusKm) {
+		double[] query = toUnitVector(lat, lon, new double[DIMENSIONS], 0);
+		// small slack so rounding never drops a station the haversine accepts
+		double chord = chordLength(radiusKm) + 1e-9;
+
+		NodeList found = new NodeList();
+		searchRadius(0, size(), 0, query, chord * chord, found);
+
+		NodeList accepted = new NodeList();
+		for (int i = 0; i < found.size; i++) {
+			int node = found.nodes[i];
+			if (distance(lat, lon, latitudes[node], longitudes[node]) <= radiusKm) {
+				accepted.add(node);
+			}
+		}
+		return toSortedStations(lat, lon, accepted);
+	}
+
+	/**
+	 * Returns the k stations closest to (lat, lon), nearest first.
+	 */
+	public List<JSONObject> nearest(double lat, double lon, int k) {
+		if (k <= 0 || size() == 0) {
+			return new ArrayList<JSONObject>();
+		}
+		double[] query = toUnitVector(lat, lon, new double[DIMENSIONS], 0);
+
+		NodeHeap best = new NodeHeap(Math.min(k, size()));
+		searchNearest(0, size(), 0, query, best);
+
+		NodeList found = new NodeList();
+		for (int i = 0; i < best.size; i++) {
+			found.add(best.nodes[i]);
+		}
+		return toSortedStations(lat, lon, found);
+	}
+
+	/**
+	 * Yields the stations within radiusKm of (lat, lon) nearest first. The tree
+	 * is walked best-first as the iterator is consumed, so a caller that stops
+	 * after a few stations pays only for those.
+	 */
+	public Iterator<JSONObject> nearestFirst(double lat, double lon, double radiusKm) {
+		return new NearestFirstIterator(lat, lon, radiusKm);
+	}
+
+	private void build(int lo, int hi, int depth) {
+		if (hi - lo <= 1) {
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		select(lo, hi - 1, mid, depth % DIMENSIONS);
+		build(lo, mid, depth + 1);
+		build(mid + 1, hi, depth + 1);
+	}
+
+	/**
+	 * Quickselect: leaves the node with the k-th smallest coordinate on the
+	 * given axis at position k, smaller ones before it and larger ones after.
+	 */
+	private void select(int left, int right, int k, int axis) {
+		while (left < right) {
+			double pivot = coordinate((left + right) >>> 1, axis);
+			int i = left;
+			int j = right;
+			while (i <= j) {
+				while (coordinate(i, axis) < pivot) {
+					i++;
+				}
+				while (coordinate(j, axis) > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					swap(i, j);
+					i++;
+					j--;
+				}
+			}
+			if (k <= j) {
+				right = j;
+			} else if (k >= i) {
+				left = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	private void searchRadius(int lo, int hi, int depth, double[] query, double squaredRadius,
+			NodeList found) {
+		if (lo >= hi) {
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		int axis = depth % DIMENSIONS;
+
+		if (squaredChord(mid, query) <= squaredRadius) {
+			found.add(mid);
+		}
+
+		double diff = query[axis] - coordinate(mid, axis);
+		if (diff <= 0 || diff * diff <= squaredRadius) {
+			searchRadius(lo, mid, depth + 1, query, squaredRadius, found);
+		}
+		if (diff >= 0 || diff * diff <= squaredRadius) {
+			searchRadius(mid + 1, hi, depth + 1, query, squaredRadius, found);
+		}
+	}
+
+	private void searchNearest(int lo, int hi, int depth, double[] query, NodeHeap best) {
+		if (lo >= hi) {
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		int axis = depth % DIMENSIONS;
+
+		best.offer(mid, squaredChord(mid, query));
+
+		double diff = query[axis] - coordinate(mid, axis);
+		int nearLo = diff <= 0 ? lo : mid + 1;
+		int nearHi = diff <= 0 ? mid : hi;
+		int farLo = diff <= 0 ? mid + 1 : lo;
+		int farHi = diff <= 0 ? hi : mid;
+
+		searchNearest(nearLo, nearHi, depth + 1, query, best);
+		if (!best.isFull() || diff * diff < best.worst()) {
+			searchNearest(farLo, farHi, depth + 1, query, best);
+		}
+	}
+
+	private List<JSONObject> toSortedStations(double lat, double lon, NodeList nodes) {
+		List<Candidate> neighbours = new ArrayList<Candidate>(nodes.size);
+		for (int i = 0; i < nodes.size; i++) {
+			int node = nodes.nodes[i];
+			neighbours.add(
+					new Candidate(node, distance(lat, lon, latitudes[node], longitudes[node])));
+		}
+
+		// ties keep catalog order, as the former linear scan did
+		Collections.sort(neighbours, new Comparator<Candidate>() {
+			@Override
+			public int compare(Candidate c1, Candidate c2) {
+				int result = Double.compare(c1.value, c2.value);
+				if (result == 0) {
+					result = catalogPositions[c1.node] - catalogPositions[c2.node];
+				}
+				return result;
+			}
+		});
+
+		List<JSONObject> result = new ArrayList<JSONObject>(neighbours.size());
+		for (Candidate neighbour : neighbours) {
+			JSONObject station = catalog.toJSONObject(catalogPositions[neighbour.node]);
+			station.put("distance", neighbour.value);
+			result.add(station);
+		}
+		return result;
+	}
+
+	private double coordinate(int node, int axis) {
+		return points[node * DIMENSIONS + axis];
+	}
+
+	private double squaredChord(int node, double[] query) {
+		int offset = node * DIMENSIONS;
+		double dx = points[offset] - query[0];
+		double dy = points[offset + 1] - query[1];
+		double dz = points[offset + 2] - query[2];
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	private void swap(int i, int j) {
+		int position = catalogPositions[i];
+		catalogPositions[i] = catalogPositions[j];
+		catalogPositions[j] = position;
+
+		double lat = latitudes[i];
+		latitudes[i] = latitudes[j];
+		latitudes[j] = lat;
+
+		double lon = longitudes[i];
+		longitudes[i] = longitudes[j];
+		longitudes[j] = lon;
+
+		for (int axis = 0; axis < DIMENSIONS; axis++) {
+			double value = points[i * DIMENSIONS + axis];
+			points[i * DIMENSIONS + axis] = points[j * DIMENSIONS + axis];
+			points[j * DIMENSIONS + axis] = value;
+		}
+	}
+
+	private static double[] toUnitVector(double lat, double lon, double[] dest, int offset) {
+		double latRad = Math.toRadians(lat);
+		double lonRad = Math.toRadians(lon);
+		dest[offset] = Math.cos(latRad) * Math.cos(lonRad);
+		dest[offset + 1] = Math.cos(latRad) * Math.sin(lonRad);
+		dest[offset + 2] = Math.sin(latRad);
+		return dest;
+	}
+
+	private static double chordLength(double distanceKm) {
+		double angle = Math.min(distanceKm / StationOperatorConstants.R, Math.PI);
+		return 2 * Math.sin(angle / 2);
+	}
+
+	/**
+	 * Haversine distance in km.
+	 */
+	public static double distance(double lat1, double lon1, double lat2, double lon2) {
+
+		double dLat = Math.toRadians(lat2 - lat1);
+		double dLon = Math.toRadians(lon2 - lon1);
+		lat1 = Math.toRadians(lat1);
+		lat2 = Math.toRadians(lat2);
+		double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+				+ Math.sin(dLon / 2) * Math.sin(dLon / 2) * Math.cos(lat1) * Math.cos(lat2);
+		double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+		return StationOperatorConstants.R * c;
+	}
+
+	/**
+	 * A returned tree node paired with its haversine distance to the query
+	 * point.
+	 */
+	private static class Candidate {
+
+		private final int node;
+		private final double value;
+
+		Candidate(int node, double value) {
+			this.node = node;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * Growable list of tree nodes.
+	 */
+	private static class NodeList {
+
+		private int[] nodes = new int[16];
+		private int size;
+
+		void add(int node) {
+			if (size == nodes.length) {
+				nodes = Arrays.copyOf(nodes, size * 2);
+			}
+			nodes[size++] = node;
+		}
+	}
+
+	/**
+	 * Bounded max-heap of tree nodes keyed by squared chord, holding the best
+	 * candidates seen so far.
+	 */
+	private static class NodeHeap {
+
+		private final int[] nodes;
+		private final double[] values;
+		private int size;
+
+		NodeHeap(int capacity) {
+			this.nodes = new int[capacity];
+			this.values = new double[capacity];
+		}
+
+		boolean isFull() {
+			return size == nodes.length;
+		}
+
+		double worst() {
+			return values[0];
+		}
+
+		void offer(int node, double value) {
+			if (!isFull()) {
+				int i = size++;
+				while (i > 0 && values[(i - 1) / 2] < value) {
+					nodes[i] = nodes[(i - 1) / 2];
+					values[i] = values[(i - 1) / 2];
+					i = (i - 1) / 2;
+				}
+				nodes[i] = node;
+				values[i] = value;
+			} else if (value < values[0]) {
+				int i = 0;
+				while (true) {
+					int child = 2 * i + 1;
+					if (child >= size) {
+						break;
+					}
+					if (child + 1 < size && values[child + 1] > values[child]) {
+						child++;
+					}
+					if (values[child] <= value) {
+						break;
+					}
+					nodes[i] = nodes[child];
+					values[i] = values[child];
+					i = child;
+				}
+				nodes[i] = node;
+				values[i] = value;
+			}
+		}
+	}
+
+	private class NearestFirstIterator implements Iterator<JSONObject> {
+
+		private final double lat;
+		private final double lon;
+		private final double radiusKm;
+		private final double squaredRadius;
+		private final double[] query;
+		private final EntryHeap pending = new EntryHeap();
+		private int nextNode = -1;
+
+		NearestFirstIterator(double lat, double lon, double radiusKm) {
+			this.lat = lat;
+			this.lon = lon;
+			this.radiusKm = radiusKm;
+			// small slack so rounding never drops a station the haversine accepts
+			double chord = chordLength(radiusKm) + 1e-9;
+			this.squaredRadius = chord * chord;
+			this.query = toUnitVector(lat, lon, new double[DIMENSIONS], 0);
+			pending.pushSubtree(0, 0, size(), 0);
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (nextNode < 0) {
+				nextNode = advance();
+			}
+			return nextNode >= 0;
+		}
+
+		@Override
+		public JSONObject next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			int node = nextNode;
+			nextNode = -1;
+
+			JSONObject station = catalog.toJSONObject(catalogPositions[node]);
+			station.put("distance", distance(lat, lon, latitudes[node], longitudes[node]));
+			return station;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * Expands subtrees until the closest pending entry is a station. A
+		 * subtree is keyed by a lower bound of its squared chord, so it is
+		 * always expanded before any station farther than that bound.
+		 */
+		private int advance() {
+			while (!pending.isEmpty() && pending.peekKey() <= squaredRadius) {
+				double bound = pending.peekKey();
+				int lo = pending.peekLo();
+				int hi = pending.peekHi();
+				int depth = pending.peekDepth();
+				pending.pop();
+
+				if (depth == EntryHeap.STATION) {
+					if (distance(lat, lon, latitudes[lo], longitudes[lo]) <= radiusKm) {
+						return lo;
+					}
+					continue;
+				}
+				if (lo >= hi) {
+					continue;
+				}
+
+				int mid = (lo + hi) >>> 1;
+				int axis = depth % DIMENSIONS;
+				pending.pushStation(squaredChord(mid, query), mid, catalogPositions[mid]);
+
+				double diff = query[axis] - coordinate(mid, axis);
+				double farBound = Math.max(bound, diff * diff);
+				if (diff <= 0) {
+					pending.pushSubtree(bound, lo, mid, depth + 1);
+					pending.pushSubtree(farBound, mid + 1, hi, depth + 1);
+				} else {
+					pending.pushSubtree(bound, mid + 1, hi, depth + 1);
+					pending.pushSubtree(farBound, lo, mid, depth + 1);
+				}
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * Min-heap of pending subtrees and stations of a best-first walk, kept in
+	 * parallel primitive arrays. On equal keys subtrees come first, so equally
+	 * distant stations are still yielded in catalog order.
+	 */
+	private static class EntryHeap {
+
+		static final int STATION = -1;
+
+		private double[] keys = new double[64];
+		private int[] los = new int[64];
+		private int[] his = new int[64];
+		private int[] depths = new int[64];
+		private int[] orders = new int[64];
+		private int size;
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		double peekKey() {
+			return keys[0];
+		}
+
+		int peekLo() {
+			return los[0];
+		}
+
+		int peekHi() {
+			return his[0];
+		}
+
+		int peekDepth() {
+			return depths[0];
+		}
+
+		void pushSubtree(double key, int lo, int hi, int depth) {
+			push(key, lo, hi, depth, 0);
+		}
+
+		/**
+		 * Pushes a station node, ordered among equal keys by its catalog
+		 * position.
+		 */
+		void pushStation(double key, int node, int catalogPosition) {
+			push(key, node, node + 1, STATION, catalogPosition);
+		}
+
+		private void push(double key, int lo, int hi, int depth, int order) {
+			if (size == keys.length) {
+				int capacity = size * 2;
+				keys = Arrays.copyOf(keys, capacity);
+				los = Arrays.copyOf(los, capacity);
+				his = Arrays.copyOf(his, capacity);
+				depths = Arrays.copyOf(depths, capacity);
+				orders = Arrays.copyOf(orders, capacity);
+			}
+			set(size, key, lo, hi, depth, order);
+
+			int i = size++;
+			while (i > 0 && less(i, (i - 1) / 2)) {
+				swap(i, (i - 1) / 2);
+				i = (i - 1) / 2;
+			}
+		}
+
+		void pop() {
+			size--;
+			set(0, keys[size], los[size], his[size], depths[size], orders[size]);
+
+			int i = 0;
+			while (true) {
+				int smallest = i;
+				int left = 2 * i + 1;
+				int right = left + 1;
+				if (left < size && less(left, smallest)) {
+					smallest = left;
+				}
+				if (right < size && less(right, smallest)) {
+					smallest = right;
+				}
+				if (smallest == i) {
+					return;
+				}
+				swap(i, smallest);
+				i = smallest;
+			}
+		}
+
+		private boolean less(int i, int j) {
+			if (keys[i] != keys[j]) {
+				return keys[i] < keys[j];
+			}
+			boolean iStation = depths[i] == STATION;
+			boolean jStation = depths[j] == STATION;
+			if (iStation != jStation) {
+				return jStation;
+			}
+			return iStation && orders[i] < orders[j];
+		}
+
+		private void set(int i, double key, int lo, int hi, int depth, int order) {
+			keys[i] = key;
+			los[i] = lo;
+			his[i] = hi;
+			depths[i] = depth;
+			orders[i] = order;
+		}
+
+		private void swap(int i, int j) {
+			double key = keys[i];
+			int lo = los[i];
+			int hi = his[i];
+			int depth = depths[i];
+			int order = orders[i];
+			set(i, keys[j], los[j], his[j], depths[j], orders[j]);
+			set(j, key, lo, hi, depth, order);
+		}
+	}
+}
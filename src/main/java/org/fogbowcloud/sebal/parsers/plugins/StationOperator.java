@@ -1,6 +1,7 @@
 package org.fogbowcloud.sebal.parsers.plugins;
 
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 
 import org.json.JSONArray;
@@ -12,8 +13,23 @@ public interface StationOperator {
 
 	public JSONArray readStationCSVFile(String localStationsCSVFilePath);
 
+	public StationCatalog getStationCatalog(String year);
+
+	public StationIndex getStationIndex(String year);
+
 	public List<JSONObject> findNearestStation(Date date, double lat, double lon, int numberOfDays);
 
+	/**
+	 * Lazy counterpart of findNearestStation: yields the same candidates,
+	 * nearest first, computing each one only when it is requested.
+	 */
+	public Iterator<JSONObject> nearestStations(Date date, double lat, double lon,
+			int numberOfDays);
+
+	/**
+	 * @return the hourly records of the station for the period, possibly none,
+	 *         or null if they could not be fetched
+	 */
 	public JSONArray readStation(String stationId, String beginDate, String endDate)
 			throws Exception;
 }
@@ -1,15 +1,17 @@
 package org.fogbowcloud.sebal.parsers.plugins;
 
 import java.text.SimpleDateFormat;
+import java.util.Date;
 
 public class StationOperatorConstants {
 
 	// Calculation constants
 	public static final double R = 6371; // km
+	public static final double MAX_REGION_DISTANCE_KM = 500;
 
 	// Parsing constants
 	public static final long A_DAY = 1000 * 60 * 60 * 24;
-	public static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("YYYYMMdd");
+	public static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyyMMdd");
 	public static final SimpleDateFormat DATE_TIME_FORMAT = new SimpleDateFormat("yyyyMMdd;hhmm");
 
 	// URL constants
@@ -19,12 +21,46 @@ public class StationOperatorConstants {
 	// File constants
 	public static final String UNFORMATTED_LOCAL_STATION_FILE_PATH = "unformatted_local_station_file_path";
 	public static final String STATIONS_CSV_FROM_YEAR_FILE_PATH = "stations_csv_from_year_dir_path";
+	public static final String STATION_RECORD_STORE_PATH = "station_record_store_path";
+	public static final String STATION_QUALITY_INDEX_PATH = "station_quality_index_path";
+
+	// Cache constants
+	public static final String STATION_CATALOG_TTL_HOURS = "station_catalog_ttl_hours";
+	public static final String STATION_INVALID_CACHE_PATH = "station_invalid_cache_path";
+	public static final String STATION_INVALID_CACHE_TTL_HOURS = "station_invalid_cache_ttl_hours";
+
+	// Download constants
+	public static final String STATION_DOWNLOAD_MAX_CONNECTIONS = "station_download_max_connections";
+	public static final String STATION_DOWNLOAD_TIMEOUT_SECONDS = "station_download_timeout_seconds";
+	public static final String STATION_PREFETCH_SIZE = "station_prefetch_size";
+	public static final String STATION_DAYS_WINDOW = "station_days_window";
+
+	// Backend constants
+	public static final String STATION_OPERATORS = "station_operators";
+	public static final String STATION_HEDGE_PERCENTILE = "station_hedge_percentile";
+	public static final String STATION_HEDGE_INITIAL_DELAY_MILLIS = "station_hedge_initial_delay_millis";
 
 	// Properties constants
-	public static final String SWIFT_CLIENT_PATH = "swift_client_path";
 	public static final String SWIFT_URL_EXPIRATION_TIME = "url_expiration_time";
 	public static final String SWIFT_CONTAINER_PREFIX = "swift_container_prefix";
 	public static final String SWIFT_META_AUTH_KEY = "swift_meta_auth_key";
 	public static final String SWIFT_STORAGE_URL = "swift_storage_url";
 
+	private static final ThreadLocal<SimpleDateFormat> THREAD_DATE_FORMAT =
+			new ThreadLocal<SimpleDateFormat>() {
+		@Override
+		protected SimpleDateFormat initialValue() {
+			return (SimpleDateFormat) DATE_FORMAT.clone();
+		}
+	};
+
+	/**
+	 * Formats date like {@link #DATE_FORMAT}, which is shared and not
+	 * thread-safe, with a copy of it owned by the calling thread.
+	 *
+	 * @return the date as yyyyMMdd
+	 */
+	public static String formatDate(Date date) {
+		return THREAD_DATE_FORMAT.get().format(date);
+	}
 }
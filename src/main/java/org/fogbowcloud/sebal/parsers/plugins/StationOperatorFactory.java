@@ -0,0 +1,46 @@
+package org.fogbowcloud.sebal.parsers.plugins;
+
+import java.util.Properties;
+
+import org.fogbowcloud.sebal.parsers.plugins.ftp.FTPStationOperator;
+import org.fogbowcloud.sebal.parsers.plugins.swift.SwiftStationOperator;
+
+/**
+ * Builds the station backends listed in station_operators, e.g. "ftp" or
+ * "ftp,swift". When two are listed, the first is the primary and the second is
+ * hedged against it by a {@link HedgedStationOperator}.
+ */
+public class StationOperatorFactory {
+
+	public static final String FTP = "ftp";
+	public static final String SWIFT = "swift";
+
+	public static StationOperator create(Properties properties) {
+		String operators = properties.getProperty(StationOperatorConstants.STATION_OPERATORS);
+		if (operators == null || operators.trim().isEmpty()) {
+			return new FTPStationOperator(properties);
+		}
+
+		String[] names = operators.split(",");
+		if (names.length > 2) {
+			throw new IllegalArgumentException("At most two station operators are supported, got ["
+					+ operators + "]");
+		}
+
+		StationOperator primary = create(names[0].trim(), properties);
+		if (names.length == 1) {
+			return primary;
+		}
+		return new HedgedStationOperator(primary, create(names[1].trim(), properties), properties);
+	}
+
+	private static StationOperator create(String name, Properties properties) {
+		if (FTP.equalsIgnoreCase(name)) {
+			return new FTPStationOperator(properties);
+		}
+		if (SWIFT.equalsIgnoreCase(name)) {
+			return new SwiftStationOperator(properties);
+		}
+		throw new IllegalArgumentException("Unknown station operator [" + name + "]");
+	}
+}
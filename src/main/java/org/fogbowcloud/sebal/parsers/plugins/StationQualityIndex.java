@@ -0,0 +1,252 @@
+package org.fogbowcloud.sebal.parsers.plugins;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Precomputed summaries of station-days, built offline by
+ * StationQualityIndexer, so station selection can skip the stations that
+ * would not validate without reading them.
+ *
+ * There is one file per year, "&lt;year&gt;.sqi", holding for each station
+ * its sorted entries: the day slot ((month - 1) * 31 + day - 1) in the top 16
+ * bits and the summary in the low 48. Years are loaded whole on first use.
+ */
+public class StationQualityIndex {
+
+	private static final int MAGIC = 0x53515849; // "SQXI"
+	private static final int VERSION = 1;
+	private static final int DAY_SLOTS = 12 * 31;
+	private static final int SLOT_SHIFT = 48;
+	private static final long SUMMARY_MASK = (1L << SLOT_SHIFT) - 1;
+	private static final String EXTENSION = ".sqi";
+
+	private static final Logger LOGGER = Logger.getLogger(StationQualityIndex.class);
+
+	private final File indexDir;
+	private final Map<String, Map<String, long[]>> years = new ConcurrentHashMap<String, Map<String, long[]>>();
+
+	public StationQualityIndex(File indexDir) {
+		this.indexDir = indexDir;
+	}
+
+	/**
+	 * @return the index at station_quality_index_path, or null if none is
+	 *         configured
+	 */
+	public static StationQualityIndex fromProperties(Properties properties) {
+		String indexPath = properties.getProperty(StationOperatorConstants.STATION_QUALITY_INDEX_PATH);
+		if (indexPath == null || indexPath.trim().isEmpty()) {
+			return null;
+		}
+		return new StationQualityIndex(new File(indexPath.trim()));
+	}
+
+	/**
+	 * @param date day, as yyyyMMdd
+	 * @return the summary of the station-day, or -1 if its station-year is not
+	 *         indexed
+	 */
+	public long getSummary(String stationId, String date) {
+		int slot = getDaySlot(date);
+		if (slot < 0) {
+			return -1;
+		}
+
+		long[] entries = getYear(date.substring(0, 4)).get(stationId);
+		if (entries == null) {
+			return -1;
+		}
+
+		int low = 0;
+		int high = entries.length - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int middleSlot = (int) (entries[middle] >>> SLOT_SHIFT);
+			if (middleSlot < slot) {
+				low = middle + 1;
+			} else if (middleSlot > slot) {
+				high = middle - 1;
+			} else {
+				return entries[middle] & SUMMARY_MASK;
+			}
+		}
+		// an indexed station-year has no usable record that day
+		return 0;
+	}
+
+	/**
+	 * Summarizes a window of days. Records are corrected one by one, so the
+	 * window validates as the union of the hours of its days.
+	 *
+	 * @param beginDate first day, as yyyyMMdd
+	 * @param endDate last day, as yyyyMMdd
+	 * @return the union of the summaries of the days, or -1 if any of their
+	 *         station-years is not indexed
+	 */
+	public long getSummary(String stationId, String beginDate, String endDate) {
+		long summary = 0;
+		String date = beginDate;
+		while (date != null && date.compareTo(endDate) <= 0) {
+			long daySummary = getSummary(stationId, date);
+			if (daySummary < 0) {
+				return -1;
+			}
+			summary |= daySummary;
+			date = getNextDay(date);
+		}
+		return summary;
+	}
+
+	/**
+	 * @return the entry of a station-day, or -1 if the date is not a yyyyMMdd
+	 *         day
+	 */
+	public static long newEntry(String date, long summary) {
+		int slot = getDaySlot(date);
+		if (slot < 0) {
+			return -1;
+		}
+		return (long) slot << SLOT_SHIFT | (summary & SUMMARY_MASK);
+	}
+
+	/**
+	 * Replaces the index of a year with the given entries of each station.
+	 */
+	public void writeYear(String year, Map<String, long[]> entries) throws IOException {
+		File yearFile = getYearFile(year);
+		indexDir.mkdirs();
+		File partialFile = File.createTempFile(year, ".part", indexDir);
+		DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(partialFile)));
+		try {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeInt(entries.size());
+			for (Map.Entry<String, long[]> station : entries.entrySet()) {
+				long[] stationEntries = station.getValue().clone();
+				Arrays.sort(stationEntries);
+				output.writeUTF(station.getKey());
+				output.writeInt(stationEntries.length);
+				for (long entry : stationEntries) {
+					output.writeLong(entry);
+				}
+			}
+		} finally {
+			output.close();
+		}
+
+		if (yearFile.exists() && !yearFile.delete()) {
+			throw new IOException("Could not replace station quality index [" + yearFile + "]");
+		}
+		if (!partialFile.renameTo(yearFile)) {
+			throw new IOException("Could not move [" + partialFile + "] to [" + yearFile + "]");
+		}
+		years.remove(year);
+
+		LOGGER.info("Indexed [" + entries.size() + "] stations of year [" + year + "]");
+	}
+
+	private Map<String, long[]> getYear(String year) {
+		Map<String, long[]> stations = years.get(year);
+		if (stations == null) {
+			stations = loadYear(year);
+			years.put(year, stations);
+		}
+		return stations;
+	}
+
+	private Map<String, long[]> loadYear(String year) {
+		File yearFile = getYearFile(year);
+		if (!yearFile.isFile()) {
+			return Collections.emptyMap();
+		}
+
+		Map<String, long[]> stations = new HashMap<String, long[]>();
+		try {
+			DataInputStream input = new DataInputStream(
+					new BufferedInputStream(new FileInputStream(yearFile)));
+			try {
+				if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+					throw new IOException("[" + yearFile + "] is not a station quality index");
+				}
+				int stationCount = input.readInt();
+				for (int i = 0; i < stationCount; i++) {
+					String stationId = input.readUTF();
+					long[] entries = new long[input.readInt()];
+					for (int j = 0; j < entries.length; j++) {
+						entries[j] = input.readLong();
+					}
+					stations.put(stationId, entries);
+				}
+			} finally {
+				input.close();
+			}
+		} catch (IOException e) {
+			LOGGER.warn("Could not read station quality index [" + yearFile + "]", e);
+			return Collections.emptyMap();
+		}
+
+		LOGGER.info("Loaded quality index of [" + stations.size() + "] stations of year [" + year
+				+ "]");
+		return stations;
+	}
+
+	private File getYearFile(String year) {
+		return new File(indexDir, year + EXTENSION);
+	}
+
+	/**
+	 * @return the day after the given one, counting 31 days in every month, or
+	 *         null if the date is not a yyyyMMdd day
+	 */
+	private static String getNextDay(String date) {
+		int slot = getDaySlot(date) + 1;
+		if (slot <= 0) {
+			return null;
+		}
+		int year;
+		try {
+			year = Integer.parseInt(date.substring(0, 4));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		if (slot == DAY_SLOTS) {
+			year++;
+			slot = 0;
+		}
+		int month = slot / 31 + 1;
+		int day = slot % 31 + 1;
+		return year + (month < 10 ? "0" : "") + month + (day < 10 ? "0" : "") + day;
+	}
+
+	private static int getDaySlot(String date) {
+		if (date == null || date.length() != 8) {
+			return -1;
+		}
+		try {
+			int month = Integer.parseInt(date.substring(4, 6));
+			int day = Integer.parseInt(date.substring(6, 8));
+			if (month < 1 || month > 12 || day < 1 || day > 31) {
+				return -1;
+			}
+			return (month - 1) * 31 + day - 1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,324 @@
+package org.fogbowcloud.sebal.parsers.plugins;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Calendar;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.log4j.Logger;
+import org.json.JSONArray;
+
+/**
+ * Local store of ISD hourly records, one file per station-year, so reading one
+ * day of an already ingested year is a seek and a single read instead of a
+ * download and a scan of the whole year.
+ *
+ * A store file is a 16 byte header, holding the last ingested day, a table
+ * with the first record and record count of each day (slot (month - 1) * 31 +
+ * day - 1) and the records, each one holding the raw
+ * {@link ISDHourlyDataParser#RECORD_COLUMNS} of its line. Records are decoded
+ * exactly like the parser does, so both paths give the same data.
+ */
+public class StationRecordStore {
+
+	private static final int MAGIC = 0x53424c44; // "SBLD"
+	private static final int VERSION = 2;
+	private static final int DAY_SLOTS = 12 * 31;
+	private static final int HEADER_SIZE = 16;
+	private static final int DATA_OFFSET = HEADER_SIZE + DAY_SLOTS * 8;
+	private static final int RECORD_SIZE = recordSize();
+	private static final String CHARSET = "ISO-8859-1";
+	private static final String EXTENSION = ".isd";
+
+	private static final Logger LOGGER = Logger.getLogger(StationRecordStore.class);
+
+	private final File storeDir;
+
+	public StationRecordStore(File storeDir) {
+		this.storeDir = storeDir;
+	}
+
+	/**
+	 * @return the store at station_record_store_path, or null if none is
+	 *         configured
+	 */
+	public static StationRecordStore fromProperties(Properties properties) {
+		String storePath = properties.getProperty(StationOperatorConstants.STATION_RECORD_STORE_PATH);
+		if (storePath == null || storePath.trim().isEmpty()) {
+			return null;
+		}
+		return new StationRecordStore(new File(storePath.trim()));
+	}
+
+	/**
+	 * A station-year of the current year is ingested while it is still being
+	 * published, so it only holds the days up to its last ingested one.
+	 *
+	 * @param stationFileName ISD file name without extension, e.g.
+	 *            "827910-99999-2002"
+	 * @param endDate last day to be read, as yyyyMMdd
+	 * @return true if the station-year is ingested up to endDate
+	 */
+	public boolean contains(String stationFileName, String endDate) throws IOException {
+		File file = getStoreFile(stationFileName);
+		if (!file.isFile()) {
+			return false;
+		}
+
+		RandomAccessFile storeFile = new RandomAccessFile(file, "r");
+		try {
+			if (storeFile.length() < HEADER_SIZE || storeFile.readInt() != MAGIC
+					|| storeFile.readInt() != VERSION) {
+				// written by an older version, ingested again
+				return false;
+			}
+			storeFile.readInt();
+			return getDaySlot(endDate) <= storeFile.readInt();
+		} finally {
+			storeFile.close();
+		}
+	}
+
+	/**
+	 * Reads the hourly records of one day of an ingested station-year.
+	 *
+	 * @param date day to read, as yyyyMMdd
+	 */
+	public JSONArray read(String stationFileName, String date) throws IOException {
+		return read(stationFileName, date, date);
+	}
+
+	/**
+	 * Reads the hourly records of the days from beginDate to endDate, both
+	 * included, of an ingested station-year. The days of a year are stored in
+	 * order, so the whole window is a single read.
+	 *
+	 * @param beginDate first day to read, as yyyyMMdd
+	 * @param endDate last day to read, as yyyyMMdd, in the same year
+	 */
+	public JSONArray read(String stationFileName, String beginDate, String endDate)
+			throws IOException {
+		JSONArray records = new JSONArray();
+
+		int beginSlot = getDaySlot(beginDate);
+		int endSlot = getDaySlot(endDate);
+		String year = getYear(stationFileName);
+		if (beginSlot < 0 || endSlot < beginSlot || !beginDate.startsWith(year)
+				|| !endDate.startsWith(year)) {
+			return records;
+		}
+
+		RandomAccessFile storeFile = new RandomAccessFile(getStoreFile(stationFileName), "r");
+		try {
+			if (storeFile.readInt() != MAGIC || storeFile.readInt() != VERSION) {
+				throw new IOException("[" + stationFileName + "] is not a station record file");
+			}
+
+			int[] dayRecords = new int[endSlot - beginSlot + 1];
+			storeFile.seek(HEADER_SIZE + beginSlot * 8);
+			int firstRecord = storeFile.readInt();
+			int recordCount = 0;
+			for (int i = 0; i < dayRecords.length; i++) {
+				if (i > 0) {
+					storeFile.readInt();
+				}
+				dayRecords[i] = storeFile.readInt();
+				recordCount += dayRecords[i];
+			}
+			if (recordCount == 0) {
+				return records;
+			}
+
+			byte[] data = new byte[recordCount * RECORD_SIZE];
+			storeFile.seek(DATA_OFFSET + (long) firstRecord * RECORD_SIZE);
+			storeFile.readFully(data);
+
+			String[] fields = new String[ISDHourlyDataParser.RECORD_COLUMNS.length];
+			int offset = 0;
+			for (int i = 0; i < dayRecords.length; i++) {
+				String date = i == 0 ? beginDate : getDate(year, beginSlot + i);
+				for (int record = 0; record < dayRecords[i]; record++) {
+					for (int j = 0; j < fields.length; j++) {
+						int width = ISDHourlyDataParser.RECORD_COLUMNS[j][1]
+								- ISDHourlyDataParser.RECORD_COLUMNS[j][0];
+						fields[j] = new String(data, offset, width, CHARSET);
+						offset += width;
+					}
+					records.put(ISDHourlyDataParser.toHourlyRecord(date, fields));
+				}
+			}
+		} finally {
+			storeFile.close();
+		}
+
+		LOGGER.info("Read [" + records.length() + "] hourly records of [" + stationFileName
+				+ "] from date [" + beginDate + "] to date [" + endDate + "] from store");
+		return records;
+	}
+
+	/**
+	 * Stores all records of a gzipped ISD station-year file, replacing any
+	 * previous version of it.
+	 */
+	public void ingest(File compressedStationFile, String stationFileName) throws IOException {
+		String year = getYear(stationFileName);
+		ByteArrayOutputStream[] days = new ByteArrayOutputStream[DAY_SLOTS];
+		int recordCount = 0;
+		int lastSlot = -1;
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new GZIPInputStream(new FileInputStream(compressedStationFile), 64 * 1024), CHARSET),
+				64 * 1024);
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.length() < ISDHourlyDataParser.MIN_RECORD_LENGTH) {
+					continue;
+				}
+				String date = line.substring(ISDHourlyDataParser.DATE_BEGIN,
+						ISDHourlyDataParser.DATE_BEGIN + ISDHourlyDataParser.DATE_LENGTH);
+				int slot = getDaySlot(date);
+				if (slot < 0 || !date.startsWith(year)) {
+					continue;
+				}
+
+				if (days[slot] == null) {
+					days[slot] = new ByteArrayOutputStream();
+				}
+				for (int[] column : ISDHourlyDataParser.RECORD_COLUMNS) {
+					days[slot].write(line.substring(column[0], column[1]).getBytes(CHARSET));
+				}
+				recordCount++;
+				lastSlot = Math.max(lastSlot, slot);
+			}
+		} finally {
+			reader.close();
+		}
+
+		if (Integer.parseInt(year) < Calendar.getInstance().get(Calendar.YEAR)) {
+			// a past year is complete, days without records will never have any
+			lastSlot = DAY_SLOTS - 1;
+		}
+
+		File storeFile = getStoreFile(stationFileName);
+		storeFile.getParentFile().mkdirs();
+		// unique, another backend may be ingesting the same station-year
+		File partialFile = File.createTempFile(storeFile.getName(), ".part",
+				storeFile.getParentFile());
+		DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(partialFile)));
+		try {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeInt(recordCount);
+			output.writeInt(lastSlot);
+
+			int firstRecord = 0;
+			for (ByteArrayOutputStream day : days) {
+				int dayRecords = day == null ? 0 : day.size() / RECORD_SIZE;
+				output.writeInt(firstRecord);
+				output.writeInt(dayRecords);
+				firstRecord += dayRecords;
+			}
+			for (ByteArrayOutputStream day : days) {
+				if (day != null) {
+					day.writeTo(output);
+				}
+			}
+		} finally {
+			output.close();
+		}
+
+		// replaced in one step, readers never miss the file
+		try {
+			Files.move(partialFile.toPath(), storeFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			partialFile.delete();
+			throw e;
+		}
+
+		LOGGER.info("Ingested [" + recordCount + "] hourly records of [" + stationFileName + "]");
+	}
+
+	/**
+	 * Ingests every "*.gz" ISD file found under isdDir.
+	 *
+	 * @return the number of ingested station-years
+	 */
+	public int ingestDirectory(File isdDir) throws IOException {
+		int ingested = 0;
+		File[] files = isdDir.listFiles();
+		if (files == null) {
+			return ingested;
+		}
+
+		for (File file : files) {
+			if (file.isDirectory()) {
+				ingested += ingestDirectory(file);
+			} else if (file.getName().endsWith(".gz")) {
+				String stationFileName = file.getName().substring(0, file.getName().length() - 3);
+				try {
+					ingest(file, stationFileName);
+					ingested++;
+				} catch (IOException e) {
+					LOGGER.error("Error while ingesting [" + file + "]", e);
+				}
+			}
+		}
+		return ingested;
+	}
+
+	protected File getStoreFile(String stationFileName) {
+		return new File(storeDir, getYear(stationFileName) + File.separator + stationFileName
+				+ EXTENSION);
+	}
+
+	private static String getYear(String stationFileName) {
+		return stationFileName.substring(stationFileName.lastIndexOf('-') + 1);
+	}
+
+	private static int getDaySlot(String date) {
+		if (date == null || date.length() < 8) {
+			return -1;
+		}
+		try {
+			int month = Integer.parseInt(date.substring(4, 6));
+			int day = Integer.parseInt(date.substring(6, 8));
+			if (month < 1 || month > 12 || day < 1 || day > 31) {
+				return -1;
+			}
+			return (month - 1) * 31 + day - 1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @return the yyyyMMdd date of a day slot
+	 */
+	private static String getDate(String year, int slot) {
+		int month = slot / 31 + 1;
+		int day = slot % 31 + 1;
+		return year + (month < 10 ? "0" : "") + month + (day < 10 ? "0" : "") + day;
+	}
+
+	private static int recordSize() {
+		int size = 0;
+		for (int[] column : ISDHourlyDataParser.RECORD_COLUMNS) {
+			size += column[1] - column[0];
+		}
+		return size;
+	}
+}
@@ -0,0 +1,26 @@
+package org.fogbowcloud.sebal.parsers.plugins;
+
+import java.io.File;
+
+/**
+ * Bulk loads gzipped ISD station-year files (e.g. a mirror of
+ * pub/data/noaa/2002) into a {@link StationRecordStore}.
+ *
+ * Usage: StationRecordStoreIngest &lt;isd dir&gt; &lt;store dir&gt;
+ */
+public class StationRecordStoreIngest {
+
+	public static void main(String[] args) throws Exception {
+		if (args.length != 2) {
+			System.err.println("Usage: StationRecordStoreIngest <isd dir> <store dir>");
+			System.exit(1);
+		}
+
+		File isdDir = new File(args[0]);
+		StationRecordStore store = new StationRecordStore(new File(args[1]));
+
+		int ingested = store.ingestDirectory(isdDir);
+
+		System.out.println("Ingested [" + ingested + "] station files from [" + isdDir + "]");
+	}
+}
@@ -0,0 +1,181 @@
+package org.fogbowcloud.sebal.parsers.plugins;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Remembers which stations failed validation for a period and main hours, so
+ * they are skipped without downloading or parsing them again.
+ *
+ * Entries expire after station_invalid_cache_ttl_hours. When
+ * station_invalid_cache_path is set they are also appended to that file, one
+ * "&lt;expires at&gt; &lt;key&gt;" line each, and loaded back by later runs;
+ * otherwise they only live as long as the JVM.
+ */
+public class StationValidationCache {
+
+	public static final long DEFAULT_TTL_HOURS = 24 * 7;
+
+	private static final long AN_HOUR = 1000 * 60 * 60;
+
+	private static final Logger LOGGER = Logger.getLogger(StationValidationCache.class);
+
+	private final Map<String, Long> invalidUntil = new ConcurrentHashMap<String, Long>();
+	private final File cacheFile;
+	private final long ttl;
+
+	public StationValidationCache(Properties properties) {
+		String ttlHours = properties
+				.getProperty(StationOperatorConstants.STATION_INVALID_CACHE_TTL_HOURS);
+		if (ttlHours != null && !ttlHours.trim().isEmpty()) {
+			this.ttl = (long) (Double.parseDouble(ttlHours.trim()) * AN_HOUR);
+		} else {
+			this.ttl = DEFAULT_TTL_HOURS * AN_HOUR;
+		}
+
+		String cachePath = properties.getProperty(StationOperatorConstants.STATION_INVALID_CACHE_PATH);
+		if (cachePath != null && !cachePath.trim().isEmpty()) {
+			this.cacheFile = new File(cachePath.trim());
+			load();
+		} else {
+			this.cacheFile = null;
+		}
+	}
+
+	public boolean isKnownInvalid(String stationId, String beginDate, String endDate,
+			List<String> mainHours) {
+		String key = getKey(stationId, beginDate, endDate, mainHours);
+		Long expiresAt = invalidUntil.get(key);
+		if (expiresAt == null) {
+			return false;
+		}
+		if (expiresAt <= now()) {
+			invalidUntil.remove(key);
+			return false;
+		}
+		return true;
+	}
+
+	public void markInvalid(String stationId, String beginDate, String endDate,
+			List<String> mainHours) {
+		String key = getKey(stationId, beginDate, endDate, mainHours);
+		long expiresAt = now() + ttl;
+		invalidUntil.put(key, expiresAt);
+
+		if (cacheFile != null) {
+			append(key, expiresAt);
+		}
+	}
+
+	protected long now() {
+		return System.currentTimeMillis();
+	}
+
+	private synchronized void append(String key, long expiresAt) {
+		try {
+			File parent = cacheFile.getAbsoluteFile().getParentFile();
+			if (!parent.exists()) {
+				parent.mkdirs();
+			}
+
+			PrintWriter writer = new PrintWriter(new FileWriter(cacheFile, true));
+			try {
+				writer.println(expiresAt + " " + key);
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			LOGGER.warn("Could not persist invalid station [" + key + "] to [" + cacheFile + "]", e);
+		}
+	}
+
+	/**
+	 * Loads the unexpired entries, rewriting the file without the expired ones.
+	 */
+	private void load() {
+		if (!cacheFile.exists()) {
+			return;
+		}
+
+		int lines = 0;
+		long now = now();
+		try {
+			BufferedReader reader = new BufferedReader(new FileReader(cacheFile));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					lines++;
+					int separator = line.indexOf(' ');
+					if (separator < 0) {
+						continue;
+					}
+					try {
+						long expiresAt = Long.parseLong(line.substring(0, separator));
+						if (expiresAt > now) {
+							invalidUntil.put(line.substring(separator + 1), expiresAt);
+						}
+					} catch (NumberFormatException e) {
+						LOGGER.debug("Skipping malformed line [" + line + "] of [" + cacheFile + "]");
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			LOGGER.warn("Could not read invalid stations from [" + cacheFile + "]", e);
+			return;
+		}
+
+		LOGGER.info("Loaded [" + invalidUntil.size() + "] invalid stations from [" + cacheFile + "]");
+		if (lines > invalidUntil.size()) {
+			compact();
+		}
+	}
+
+	private synchronized void compact() {
+		try {
+			// unique, other backends may be compacting the same file
+			File partialFile = File.createTempFile(cacheFile.getName(), ".part",
+					cacheFile.getAbsoluteFile().getParentFile());
+			try {
+				PrintWriter writer = new PrintWriter(new FileWriter(partialFile));
+				try {
+					for (Map.Entry<String, Long> entry : invalidUntil.entrySet()) {
+						writer.println(entry.getValue() + " " + entry.getKey());
+					}
+				} finally {
+					writer.close();
+				}
+				Files.move(partialFile.toPath(), cacheFile.toPath(),
+						StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				// left behind only when writing or moving failed
+				partialFile.delete();
+			}
+		} catch (IOException e) {
+			LOGGER.warn("Could not compact [" + cacheFile + "]", e);
+		}
+	}
+
+	private static String getKey(String stationId, String beginDate, String endDate,
+			List<String> mainHours) {
+		StringBuilder key = new StringBuilder();
+		key.append(stationId).append(';').append(beginDate).append(';').append(endDate);
+		for (String hour : mainHours) {
+			key.append(';').append(hour);
+		}
+		return key.toString();
+	}
+}
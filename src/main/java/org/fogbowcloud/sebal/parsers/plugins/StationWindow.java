@@ -0,0 +1,142 @@
+package org.fogbowcloud.sebal.parsers.plugins;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.log4j.MDC;
+import org.json.JSONArray;
+
+/**
+ * Reads the records of a station over a window of days. Each year of the
+ * window is a separate station-year file, so a window crossing 31 Dec reads
+ * its years in parallel and joins their records in date order.
+ *
+ * Years are read by a shared pool, so each read runs with the log context
+ * (MDC) of the thread asking for the window rather than the one its pooled
+ * thread inherited.
+ */
+public class StationWindow {
+
+	private static final ExecutorService EXECUTOR = Executors
+			.newCachedThreadPool(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "station-year-read");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	/**
+	 * Reads the days of a window that fall in one station-year.
+	 */
+	public interface YearReader {
+
+		/**
+		 * @return the records from beginDate to endDate, both in the given year,
+		 *         or null if they could not be fetched
+		 */
+		JSONArray read(String year, String beginDate, String endDate) throws Exception;
+	}
+
+	/**
+	 * @param beginDate first day of the window, as yyyyMMdd
+	 * @param endDate last day of the window, as yyyyMMdd
+	 * @return the records of the window, or null if any of its years could not
+	 *         be fetched
+	 */
+	public static JSONArray read(final YearReader reader, String beginDate, String endDate)
+			throws Exception {
+		List<String[]> years = splitByYear(beginDate, endDate);
+		if (years.size() == 1) {
+			return reader.read(years.get(0)[0], beginDate, endDate);
+		}
+
+		final Map<Object, Object> logContext = copyLogContext();
+		List<Future<JSONArray>> laterYears = new ArrayList<Future<JSONArray>>();
+		for (final String[] year : years.subList(1, years.size())) {
+			laterYears.add(EXECUTOR.submit(new Callable<JSONArray>() {
+				@Override
+				public JSONArray call() throws Exception {
+					setLogContext(logContext);
+					try {
+						return reader.read(year[0], year[1], year[2]);
+					} finally {
+						setLogContext(null);
+					}
+				}
+			}));
+		}
+
+		try {
+			String[] firstYear = years.get(0);
+			JSONArray records = reader.read(firstYear[0], firstYear[1], firstYear[2]);
+			for (Future<JSONArray> laterYear : laterYears) {
+				JSONArray yearRecords = laterYear.get();
+				if (records == null || yearRecords == null) {
+					return null;
+				}
+				for (int i = 0; i < yearRecords.length(); i++) {
+					records.put(yearRecords.get(i));
+				}
+			}
+			return records;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		} finally {
+			for (Future<JSONArray> laterYear : laterYears) {
+				laterYear.cancel(true);
+			}
+		}
+	}
+
+	private static Map<Object, Object> copyLogContext() {
+		Hashtable<?, ?> context = MDC.getContext();
+		return context == null ? null : new Hashtable<Object, Object>(context);
+	}
+
+	private static void setLogContext(Map<Object, Object> logContext) {
+		Hashtable<?, ?> context = MDC.getContext();
+		if (context != null) {
+			context.clear();
+		}
+		if (logContext != null) {
+			for (Map.Entry<Object, Object> entry : logContext.entrySet()) {
+				MDC.put((String) entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * @return the year, first and last day of each year of the window
+	 */
+	protected static List<String[]> splitByYear(String beginDate, String endDate) {
+		List<String[]> years = new ArrayList<String[]>();
+
+		String firstYear = beginDate.substring(0, 4);
+		if (endDate.substring(0, 4).compareTo(firstYear) <= 0) {
+			years.add(new String[] { firstYear, beginDate, endDate });
+			return years;
+		}
+
+		int beginYear = Integer.parseInt(firstYear);
+		int endYear = Integer.parseInt(endDate.substring(0, 4));
+		for (int year = beginYear; year <= endYear; year++) {
+			years.add(new String[] { String.valueOf(year),
+					year == beginYear ? beginDate : year + "0101",
+					year == endYear ? endDate : year + "1231" });
+		}
+		return years;
+	}
+}
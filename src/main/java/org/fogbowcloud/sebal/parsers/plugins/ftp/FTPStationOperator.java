@@ -2,81 +2,87 @@ package org.fogbowcloud.sebal.parsers.plugins.ftp;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.zip.GZIPInputStream;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
+import org.fogbowcloud.sebal.parsers.plugins.ISDHourlyDataParser;
+import org.fogbowcloud.sebal.parsers.plugins.StationCatalog;
+import org.fogbowcloud.sebal.parsers.plugins.StationCatalogCache;
+import org.fogbowcloud.sebal.parsers.plugins.StationFileDownloader;
+import org.fogbowcloud.sebal.parsers.plugins.StationIndex;
 import org.fogbowcloud.sebal.parsers.plugins.StationOperator;
 import org.fogbowcloud.sebal.parsers.plugins.StationOperatorConstants;
+import org.fogbowcloud.sebal.parsers.plugins.StationRecordStore;
+import org.fogbowcloud.sebal.parsers.plugins.StationWindow;
 import org.fogbowcloud.sebal.util.SEBALAppConstants;
 import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
 
 public class FTPStationOperator implements StationOperator {
 
 	private Properties properties;
-	private Map<String, String> cache = new HashMap<String, String>();
+	private Map<String, StationIndex> stationIndexes = new HashMap<String, StationIndex>();
+	private StationCatalogCache catalogCache;
+	private StationFileDownloader downloader;
+	private StationRecordStore recordStore;
 
 	private static final Logger LOGGER = Logger.getLogger(FTPStationOperator.class);
-	private static final double MAX_REGION_DISTANCE_KM = 500;
 
 	public FTPStationOperator(Properties properties) {
 		this.properties = properties;
+		this.catalogCache = new StationCatalogCache(properties);
+		this.downloader = StationFileDownloader.getShared(properties);
+		this.recordStore = StationRecordStore.fromProperties(properties);
 	}
 
 	@Override
 	public JSONArray getStations(String year) {
+		StationCatalog catalog = getStationCatalog(year);
+		return catalog == null ? null : catalog.toJSONArray();
+	}
+
+	@Override
+	public StationCatalog getStationCatalog(String year) {
 
 		String localStationsCSVFilePath = getStationCSVFilePath(year);
-		String url = getStationCSVFileURL(year);
 
-		if (doDownloadStationCSVFile(localStationsCSVFilePath, url)) {
-			return readStationCSVFile(localStationsCSVFilePath);
+		if (!catalogCache.isFresh(localStationsCSVFilePath)) {
+			String url = getStationCSVFileURL(year);
+			if (!doDownloadStationCSVFile(localStationsCSVFilePath, url)) {
+				if (!new File(localStationsCSVFilePath).exists()) {
+					return null;
+				}
+				LOGGER.warn("Using stale stations file [" + localStationsCSVFilePath + "]");
+			}
 		}
 
-		return null;
+		try {
+			return catalogCache.load(localStationsCSVFilePath);
+		} catch (IOException e) {
+			LOGGER.error("Error while reading stations csv file [" + localStationsCSVFilePath + "]",
+					e);
+			return null;
+		}
 	}
 
 	protected boolean doDownloadStationCSVFile(String localStationsCSVFilePath, String url) {
 
-		LOGGER.info("Downloading stations file by stationFileURL [" + url + "] and putting at ["
-				+ localStationsCSVFilePath + "] directory");
+		LOGGER.info("Revalidating stations file by stationFileURL [" + url + "] and keeping at ["
+				+ localStationsCSVFilePath + "] path");
 
-		ProcessBuilder builder = new ProcessBuilder("wget", "-O", localStationsCSVFilePath, url);
-
-		try {
-			Process p = builder.start();
-			p.waitFor();
-
-			cache.put(url, "SUCCEEDED");
-		} catch (IOException e) {
-			LOGGER.error("Error while writing file for station csv", e);
-			cache.put(url, "FAILED");
-			LOGGER.error("Saving the file at [" + localStationsCSVFilePath + "] as FAILED.");
-			return false;
-		} catch (InterruptedException e) {
-			LOGGER.error("Error while downloading file for station csv", e);
-			cache.put(url, "FAILED");
-			LOGGER.error("Setting URL [" + url + "] as FAILED.");
+		if (!catalogCache.revalidate(localStationsCSVFilePath, url)) {
+			LOGGER.error("Error while revalidating [" + url + "]");
 			return false;
 		}
 
-		LOGGER.info("Successfully Downloaded stations file by stationFileURL [" + url + "]");
+		LOGGER.info("Successfully revalidated stations file by stationFileURL [" + url + "]");
 		return true;
 	}
 
@@ -111,7 +117,6 @@ public class FTPStationOperator implements StationOperator {
 				stations.put(station);
 			}
 			fileReader.close();
-			file.delete();
 
 			LOGGER.info("Sucessfully readed the station file [" + localStationsCSVFilePath + "]");
 		} catch (IOException e) {
@@ -123,84 +128,75 @@ public class FTPStationOperator implements StationOperator {
 	}
 
 	@Override
-	public List<JSONObject> findNearestStation(Date date, double lat, double lon,
-			int numberOfDays) {
+	public synchronized StationIndex getStationIndex(String year) {
 
-		Date begindate = new Date(date.getTime() - numberOfDays * StationOperatorConstants.A_DAY);
-		String year = StationOperatorConstants.DATE_FORMAT.format(begindate).substring(0, 4);
+		StationIndex stationIndex = stationIndexes.get(year);
+		if (stationIndex == null) {
+			StationCatalog catalog = getStationCatalog(year);
+			if (catalog == null) {
+				return null;
+			}
 
-		LOGGER.debug("Find Nearest Station, Begin Year [" + year + "]");
+			stationIndex = new StationIndex(catalog);
+			stationIndexes.put(year, stationIndex);
 
-		JSONArray stations = getStations(year);
+			LOGGER.info("Built station index for year [" + year + "] with ["
+					+ stationIndex.size() + "] stations");
+		}
 
-		List<JSONObject> orderedStations = new LinkedList<JSONObject>();
-		for (int i = 0; i < stations.length(); i++) {
-			
-			JSONObject station = stations.optJSONObject(i);
-			double distance = distance(lat, lon, station.optDouble("lat"),
-					station.optDouble("lon"));
+		return stationIndex;
+	}
 
-			if (distance <= FTPStationOperator.MAX_REGION_DISTANCE_KM) {
-				station.put("distance", distance);
-				orderedStations.add(station);
-			}
+	@Override
+	public List<JSONObject> findNearestStation(Date date, double lat, double lon,
+			int numberOfDays) {
+
+		StationIndex stationIndex = getStationIndex(getBeginYear(date, numberOfDays));
+		if (stationIndex == null) {
+			return null;
 		}
 
-		Collections.sort(orderedStations, new Comparator<JSONObject>() {
-			@Override
-			public int compare(JSONObject o1, JSONObject o2) {
-				return ((Double) o1.optDouble("distance"))
-						.compareTo((Double) o2.optDouble("distance"));
-			}
-		});
+		return stationIndex.withinRadius(lat, lon, StationOperatorConstants.MAX_REGION_DISTANCE_KM);
+	}
+
+	@Override
+	public Iterator<JSONObject> nearestStations(Date date, double lat, double lon,
+			int numberOfDays) {
 
-		return orderedStations;
+		StationIndex stationIndex = getStationIndex(getBeginYear(date, numberOfDays));
+		if (stationIndex == null) {
+			return null;
+		}
+
+		return stationIndex.nearestFirst(lat, lon, StationOperatorConstants.MAX_REGION_DISTANCE_KM);
 	}
 
-	private double distance(double lat1, double lon1, double lat2, double lon2) {
+	private String getBeginYear(Date date, int numberOfDays) {
+		Date begindate = new Date(date.getTime() - numberOfDays * StationOperatorConstants.A_DAY);
+		String year = StationOperatorConstants.formatDate(begindate).substring(0, 4);
 
-		double dLat = Math.toRadians(lat2 - lat1);
-		double dLon = Math.toRadians(lon2 - lon1);
-		lat1 = Math.toRadians(lat1);
-		lat2 = Math.toRadians(lat2);
-		double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
-				+ Math.sin(dLon / 2) * Math.sin(dLon / 2) * Math.cos(lat1) * Math.cos(lat2);
-		double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-		return StationOperatorConstants.R * c;
+		LOGGER.debug("Find Nearest Station, Begin Year [" + year + "]");
+		return year;
 	}
 
 	@Override
-	public JSONArray readStation(String stationId, String beginDate, String endDate)
+	public JSONArray readStation(final String stationId, String beginDate, String endDate)
 			throws Exception {
 
 		LOGGER.info("Reading station [" + stationId + "], in beginDate [" + beginDate
 				+ "], and endDate [" + endDate + "]");
 
-		String year = beginDate.substring(0, 4);
-
-		String baseUnformattedLocalStationFilePath = getBaseUnformattedLocalStationFilePath(year);
-		File baseUnformattedLocalStationFile = new File(baseUnformattedLocalStationFilePath);
-
-		createDirectory(baseUnformattedLocalStationFile);
-
-		File compressedUnformattedLocalStationFile = getUnformattedStationFile(stationId, year);
-		String url = getStationFileUrl(stationId, year);
-		if (!downloadUnformattedStationFile(compressedUnformattedLocalStationFile, url)) {
+		JSONArray dataArray = StationWindow.read(new StationWindow.YearReader() {
+			@Override
+			public JSONArray read(String stationYear, String yearBeginDate, String yearEndDate)
+					throws IOException {
+				return readStationYear(stationId, stationYear, yearBeginDate, yearEndDate);
+			}
+		}, beginDate, endDate);
+		if (dataArray == null) {
 			return null;
 		}
 
-		File uncompressedUnformattedStationFile = unGzip(compressedUnformattedLocalStationFile,
-				true);
-
-		List<String> stationData = new ArrayList<String>();
-		readStationFile(uncompressedUnformattedStationFile, stationData);
-
-		deleteFile(uncompressedUnformattedStationFile);
-		FileUtils.deleteDirectory(baseUnformattedLocalStationFile);
-
-		JSONArray dataArray = new JSONArray();
-		getHourlyData(beginDate, stationData, dataArray);
-
 		for (int i = 0; i < dataArray.length(); i++) {
 			JSONObject stationDataRecord = dataArray.optJSONObject(i);
 			String airTemp = stationDataRecord.optString(SEBALAppConstants.JSON_AIR_TEMPERATURE);
@@ -216,7 +212,50 @@ public class FTPStationOperator implements StationOperator {
 			}
 		}
 
-		return null;
+		return new JSONArray();
+	}
+
+	/**
+	 * Reads the days of one station-year, from the record store when it holds
+	 * the year, so the file is downloaded once however many days are read.
+	 */
+	private JSONArray readStationYear(String stationId, String year, String beginDate,
+			String endDate) throws IOException {
+		String stationFileName = getStationFileName(stationId, year);
+		if (recordStore != null && recordStore.contains(stationFileName, endDate)) {
+			return recordStore.read(stationFileName, beginDate, endDate);
+		}
+		return downloadHourlyData(stationId, year, beginDate, endDate);
+	}
+
+	private JSONArray downloadHourlyData(String stationId, String year, String beginDate,
+			String endDate) throws IOException {
+		String baseUnformattedLocalStationFilePath = getBaseUnformattedLocalStationFilePath(year);
+		File baseUnformattedLocalStationFile = new File(baseUnformattedLocalStationFilePath);
+
+		createDirectory(baseUnformattedLocalStationFile);
+
+		File compressedUnformattedLocalStationFile = getUnformattedStationFile(stationId, year);
+		String url = getStationFileUrl(stationId, year);
+		if (!downloadUnformattedStationFile(compressedUnformattedLocalStationFile, url)) {
+			return null;
+		}
+
+		JSONArray dataArray;
+		if (recordStore != null) {
+			String stationFileName = getStationFileName(stationId, year);
+			recordStore.ingest(compressedUnformattedLocalStationFile, stationFileName);
+			dataArray = recordStore.read(stationFileName, beginDate, endDate);
+		} else {
+			dataArray = ISDHourlyDataParser.readHourlyData(
+					compressedUnformattedLocalStationFile, beginDate, endDate);
+		}
+
+		deleteFile(compressedUnformattedLocalStationFile);
+		// only removed once empty, other reads of this year may still use it
+		baseUnformattedLocalStationFile.delete();
+
+		return dataArray;
 	}
 
 	private void deleteFile(File file) {
@@ -250,6 +289,10 @@ public class FTPStationOperator implements StationOperator {
 				+ File.separator + year;
 	}
 
+	protected String getStationFileName(String stationId, String year) {
+		return stationId + "-99999-" + year;
+	}
+
 	protected String getStationFileUrl(String stationId, String year) {
 		return properties.getProperty(StationOperatorConstants.NOAA_FTP_SERVER_URL) + File.separator
 				+ year + File.separator + stationId + "-99999-" + year + ".gz";
@@ -270,218 +313,17 @@ public class FTPStationOperator implements StationOperator {
 		return unformattedLocalStationFile;
 	}
 
-	protected boolean downloadUnformattedStationFile(File unformattedLocalStationFile, String url)
-			throws Exception {
+	protected boolean downloadUnformattedStationFile(File unformattedLocalStationFile, String url) {
 		LOGGER.info("Downloading unformattedLocalStationFile [" + url + "] and putting at ["
 				+ unformattedLocalStationFile + "] path");
 
-		ProcessBuilder builder = new ProcessBuilder("wget", "-O",
-				unformattedLocalStationFile.getAbsolutePath(), url);
-
-		try {
-			Process p = builder.start();
-			p.waitFor();
-
-			cache.put(url, "SUCCEEDED");
-		} catch (IOException e) {
-			LOGGER.error("Error while writing file for station", e);
-			cache.put(url, "FAILED");
-			LOGGER.error("Setting URL " + url + " as FAILED.");
-			throw e;
-		} catch (InterruptedException e) {
-			LOGGER.error("Error while downloading file for station", e);
-			cache.put(url, "FAILED");
-			LOGGER.error("Setting URL " + url + " as FAILED.");
-			throw e;
+		if (!downloader.download(url, unformattedLocalStationFile)) {
+			LOGGER.error("Error while downloading [" + url + "]");
+			return false;
 		}
 
 		LOGGER.info("Successfully Downloaded unformattedLocalStationFile [" + url
 				+ "] and saved at [" + unformattedLocalStationFile + "]");
 		return true;
 	}
-
-	public static File unGzip(File file, boolean deleteGzipfileOnSuccess) throws IOException {
-		LOGGER.info("Unzipping station file [" + file.getPath() + "]");
-
-		GZIPInputStream gin = new GZIPInputStream(new FileInputStream(file));
-		FileOutputStream fos = null;
-		try {
-			File outFile = new File(file.getParent(), file.getName().replaceAll("\\.gz$", ""));
-			fos = new FileOutputStream(outFile);
-			byte[] buf = new byte[100000];
-			int len;
-			while ((len = gin.read(buf)) > 0) {
-				fos.write(buf, 0, len);
-			}
-
-			fos.close();
-			if (deleteGzipfileOnSuccess) {
-				file.delete();
-			}
-
-			LOGGER.info("Successfully Unzipped station file [" + file.getPath() + "]");
-
-			return outFile;
-		} catch (IOException e) {
-			LOGGER.error("Error while trying to Unzip the station file [" + file.getPath() + "]");
-			throw e;
-		} finally {
-			if (gin != null) {
-				gin.close();
-			}
-			if (fos != null) {
-				fos.close();
-			}
-		}
-	}
-
-	private void readStationFile(File unformattedLocalStationFile, List<String> stationData)
-			throws FileNotFoundException, IOException {
-
-		LOGGER.info("Reading unformattedStationFile [" + unformattedLocalStationFile + "]");
-
-		BufferedReader br = new BufferedReader(new FileReader(unformattedLocalStationFile));
-		String line = null;
-		while ((line = br.readLine()) != null) {
-			stationData.add(line);
-		}
-
-		LOGGER.info(
-				"Successfully readed unformattedStationFile [" + unformattedLocalStationFile + "]");
-		br.close();
-	}
-
-	private void getHourlyData(String beginDate, List<String> stationData, JSONArray dataArray)
-			throws JSONException {
-		LOGGER.info("Getting hourly data to beginDate [" + beginDate + "]");
-
-		for (String data : stationData) {
-			if (data.contains(beginDate)) {
-				JSONObject jsonObject = new JSONObject();
-
-				String stationId = data.substring(4, 10);
-				String date = data.substring(15, 23);
-				String time = data.substring(23, 27);
-
-				String latitude = data.substring(28, 34);
-				latitude = changeToLatitudeFormat(latitude);
-
-				String longitude = data.substring(34, 41);
-				longitude = changeToLongitudeFormat(longitude);
-
-				String windSpeed = data.substring(65, 69);
-				windSpeed = changeToWindSpeedFormat(windSpeed);
-
-				String airTemp = data.substring(87, 92);
-				airTemp = changeToAirTempFormat(airTemp);
-
-				String dewTemp = data.substring(93, 98);
-				dewTemp = changeToDewTempFormat(dewTemp);
-
-				jsonObject.put(SEBALAppConstants.JSON_STATION_ID, stationId);
-				jsonObject.put(SEBALAppConstants.JSON_STATION_DATE, date);
-				jsonObject.put(SEBALAppConstants.JSON_STATION_TIME, time);
-				jsonObject.put(SEBALAppConstants.JSON_STATION_LATITUDE, latitude);
-				jsonObject.put(SEBALAppConstants.JSON_STATION_LONGITUDE, longitude);
-				jsonObject.put(SEBALAppConstants.JSON_STATION_WIND_SPEED, windSpeed);
-				jsonObject.put(SEBALAppConstants.JSON_AIR_TEMPERATURE, airTemp);
-				jsonObject.put(SEBALAppConstants.JSON_DEWPOINT_TEMPERATURE, dewTemp);
-
-				dataArray.put(jsonObject);
-			}
-		}
-
-		LOGGER.info("Successfully geted hourly data to beginDate [" + beginDate + "]");
-	}
-
-	private String changeToLatitudeFormat(String latitude) {
-
-		StringBuilder sb = new StringBuilder(latitude);
-		if (latitude.contains("+")) {
-			sb.deleteCharAt(0);
-		}
-		latitude = sb.toString();
-		double latitudeValue = Double.valueOf(latitude) / 1000.0;
-		return String.valueOf(latitudeValue);
-	}
-
-	private String changeToLongitudeFormat(String longitude) {
-
-		StringBuilder sb = new StringBuilder(longitude);
-		if (longitude.contains("+")) {
-			sb.deleteCharAt(0);
-		}
-		longitude = sb.toString();
-		double longitudeValue = Double.valueOf(longitude) / 1000.0;
-		return String.valueOf(longitudeValue);
-	}
-
-	private String changeToWindSpeedFormat(String windSpeed) throws NumberFormatException {
-
-		if (windSpeed.equals("99999")) {
-			windSpeed = "***";
-		} else {
-			windSpeed = formatWindSpeed(windSpeed);
-		}
-		return windSpeed;
-	}
-
-	private String changeToAirTempFormat(String airTemp) throws NumberFormatException {
-
-		StringBuilder sb;
-		String airTempSign = airTemp.substring(0, 0);
-		sb = new StringBuilder(airTemp);
-		sb.deleteCharAt(0);
-		airTemp = sb.toString();
-		if (airTemp.equals("99999")) {
-			airTemp = "****";
-		} else {
-			airTemp = formatAirTemp(airTemp, airTempSign);
-		}
-		return airTemp;
-	}
-
-	private String changeToDewTempFormat(String dewTemp) throws NumberFormatException {
-
-		StringBuilder sb;
-		String dewTempSign = dewTemp.substring(0, 0);
-		sb = new StringBuilder(dewTemp);
-		sb.deleteCharAt(0);
-		dewTemp = sb.toString();
-		if (dewTemp.equals("99999")) {
-			dewTemp = "****";
-		} else {
-			dewTemp = formatDewTemp(dewTemp, dewTempSign);
-		}
-		return dewTemp;
-	}
-
-	private String formatWindSpeed(String windSpeed) throws NumberFormatException {
-
-		double integerConvertion = Integer.parseInt(windSpeed);
-		integerConvertion = integerConvertion / 10.0;
-		return String.valueOf(integerConvertion);
-	}
-
-	private String formatAirTemp(String airTemp, String airTempSign) throws NumberFormatException {
-
-		double integerConvertion = Integer.parseInt(airTemp);
-		if (airTempSign.equals("-")) {
-			integerConvertion *= -1;
-		}
-
-		integerConvertion = integerConvertion / 10.0;
-		return String.valueOf(integerConvertion);
-	}
-
-	private String formatDewTemp(String dewTemp, String dewTempSign) throws NumberFormatException {
-
-		double integerConvertion = Integer.parseInt(dewTemp);
-		if (dewTempSign.equals("-")) {
-			integerConvertion *= -1;
-		}
-
-		integerConvertion = integerConvertion / 10.0;
-		return String.valueOf(integerConvertion);
-	}
 }
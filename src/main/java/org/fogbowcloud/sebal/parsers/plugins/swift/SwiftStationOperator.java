@@ -2,133 +2,122 @@ package org.fogbowcloud.sebal.parsers.plugins.swift;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.security.GeneralSecurityException;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.zip.GZIPInputStream;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.BasicCookieStore;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.log4j.Logger;
+import org.fogbowcloud.sebal.parsers.plugins.ISDHourlyDataParser;
+import org.fogbowcloud.sebal.parsers.plugins.StationCatalog;
+import org.fogbowcloud.sebal.parsers.plugins.StationCatalogCache;
+import org.fogbowcloud.sebal.parsers.plugins.StationFileDownloader;
+import org.fogbowcloud.sebal.parsers.plugins.StationIndex;
 import org.fogbowcloud.sebal.parsers.plugins.StationOperator;
 import org.fogbowcloud.sebal.parsers.plugins.StationOperatorConstants;
+import org.fogbowcloud.sebal.parsers.plugins.StationRecordStore;
+import org.fogbowcloud.sebal.parsers.plugins.StationWindow;
 import org.fogbowcloud.sebal.util.SEBALAppConstants;
 import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
 
 public class SwiftStationOperator implements StationOperator{
 
 	private Properties properties;	
 	private String swiftStorageURL;
-	private String swiftClientPath;
-	private String swiftUrlExpirationTime; 
 	private String swiftContainerPrefix; 
-	private String swiftMetaAuthKey;
-	private Map<String, String> cache = new HashMap<String, String>();
+	private SwiftTempURLSigner urlSigner;
+	private Map<String, StationIndex> stationIndexes = new HashMap<String, StationIndex>();
+	private StationCatalogCache catalogCache;
+	private StationFileDownloader downloader;
+	private StationRecordStore recordStore;
 	
 	private static final Logger LOGGER = Logger.getLogger(SwiftStationOperator.class);
+	private static final long DEFAULT_URL_EXPIRATION_SECONDS = 60 * 60;
 	
 	public SwiftStationOperator(Properties properties) {
 		this.properties = properties;
 		this.swiftStorageURL = properties.getProperty(StationOperatorConstants.SWIFT_STORAGE_URL);
-		this.swiftClientPath = properties.getProperty(StationOperatorConstants.SWIFT_CLIENT_PATH);
-		this.swiftUrlExpirationTime = properties.getProperty(StationOperatorConstants.SWIFT_URL_EXPIRATION_TIME);
 		this.swiftContainerPrefix = properties.getProperty(StationOperatorConstants.SWIFT_CONTAINER_PREFIX);
-		this.swiftMetaAuthKey = properties.getProperty(StationOperatorConstants.SWIFT_META_AUTH_KEY);
+		this.urlSigner = new SwiftTempURLSigner(
+				properties.getProperty(StationOperatorConstants.SWIFT_META_AUTH_KEY),
+				getURLExpirationSeconds(properties));
+		this.catalogCache = new StationCatalogCache(properties);
+		this.downloader = StationFileDownloader.getShared(properties);
+		this.recordStore = StationRecordStore.fromProperties(properties);
 	}
 
 	@Override
 	public JSONArray getStations(String year) {
+		StationCatalog catalog = getStationCatalog(year);
+		return catalog == null ? null : catalog.toJSONArray();
+	}
+
+	@Override
+	public StationCatalog getStationCatalog(String year) {
 		
 		String localStationsCSVFilePath = getStationCSVFilePath(year);
-		String url = getStationCSVFileURL(year);
 		
-		if(doDownloadStationCSVFile(localStationsCSVFilePath, url)) {			
-			return readStationCSVFile(localStationsCSVFilePath);
+		if (!catalogCache.isFresh(localStationsCSVFilePath)) {
+			String url = getStationCSVFileURL(year);
+			if (!doDownloadStationCSVFile(localStationsCSVFilePath, url)) {
+				if (!new File(localStationsCSVFilePath).exists()) {
+					return null;
+				}
+				LOGGER.warn("Using stale stations file [" + localStationsCSVFilePath + "]");
+			}
 		}
 		
-		return null;
+		try {
+			return catalogCache.load(localStationsCSVFilePath);
+		} catch (IOException e) {
+			LOGGER.error("Error while reading stations csv file [" + localStationsCSVFilePath + "]",
+					e);
+			return null;
+		}
 	}
 
 	protected boolean doDownloadStationCSVFile(String localStationsCSVFilePath,
 			String url) {
-		try {
-			BasicCookieStore cookieStore = new BasicCookieStore();
-			HttpClient httpClient = HttpClientBuilder.create()
-					.setDefaultCookieStore(cookieStore).build();
-
-			HttpGet fileGet = new HttpGet(url);
-			HttpResponse response = httpClient.execute(fileGet);
-			if (response.getStatusLine().getStatusCode() == 404) {
-				return false;
-			}
-
-			OutputStream outStream = new FileOutputStream(
-					localStationsCSVFilePath);
-			IOUtils.copy(response.getEntity().getContent(), outStream);
-			outStream.close();
-		} catch(Exception e) {
-			LOGGER.error("Error while downloading stations cvs file", e);
+		
+		if (url == null) {
 			return false;
 		}
-		
-		return true;
+		return catalogCache.revalidate(localStationsCSVFilePath, url);
 	}
 	
 	protected String getStationCSVFilePath(String year) {
 		
-		return properties.getProperty(StationOperatorConstants.STATIONS_CSV_FROM_YEAR_FILE_PATH);
+		return properties.getProperty(StationOperatorConstants.STATIONS_CSV_FROM_YEAR_FILE_PATH)
+				+ File.separator + year + "-stations.csv";
 	}
 
 	protected String getStationCSVFileURL(String year) {
 		
-		ProcessBuilder builder = new ProcessBuilder(swiftClientPath, "GET",
-				swiftUrlExpirationTime, swiftContainerPrefix + File.separator + year
-						+ File.separator + year + "-stations.csv", swiftMetaAuthKey);
-
+		String objectPath = swiftContainerPrefix + File.separator + year + File.separator + year
+				+ "-stations.csv";
 		try {
-			Process p = builder.start();
-			p.waitFor();			
-			String urlEndpoint = getProcessOutput(p);
-			return swiftStorageURL + File.separator + urlEndpoint;
-		} catch (Exception e) {
+			return swiftStorageURL + File.separator + urlSigner.getEndpoint("GET", objectPath);
+		} catch (GeneralSecurityException e) {
 			LOGGER.error("Error while generating url for station", e);
 		}
 		
 		return null;
 	}
-	
-	private String getProcessOutput(Process p) throws IOException {
-		
-		BufferedReader reader = new BufferedReader(new InputStreamReader(p.getInputStream()));
-		StringBuilder stringBuilder = new StringBuilder();
-		String line = null;
-		while ((line = reader.readLine()) != null) {
-			stringBuilder.append(line);
-			stringBuilder.append(System.getProperty("line.separator"));
+
+	private static long getURLExpirationSeconds(Properties properties) {
+		String expirationTime = properties
+				.getProperty(StationOperatorConstants.SWIFT_URL_EXPIRATION_TIME);
+		if (expirationTime == null || expirationTime.trim().isEmpty()) {
+			return DEFAULT_URL_EXPIRATION_SECONDS;
 		}
-		
-		return stringBuilder.toString();
-  	}
+		return Long.parseLong(expirationTime.trim());
+	}
 
 	@Override
 	public JSONArray readStationCSVFile(String localStationsCSVFilePath) {
@@ -149,7 +138,6 @@ public class SwiftStationOperator implements StationOperator{
 				stations.put(station);
 			}
 			fileReader.close();
-			file.delete();
 		} catch (IOException e) {
 			LOGGER.error("Error while reading stations csv file", e);
 		}
@@ -158,77 +146,64 @@ public class SwiftStationOperator implements StationOperator{
 	}
 
 	@Override
-	public List<JSONObject> findNearestStation(Date date, double lat,
-			double lon, int numberOfDays) {
+	public synchronized StationIndex getStationIndex(String year) {
 		
-		Date begindate = new Date(date.getTime() - numberOfDays * StationOperatorConstants.A_DAY);
-		String year = StationOperatorConstants.DATE_FORMAT.format(begindate).substring(0, 4);
-		
-		JSONArray stations = getStations(year);
-		
-		List<JSONObject> orderedStations = new LinkedList<JSONObject>();
-		double minDistance = Double.MAX_VALUE;
-		for (int i = 0; i < stations.length(); i++) {
-			JSONObject station = stations.optJSONObject(i);
-			double d = d(lat, lon, station.optDouble("lat"), station.optDouble("lon"));
-			if (d < minDistance) {
-				minDistance = d;
-				station.put("d", d);
-				orderedStations.add(station);
+		StationIndex stationIndex = stationIndexes.get(year);
+		if (stationIndex == null) {
+			StationCatalog catalog = getStationCatalog(year);
+			if (catalog == null) {
+				return null;
 			}
+			
+			stationIndex = new StationIndex(catalog);
+			stationIndexes.put(year, stationIndex);
 		}
-
-		Collections.sort(orderedStations, new Comparator<JSONObject>() {
-
-			@Override
-			public int compare(JSONObject o1, JSONObject o2) {
-				return ((Double) o1.optDouble("d")).compareTo((Double) o2
-						.optDouble("d"));
-			}
-		});
-
-		return orderedStations;
-	}
-	
-	private double d(double lat1, double lon1, double lat2, double lon2) {
 		
-		double dLat = Math.toRadians(lat2 - lat1);
-		double dLon = Math.toRadians(lon2 - lon1);
-		lat1 = Math.toRadians(lat1);
-		lat2 = Math.toRadians(lat2);
-		double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) + Math.sin(dLon / 2)
-				* Math.sin(dLon / 2) * Math.cos(lat1) * Math.cos(lat2);
-		double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-		return StationOperatorConstants.R * c;
+		return stationIndex;
 	}
 
 	@Override
-	public JSONArray readStation(String stationId, String beginDate, String endDate) throws Exception {
+	public List<JSONObject> findNearestStation(Date date, double lat,
+			double lon, int numberOfDays) {
 		
-		String year = beginDate.substring(0, 4);
-
-		String baseUnformattedLocalStationFilePath = getBaseUnformattedLocalStationFilePath(year);
-		File baseUnformattedLocalStationFile = new File(baseUnformattedLocalStationFilePath);
-		baseUnformattedLocalStationFile.mkdirs();
+		StationIndex stationIndex = getStationIndex(getBeginYear(date, numberOfDays));
+		if (stationIndex == null) {
+			return null;
+		}
+		
+		return stationIndex.withinRadius(lat, lon, StationOperatorConstants.MAX_REGION_DISTANCE_KM);
+	}
 
-		File compressedUnformattedLocalStationFile = getUnformattedStationFile(stationId, year);
-		String url = getStationFileUrl(stationId, year);
-		if (!downloadUnformattedStationFile(compressedUnformattedLocalStationFile, url)) {
+	@Override
+	public Iterator<JSONObject> nearestStations(Date date, double lat, double lon,
+			int numberOfDays) {
+		
+		StationIndex stationIndex = getStationIndex(getBeginYear(date, numberOfDays));
+		if (stationIndex == null) {
 			return null;
 		}
+		
+		return stationIndex.nearestFirst(lat, lon, StationOperatorConstants.MAX_REGION_DISTANCE_KM);
+	}
 
-		// Uncompressing station file
-		File uncompressedUnformattedStationFile = unGzip(compressedUnformattedLocalStationFile, true);
+	private String getBeginYear(Date date, int numberOfDays) {
+		Date begindate = new Date(date.getTime() - numberOfDays * StationOperatorConstants.A_DAY);
+		return StationOperatorConstants.formatDate(begindate).substring(0, 4);
+	}
 
-		List<String> stationData = new ArrayList<String>();
-		readStationFile(uncompressedUnformattedStationFile, stationData);
-		
-		compressedUnformattedLocalStationFile.delete();
-		uncompressedUnformattedStationFile.delete();
-		FileUtils.deleteDirectory(baseUnformattedLocalStationFile);
+	@Override
+	public JSONArray readStation(final String stationId, String beginDate, String endDate) throws Exception {
 
-		JSONArray dataArray = new JSONArray();
-		getHourlyData(beginDate, stationData, dataArray);
+		JSONArray dataArray = StationWindow.read(new StationWindow.YearReader() {
+			@Override
+			public JSONArray read(String stationYear, String yearBeginDate, String yearEndDate)
+					throws IOException {
+				return readStationYear(stationId, stationYear, yearBeginDate, yearEndDate);
+			}
+		}, beginDate, endDate);
+		if (dataArray == null) {
+			return null;
+		}
 
 		for (int i = 0; i < dataArray.length(); i++) {
 			JSONObject stationDataRecord = dataArray.optJSONObject(i);
@@ -241,15 +216,55 @@ public class SwiftStationOperator implements StationOperator{
 
 			if (!airTemp.isEmpty() && !dewTemp.isEmpty()
 					&& !windSpeed.isEmpty()) {
-				compressedUnformattedLocalStationFile.delete();
 				return dataArray;
 			}
 		}
 
-		cache.put(url, "FAILED");
-		throw new Exception();
+		return new JSONArray();
 	}
 	
+	/**
+	 * Reads the days of one station-year, from the record store when it holds
+	 * the year, so the file is downloaded once however many days are read.
+	 */
+	private JSONArray readStationYear(String stationId, String year, String beginDate,
+			String endDate) throws IOException {
+		String stationFileName = getStationFileName(stationId, year);
+		if (recordStore != null && recordStore.contains(stationFileName, endDate)) {
+			return recordStore.read(stationFileName, beginDate, endDate);
+		}
+		return downloadHourlyData(stationId, year, beginDate, endDate);
+	}
+	
+	private JSONArray downloadHourlyData(String stationId, String year, String beginDate,
+			String endDate) throws IOException {
+		String baseUnformattedLocalStationFilePath = getBaseUnformattedLocalStationFilePath(year);
+		File baseUnformattedLocalStationFile = new File(baseUnformattedLocalStationFilePath);
+		baseUnformattedLocalStationFile.mkdirs();
+
+		File compressedUnformattedLocalStationFile = getUnformattedStationFile(stationId, year);
+		String url = getStationFileUrl(stationId, year);
+		if (!downloadUnformattedStationFile(compressedUnformattedLocalStationFile, url)) {
+			return null;
+		}
+
+		JSONArray dataArray;
+		if (recordStore != null) {
+			String stationFileName = getStationFileName(stationId, year);
+			recordStore.ingest(compressedUnformattedLocalStationFile, stationFileName);
+			dataArray = recordStore.read(stationFileName, beginDate, endDate);
+		} else {
+			dataArray = ISDHourlyDataParser.readHourlyData(
+					compressedUnformattedLocalStationFile, beginDate, endDate);
+		}
+
+		compressedUnformattedLocalStationFile.delete();
+		// only removed once empty, other reads of this year may still use it
+		baseUnformattedLocalStationFile.delete();
+
+		return dataArray;
+	}
+
 	protected String getBaseUnformattedLocalStationFilePath(String year) {
 		
 		return properties
@@ -257,6 +272,10 @@ public class SwiftStationOperator implements StationOperator{
 				+ File.separator + year;
 	}
 
+	protected String getStationFileName(String stationId, String year) {
+		return stationId + "-99999-" + year;
+	}
+
 	protected String getStationFileUrl(String stationId, String year) {
 		
 		return properties.getProperty(StationOperatorConstants.STATION_CSV_SERVER_URL)
@@ -279,213 +298,13 @@ public class SwiftStationOperator implements StationOperator{
 		return unformattedLocalStationFile;
 	}
 	
-	protected boolean downloadUnformattedStationFile(File unformattedLocalStationFile, String url) throws Exception {
+	protected boolean downloadUnformattedStationFile(File unformattedLocalStationFile, String url) {
 
-		try {
-			BasicCookieStore cookieStore = new BasicCookieStore();
-			HttpClient httpClient = HttpClientBuilder.create()
-					.setDefaultCookieStore(cookieStore).build();
-
-			HttpGet fileGet = new HttpGet(url);
-			HttpResponse response = httpClient.execute(fileGet);
-			if (response.getStatusLine().getStatusCode() == 404) {
-				return false;
-			}
-
-			OutputStream outStream = new FileOutputStream(
-					unformattedLocalStationFile);
-			IOUtils.copy(response.getEntity().getContent(), outStream);
-			outStream.close();
-
-			cache.put(url, "SUCCEEDED");
-		} catch (Exception e) {
-			cache.put(url, "FAILED");
-			LOGGER.error("Setting URL " + url + " as FAILED.");
-			throw e;
+		if (!downloader.download(url, unformattedLocalStationFile)) {
+			LOGGER.error("Error while downloading [" + url + "]");
+			return false;
 		}
 
 		return true;
 	}
-	
-	public static File unGzip(File file, boolean deleteGzipfileOnSuccess) throws IOException {
-		
-	    GZIPInputStream gin = new GZIPInputStream(new FileInputStream(file));
-	    FileOutputStream fos = null;
-	    try {
-	        File outFile = new File(file.getParent(), file.getName().replaceAll("\\.gz$", ""));
-	        fos = new FileOutputStream(outFile);
-	        byte[] buf = new byte[100000];
-	        int len;
-	        while ((len = gin.read(buf)) > 0) {
-	            fos.write(buf, 0, len);
-	        }
-
-	        fos.close();
-	        if (deleteGzipfileOnSuccess) {
-	            file.delete();
-	        }
-	        return outFile; 
-	    } finally {
-	        if (gin != null) {
-	            gin.close();    
-	        }
-	        if (fos != null) {
-	            fos.close();    
-	        }
-	    }       
-	}
-	
-	private void readStationFile(File unformattedLocalStationFile,
-			List<String> stationData) throws FileNotFoundException, IOException {
-		
-		BufferedReader br = new BufferedReader(new FileReader(
-				unformattedLocalStationFile));
-		String line = null;
-		while ((line = br.readLine()) != null) {
-			stationData.add(line);
-		}
-
-		br.close();
-	}
-	
-	private void getHourlyData(String beginDate, List<String> stationData,
-			JSONArray dataArray) throws JSONException {
-		
-		for (String data : stationData) {
-			if (data.contains(beginDate)) {
-				JSONObject jsonObject = new JSONObject();
-
-				String stationId = data.substring(4, 10);
-				String date = data.substring(15, 23);
-				String time = data.substring(23, 27);
-
-				String latitude = data.substring(28, 34);
-				latitude = changeToLatitudeFormat(latitude);
-
-				String longitude = data.substring(34, 41);
-				longitude = changeToLongitudeFormat(longitude);
-
-				String windSpeed = data.substring(65, 69);
-				windSpeed = changeToWindSpeedFormat(windSpeed);
-
-				String airTemp = data.substring(87, 92);
-				airTemp = changeToAirTempFormat(airTemp);
-
-				String dewTemp = data.substring(93, 98);
-				dewTemp = changeToDewTempFormat(dewTemp);
-
-				jsonObject.put(SEBALAppConstants.JSON_STATION_ID, stationId);
-				jsonObject.put(SEBALAppConstants.JSON_STATION_DATE, date);
-				jsonObject.put(SEBALAppConstants.JSON_STATION_TIME, time);
-				jsonObject.put(SEBALAppConstants.JSON_STATION_LATITUDE,
-						latitude);
-				jsonObject.put(SEBALAppConstants.JSON_STATION_LONGITUDE,
-						longitude);
-				jsonObject.put(SEBALAppConstants.JSON_STATION_WIND_SPEED,
-						windSpeed);
-				jsonObject.put(SEBALAppConstants.JSON_AIR_TEMPERATURE, airTemp);
-				jsonObject.put(SEBALAppConstants.JSON_DEWPOINT_TEMPERATURE,
-						dewTemp);
-
-				dataArray.put(jsonObject);
-			}
-		}
-	}
-	
-	private String changeToLatitudeFormat(String latitude) {
-		
-		StringBuilder sb = new StringBuilder(latitude);
-		if(latitude.contains("+")) {			
-			sb.deleteCharAt(0);
-		}
-		latitude = sb.toString();
-		double latitudeValue = Double.valueOf(latitude) / 1000.0;
-		return String.valueOf(latitudeValue);
-	}
-	
-	private String changeToLongitudeFormat(String longitude) {
-		
-		StringBuilder sb = new StringBuilder(longitude);
-		if(longitude.contains("+")) {			
-			sb.deleteCharAt(0);
-		}
-		longitude = sb.toString();
-		double longitudeValue = Double.valueOf(longitude) / 1000.0;
-		return String.valueOf(longitudeValue);
-	}
-
-	private String changeToWindSpeedFormat(String windSpeed)
-			throws NumberFormatException {
-		
-		if (windSpeed.equals("99999")) {
-			windSpeed = "***";
-		} else {
-			windSpeed = formatWindSpeed(windSpeed);
-		}
-		return windSpeed;
-	}
-
-	private String changeToAirTempFormat(String airTemp)
-			throws NumberFormatException {
-		
-		StringBuilder sb;
-		String airTempSign = airTemp.substring(0, 0);
-		sb = new StringBuilder(airTemp);
-		sb.deleteCharAt(0);
-		airTemp = sb.toString();
-		if (airTemp.equals("99999")) {
-			airTemp = "****";
-		} else {
-			airTemp = formatAirTemp(airTemp, airTempSign);
-		}
-		return airTemp;
-	}
-
-	private String changeToDewTempFormat(String dewTemp)
-			throws NumberFormatException {
-		
-		StringBuilder sb;
-		String dewTempSign = dewTemp.substring(0, 0);
-		sb = new StringBuilder(dewTemp);
-		sb.deleteCharAt(0);
-		dewTemp = sb.toString();
-		if (dewTemp.equals("99999")) {
-			dewTemp = "****";
-		} else {
-			dewTemp = formatDewTemp(dewTemp, dewTempSign);
-		}
-		return dewTemp;
-	}
-
-	private String formatWindSpeed(String windSpeed)
-			throws NumberFormatException {
-		
-		double integerConvertion = Integer.parseInt(windSpeed);
-		integerConvertion = integerConvertion / 10.0;
-		return String.valueOf(integerConvertion);
-	}
-
-	private String formatAirTemp(String airTemp, String airTempSign)
-			throws NumberFormatException {
-		
-		double integerConvertion = Integer.parseInt(airTemp);
-		if (airTempSign.equals("-")) {
-			integerConvertion *= -1;
-		}
-
-		integerConvertion = integerConvertion / 10.0;
-		return String.valueOf(integerConvertion);
-	}
-
-	private String formatDewTemp(String dewTemp, String dewTempSign)
-			throws NumberFormatException {
-		
-		double integerConvertion = Integer.parseInt(dewTemp);
-		if (dewTempSign.equals("-")) {
-			integerConvertion *= -1;
-		}
-
-		integerConvertion = integerConvertion / 10.0;
-		return String.valueOf(integerConvertion);
-	}
 }
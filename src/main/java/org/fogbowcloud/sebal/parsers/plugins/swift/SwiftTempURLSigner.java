@@ -0,0 +1,95 @@
+package org.fogbowcloud.sebal.parsers.plugins.swift;
+
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Builds Swift temporary URL endpoints in the JVM, as "swift tempurl" prints
+ * them: the object path followed by temp_url_sig, the hex HMAC-SHA1 of
+ * "&lt;method&gt;\n&lt;expires&gt;\n&lt;path&gt;" under the account's temp URL
+ * key, and temp_url_expires.
+ *
+ * Each endpoint is reused until a tenth of its lifetime (at most a minute)
+ * before it expires, so a download never starts with an almost expired URL.
+ */
+public class SwiftTempURLSigner {
+
+	private static final String ALGORITHM = "HmacSHA1";
+	private static final long MAX_RENEWAL_MARGIN_SECONDS = 60;
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private final String key;
+	private final long lifetimeSeconds;
+	private final Map<String, SignedEndpoint> endpoints = new ConcurrentHashMap<String, SignedEndpoint>();
+
+	public SwiftTempURLSigner(String key, long lifetimeSeconds) {
+		this.key = key;
+		this.lifetimeSeconds = lifetimeSeconds;
+	}
+
+	/**
+	 * @param objectPath e.g. "/swift/v1/container/object"
+	 * @return "&lt;objectPath&gt;?temp_url_sig=...&amp;temp_url_expires=..."
+	 */
+	public String getEndpoint(String method, String objectPath) throws GeneralSecurityException {
+		String cacheKey = method + " " + objectPath;
+		long now = now();
+
+		SignedEndpoint endpoint = endpoints.get(cacheKey);
+		if (endpoint == null || now >= endpoint.renewAt) {
+			long expires = now + lifetimeSeconds;
+			String signature = sign(key, method, expires, objectPath);
+			endpoint = new SignedEndpoint(objectPath + "?temp_url_sig=" + signature
+					+ "&temp_url_expires=" + expires, expires
+					- Math.min(MAX_RENEWAL_MARGIN_SECONDS, lifetimeSeconds / 10));
+			endpoints.put(cacheKey, endpoint);
+		}
+		return endpoint.value;
+	}
+
+	/**
+	 * @return the current time in seconds
+	 */
+	protected long now() {
+		return System.currentTimeMillis() / 1000;
+	}
+
+	protected static String sign(String key, String method, long expires, String objectPath)
+			throws GeneralSecurityException {
+		if (key == null) {
+			throw new GeneralSecurityException("No temp URL key configured");
+		}
+
+		try {
+			Mac mac = Mac.getInstance(ALGORITHM);
+			mac.init(new SecretKeySpec(key.getBytes("UTF-8"), ALGORITHM));
+			byte[] digest = mac.doFinal((method + "\n" + expires + "\n" + objectPath)
+					.getBytes("UTF-8"));
+
+			char[] hex = new char[digest.length * 2];
+			for (int i = 0; i < digest.length; i++) {
+				hex[2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+				hex[2 * i + 1] = HEX_DIGITS[digest[i] & 0xf];
+			}
+			return new String(hex);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static class SignedEndpoint {
+
+		private final String value;
+		private final long renewAt;
+
+		SignedEndpoint(String value, long renewAt) {
+			this.value = value;
+			this.renewAt = renewAt;
+		}
+	}
+}
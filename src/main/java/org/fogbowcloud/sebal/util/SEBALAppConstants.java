@@ -20,6 +20,11 @@ public class SEBALAppConstants {
 	// File constants
 	public static final String FILE_ENCODING = "UTF-8";
 	
+	// Preprocess constants
+	public static final String PREPROCESS_FROM_METADATA = "preprocess_from_metadata";
+	public static final String PARTITION_BY_VALID_PIXELS = "partition_by_valid_pixels";
+	public static final String VALID_PIXEL_HISTOGRAM_CACHE_PATH = "valid_pixel_histogram_cache_path";
+
 	// Weather Station constants
 	public static final String DEFAULT_SCENE_CENTER_TIME = "1200";
 }
\ No newline at end of file
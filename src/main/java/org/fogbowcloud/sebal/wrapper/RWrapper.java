@@ -1,8 +1,12 @@
 package org.fogbowcloud.sebal.wrapper;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.Properties;
 
@@ -10,8 +14,13 @@ import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
 import org.esa.beam.framework.datamodel.Product;
 import org.fogbowcloud.sebal.BoundingBoxVertice;
+import org.fogbowcloud.sebal.MTLParser;
 import org.fogbowcloud.sebal.SEBALHelper;
+import org.fogbowcloud.sebal.SceneMetadata;
+import org.fogbowcloud.sebal.TilePartition;
 import org.fogbowcloud.sebal.model.image.BoundingBox;
+import org.fogbowcloud.sebal.parsers.StationData;
+import org.fogbowcloud.sebal.parsers.WeatherStation;
 import org.fogbowcloud.sebal.util.SEBALAppConstants;
 
 public class RWrapper {
@@ -24,6 +33,7 @@ public class RWrapper {
 	private int jBegin;
 	private int jFinal;
 	private String outputDir;
+	private TilePartition tile;
 	private List<BoundingBoxVertice> boundingBoxVertices = new ArrayList<BoundingBoxVertice>();
 
 	private static final Logger LOGGER = Logger.getLogger(RWrapper.class);
@@ -53,6 +63,17 @@ public class RWrapper {
 		this.boundingBoxVertices = SEBALHelper.getVerticesFromFile(boundingBoxFileName);
 	}
 
+	/**
+	 * Pre processes a tile of a grid partitioning, see
+	 * {@link org.fogbowcloud.sebal.BulkHelper#getSelectedTile}.
+	 */
+	public RWrapper(String outputDir, String imageName, String mtlFile, TilePartition tile,
+			String boundingBoxFileName, Properties properties) throws IOException {
+		this(outputDir, imageName, mtlFile, tile.getIBegin(), tile.getIFinal(), tile.getJBegin(),
+				tile.getJFinal(), boundingBoxFileName, properties);
+		this.tile = tile;
+	}
+
 	public void doTask(String taskType) throws Exception {
 		try {
 			if (taskType.equalsIgnoreCase(TaskType.PREPROCESS)) {
@@ -66,23 +87,45 @@ public class RWrapper {
 
 	public void preProcessingPixels() throws Exception {
 		LOGGER.info("Pre processing pixels...");
+		if (this.tile != null) {
+			LOGGER.info("Pre processing [" + this.tile + "]");
+		}
 
 		long now = System.currentTimeMillis();
-		Product product = SEBALHelper.readProduct(this.mtlFilePath, this.boundingBoxVertices);
 
-		BoundingBox boundingBox = null;
-		if (this.boundingBoxVertices.size() > 3) {
-			boundingBox = SEBALHelper.buildBoundingBox(this.boundingBoxVertices, product);
-			
-			LOGGER.debug("Bounding box: X=" + boundingBox.getX() + " - Y=" + boundingBox.getY());
-			LOGGER.debug("Bounding box: W=" + boundingBox.getW() + " - H=" + boundingBox.getH());
+		// the station catalog only depends on the date, so it loads while the
+		// scene is read
+		WeatherStation weatherStation = new WeatherStation(this.properties);
+		SceneMetadata metadata = null;
+		try {
+			metadata = MTLParser.parse(new File(this.mtlFilePath));
+		} catch (Exception e) {
+			LOGGER.warn("Could not parse [" + this.mtlFilePath + "], reading it with the product",
+					e);
+		}
+		Date acquisitionDate = metadata == null ? null : metadata.getAcquisitionTime();
+		if (acquisitionDate != null) {
+			weatherStation.prefetchStationIndex(acquisitionDate);
 		}
 
-		String stationData = SEBALHelper.getStationData(this.properties, product, this.iBegin,
-				this.iFinal, this.jBegin, this.jFinal, boundingBox);
+		StationData stationData = null;
+		boolean readFromMetadata = false;
+		if (metadata != null && isPreprocessFromMetadata()) {
+			try {
+				stationData = SEBALHelper.getStationRecords(weatherStation, this.mtlFilePath, metadata,
+						this.boundingBoxVertices, this.iBegin, this.iFinal, this.jBegin,
+						this.jFinal);
+				readFromMetadata = true;
+			} catch (IOException e) {
+				LOGGER.warn("Could not pre process from metadata, reading the product", e);
+			}
+		}
+		if (!readFromMetadata) {
+			stationData = getStationRecordsFromProduct(weatherStation, metadata);
+		}
 
-		if (stationData != null && !stationData.isEmpty()) {
-			LOGGER.debug("stationData: " + stationData);
+		if (stationData != null && stationData.size() > 0) {
+			LOGGER.debug("stationData: [" + stationData.size() + "] records");
 			
 			this.saveWeatherStationInfo(stationData);
 			
@@ -93,14 +136,49 @@ public class RWrapper {
 		}
 	}
 
-	private void saveWeatherStationInfo(String stationData) {
+	/**
+	 * @param metadata the parsed MTL, or null if it could not be parsed
+	 */
+	private StationData getStationRecordsFromProduct(WeatherStation weatherStation,
+			SceneMetadata metadata) throws Exception {
+		Product product = SEBALHelper.readProduct(this.mtlFilePath, this.boundingBoxVertices);
+
+		BoundingBox boundingBox = null;
+		if (this.boundingBoxVertices.size() > 3) {
+			boundingBox = SEBALHelper.buildBoundingBox(this.boundingBoxVertices, product,
+					metadata);
+			
+			LOGGER.debug("Bounding box: X=" + boundingBox.getX() + " - Y=" + boundingBox.getY());
+			LOGGER.debug("Bounding box: W=" + boundingBox.getW() + " - H=" + boundingBox.getH());
+		}
+
+		return SEBALHelper.getStationRecords(weatherStation, product, metadata, this.iBegin,
+				this.iFinal, this.jBegin, this.jFinal, boundingBox);
+	}
+
+	/**
+	 * Whether the scene geometry is read from the MTL and GeoTIFF headers
+	 * instead of from the BEAM product, see preprocess_from_metadata.
+	 */
+	private boolean isPreprocessFromMetadata() {
+		return Boolean.parseBoolean(this.properties.getProperty(
+				SEBALAppConstants.PREPROCESS_FROM_METADATA, "false").trim());
+	}
+
+	private void saveWeatherStationInfo(StationData stationData) {
 		long now = System.currentTimeMillis();
 		String weatherPixelsFileName = getWeatherFileName();
 
 		LOGGER.info("stationFileName=" + weatherPixelsFileName);
 		File outputFile = new File(weatherPixelsFileName);
 		try {
-			FileUtils.write(outputFile, stationData, SEBALAppConstants.FILE_ENCODING);
+			Writer writer = new BufferedWriter(new OutputStreamWriter(
+					FileUtils.openOutputStream(outputFile), SEBALAppConstants.FILE_ENCODING));
+			try {
+				stationData.writeTo(writer);
+			} finally {
+				writer.close();
+			}
 		} catch (IOException e) {
 			LOGGER.error("Error while writing station file.", e);
 		}
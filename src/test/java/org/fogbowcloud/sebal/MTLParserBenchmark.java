@@ -0,0 +1,101 @@
+package org.fogbowcloud.sebal;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.fogbowcloud.sebal.util.SEBALAppConstants;
+
+/**
+ * Measures the throughput of {@link MTLParser} against splitting the MTL into
+ * lines and trimming them. It is not a test; run it by hand with [MTL count]
+ * [rounds] [MTL directory] as optional arguments, the MTLs being generated
+ * when no directory is given.
+ */
+public class MTLParserBenchmark {
+
+	private static final int WARM_UP_ROUNDS = 20;
+
+	public static void main(String[] args) throws Exception {
+		int mtlCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+		List<String> mtls = new ArrayList<String>();
+		if (args.length > 2) {
+			for (File mtlFile : new File(args[2]).listFiles()) {
+				if (mtlFile.getName().endsWith("_MTL.txt")) {
+					mtls.add(FileUtils.readFileToString(mtlFile, SEBALAppConstants.FILE_ENCODING));
+				}
+			}
+		} else {
+			for (int i = 0; i < mtlCount; i++) {
+				mtls.add(TestMTLParser.createMTL("LT5215065" + (2000000 + i) + "CUB00",
+						i % 60 + 1));
+			}
+		}
+
+		long bytes = 0;
+		for (String mtl : mtls) {
+			bytes += mtl.length();
+		}
+
+		for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+			parseLines(mtls);
+			parseScenes(mtls);
+		}
+
+		long linesTime = 0;
+		long parserTime = 0;
+		long checksum = 0;
+		for (int round = 0; round < rounds; round++) {
+			long begin = System.nanoTime();
+			checksum += parseLines(mtls);
+			linesTime += System.nanoTime() - begin;
+
+			begin = System.nanoTime();
+			checksum -= parseScenes(mtls);
+			parserTime += System.nanoTime() - begin;
+		}
+
+		long parsedMTLs = (long) rounds * mtls.size();
+		System.out.println("Line split: " + linesTime / parsedMTLs + " ns/MTL, "
+				+ toMegabytesPerSecond(bytes * rounds, linesTime) + " MB/s");
+		System.out.println("MTLParser:  " + parserTime / parsedMTLs + " ns/MTL, "
+				+ toMegabytesPerSecond(bytes * rounds, parserTime) + " MB/s");
+		System.out.println("Checksum difference (expected 0): " + checksum);
+	}
+
+	private static long parseLines(List<String> mtls) {
+		long sum = 0;
+		for (String mtl : mtls) {
+			Map<String, String> values = new HashMap<String, String>();
+			for (String line : mtl.split("\r?\n")) {
+				int separator = line.indexOf('=');
+				if (separator < 0) {
+					continue;
+				}
+				String key = line.substring(0, separator).trim();
+				if (!key.equals("GROUP") && !key.equals("END_GROUP")) {
+					values.put(key, line.substring(separator + 1).trim().replace("\"", ""));
+				}
+			}
+			sum += Integer.parseInt(values.get("UTM_ZONE"));
+		}
+		return sum;
+	}
+
+	private static long parseScenes(List<String> mtls) {
+		long sum = 0;
+		for (String mtl : mtls) {
+			sum += MTLParser.parse(mtl).getUtmZone();
+		}
+		return sum;
+	}
+
+	private static long toMegabytesPerSecond(long bytes, long nanoseconds) {
+		return bytes * 1000 / Math.max(nanoseconds, 1);
+	}
+}
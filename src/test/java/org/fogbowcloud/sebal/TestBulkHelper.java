@@ -1,5 +1,7 @@
 package org.fogbowcloud.sebal;
 
+import java.util.List;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -121,4 +123,113 @@ public class TestBulkHelper {
 		Assert.assertEquals(166, selectePartition.getIBegin());
 		Assert.assertEquals(200, selectePartition.getIFinal());
 	}
+
+	@Test
+	public void testSingleRowOfTilesMatchesXPartitions() {
+		for (int partitionIndex = 1; partitionIndex <= 8; partitionIndex++) {
+			// exercise
+			TilePartition tile = BulkHelper.getSelectedTile(10, 0, 25, 100, "1x8", partitionIndex);
+
+			// expect
+			XPartitionInterval partition = BulkHelper.getSelectedPartition(10, 25, 8,
+					partitionIndex);
+			Assert.assertEquals(partition.getIBegin(), tile.getIBegin());
+			Assert.assertEquals(partition.getIFinal(), tile.getIFinal());
+			Assert.assertEquals(0, tile.getJBegin());
+			Assert.assertEquals(100, tile.getJFinal());
+		}
+	}
+
+	@Test
+	public void testTilesInRowMajorOrder() {
+		// exercise
+		List<TilePartition> tiles = BulkHelper.getTiles(100, 0, 200, 90, 3, 2, 0);
+
+		// expect
+		Assert.assertEquals(6, tiles.size());
+		TilePartition tile = tiles.get(3);
+		Assert.assertEquals(4, tile.getIndex());
+		Assert.assertEquals(2, tile.getRow());
+		Assert.assertEquals(2, tile.getColumn());
+		Assert.assertEquals(150, tile.getIBegin());
+		Assert.assertEquals(200, tile.getIFinal());
+		Assert.assertEquals(30, tile.getJBegin());
+		Assert.assertEquals(60, tile.getJFinal());
+		Assert.assertEquals(tile.getIBegin(), BulkHelper.getSelectedTile(100, 0, 200, 90, "3x2",
+				4).getIBegin());
+	}
+
+	@Test
+	public void testTileHaloStaysWithinTheImage() {
+		// exercise
+		TilePartition corner = BulkHelper.getSelectedTile(100, 0, 200, 90, "3x2+4", 1);
+		TilePartition middle = BulkHelper.getSelectedTile(100, 0, 200, 90, "3x2+4", 3);
+
+		// expect
+		Assert.assertEquals(100, corner.getHaloIBegin());
+		Assert.assertEquals(154, corner.getHaloIFinal());
+		Assert.assertEquals(0, corner.getHaloJBegin());
+		Assert.assertEquals(34, corner.getHaloJFinal());
+
+		Assert.assertEquals(100, middle.getHaloIBegin());
+		Assert.assertEquals(26, middle.getHaloJBegin());
+		Assert.assertEquals(64, middle.getHaloJFinal());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testTileOutOfTheGrid() {
+		BulkHelper.getSelectedTile(100, 0, 200, 90, "3x2", 7);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidTileGrid() {
+		BulkHelper.getSelectedTile(100, 0, 200, 90, "3x", 1);
+	}
+
+	@Test
+	public void testBalancedPartitionsSplitTheCost() {
+		// set up
+		long[] columnCosts = new long[20];
+		for (int column = 10; column < 20; column++) {
+			columnCosts[column] = 10;
+		}
+
+		// exercise
+		XPartitionInterval first = BulkHelper.getBalancedPartition(0, 20, 2, 1, columnCosts);
+		XPartitionInterval second = BulkHelper.getBalancedPartition(0, 20, 2, 2, columnCosts);
+
+		// expect
+		Assert.assertEquals(0, first.getIBegin());
+		Assert.assertEquals(15, first.getIFinal());
+		Assert.assertEquals(15, second.getIBegin());
+		Assert.assertEquals(20, second.getIFinal());
+	}
+
+	@Test
+	public void testBalancedPartitionsKeepOneColumn() {
+		// set up
+		long[] columnCosts = new long[10];
+		columnCosts[9] = 100;
+
+		// exercise
+		int[] bounds = BulkHelper.getBalancedBounds(0, 10, 4, columnCosts);
+
+		// expect
+		Assert.assertArrayEquals(new int[] { 0, 7, 8, 9, 10 }, bounds);
+	}
+
+	@Test
+	public void testBalancedPartitionsWithoutCostHaveEqualWidths() {
+		for (int partitionIndex = 1; partitionIndex <= 3; partitionIndex++) {
+			// exercise
+			XPartitionInterval balanced = BulkHelper.getBalancedPartition(100, 200, 3,
+					partitionIndex, new long[0]);
+
+			// expect
+			XPartitionInterval partition = BulkHelper.getSelectedPartition(100, 200, 3,
+					partitionIndex);
+			Assert.assertEquals(partition.getIBegin(), balanced.getIBegin());
+			Assert.assertEquals(partition.getIFinal(), balanced.getIFinal());
+		}
+	}
 }
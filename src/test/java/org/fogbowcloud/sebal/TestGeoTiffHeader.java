@@ -0,0 +1,169 @@
+package org.fogbowcloud.sebal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestGeoTiffHeader {
+
+	private static final int PIXEL_IS_AREA = 1;
+	private static final int PIXEL_IS_POINT = 2;
+
+	private File tiffFile;
+
+	@Before
+	public void setUp() throws IOException {
+		tiffFile = File.createTempFile("sebal-header", ".TIF");
+	}
+
+	@After
+	public void tearDown() {
+		tiffFile.delete();
+	}
+
+	@Test
+	public void testReadsPixelIsAreaHeader() throws IOException {
+		// set up
+		writeTiff(ByteOrder.LITTLE_ENDIAN, PIXEL_IS_AREA);
+
+		// exercise
+		GeoTiffHeader header = GeoTiffHeader.read(tiffFile);
+
+		// expect
+		Assert.assertEquals(7621, header.getWidth());
+		Assert.assertEquals(6961, header.getHeight());
+		Assert.assertEquals(159285, header.getModelX(0), 0);
+		Assert.assertEquals(159585, header.getModelX(10), 0);
+		Assert.assertEquals(-449985, header.getModelY(0), 0);
+		Assert.assertEquals(-450285, header.getModelY(10), 0);
+	}
+
+	@Test
+	public void testReadsPixelIsPointHeader() throws IOException {
+		// set up
+		writeTiff(ByteOrder.BIG_ENDIAN, PIXEL_IS_POINT);
+
+		// exercise
+		GeoTiffHeader header = GeoTiffHeader.read(tiffFile);
+
+		// expect
+		Assert.assertEquals(7621, header.getWidth());
+		Assert.assertEquals(159270, header.getModelX(0), 0);
+		Assert.assertEquals(-449970, header.getModelY(0), 0);
+	}
+
+	@Test(expected = IOException.class)
+	public void testRejectsFilesThatAreNotTiff() throws IOException {
+		// set up
+		FileUtils.writeStringToFile(tiffFile, "GROUP = L1_METADATA_FILE");
+
+		// exercise
+		GeoTiffHeader.read(tiffFile);
+	}
+
+	@Test
+	public void testCountsValuePerColumn() throws IOException {
+		// set up
+		writeRaster(ByteOrder.LITTLE_ENDIAN, new short[] { 672, 672, 1, 672, 2720, 672, 672, 0,
+				672, 672, 1, 1 });
+
+		// exercise
+		long[] counts = GeoTiffHeader.read(tiffFile).countPerColumn(tiffFile, 672);
+
+		// expect
+		Assert.assertArrayEquals(new long[] { 2, 3, 1, 1 }, counts);
+	}
+
+	@Test(expected = IOException.class)
+	public void testRejectsCountingWithoutStrips() throws IOException {
+		// set up
+		writeTiff(ByteOrder.LITTLE_ENDIAN, PIXEL_IS_AREA);
+
+		// exercise
+		GeoTiffHeader.read(tiffFile).countPerColumn(tiffFile, 672);
+	}
+
+	/**
+	 * Writes a 4 x 3, 16 bit raster in strips of 2 rows.
+	 */
+	private void writeRaster(ByteOrder order, short[] samples) throws IOException {
+		int entries = 8;
+		int directoryOffset = 8;
+		int dataOffset = directoryOffset + 2 + entries * 12 + 4;
+		int rasterOffset = dataOffset + 3 * 8 + 6 * 8 + 2 * 4;
+		ByteBuffer tiff = ByteBuffer.allocate(rasterOffset + samples.length * 2).order(order);
+
+		tiff.put((byte) 'I').put((byte) 'I');
+		tiff.putShort((short) 42);
+		tiff.putInt(directoryOffset);
+
+		tiff.putShort((short) entries);
+		putEntry(tiff, 256, 4, 1, 4);
+		putEntry(tiff, 257, 4, 1, 3);
+		putEntry(tiff, 258, 3, 1, 16);
+		putEntry(tiff, 259, 3, 1, 1);
+		putEntry(tiff, 273, 4, 2, dataOffset + 9 * 8);
+		putEntry(tiff, 278, 4, 1, 2);
+		putEntry(tiff, 33550, 12, 3, dataOffset);
+		putEntry(tiff, 33922, 12, 6, dataOffset + 3 * 8);
+		tiff.putInt(0);
+
+		tiff.putDouble(30).putDouble(30).putDouble(0);
+		tiff.putDouble(0).putDouble(0).putDouble(0);
+		tiff.putDouble(159285).putDouble(-449985).putDouble(0);
+		tiff.putInt(rasterOffset).putInt(rasterOffset + 2 * 4 * 2);
+		for (short sample : samples) {
+			tiff.putShort(sample);
+		}
+
+		FileUtils.writeByteArrayToFile(tiffFile, tiff.array());
+	}
+
+	/**
+	 * Writes the header and first image directory of a 30 m scene whose tie
+	 * point is (159285, -449985), with no raster data.
+	 */
+	private void writeTiff(ByteOrder order, int rasterType) throws IOException {
+		int entries = 5;
+		int directoryOffset = 8;
+		int dataOffset = directoryOffset + 2 + entries * 12 + 4;
+		ByteBuffer tiff = ByteBuffer.allocate(dataOffset + 3 * 8 + 6 * 8 + 8 * 2).order(order);
+
+		tiff.put(order == ByteOrder.LITTLE_ENDIAN ? (byte) 'I' : (byte) 'M');
+		tiff.put(order == ByteOrder.LITTLE_ENDIAN ? (byte) 'I' : (byte) 'M');
+		tiff.putShort((short) 42);
+		tiff.putInt(directoryOffset);
+
+		tiff.putShort((short) entries);
+		putEntry(tiff, 256, 3, 1, 0);
+		tiff.putShort(tiff.position() - 4, (short) 7621);
+		putEntry(tiff, 257, 4, 1, 6961);
+		putEntry(tiff, 33550, 12, 3, dataOffset);
+		putEntry(tiff, 33922, 12, 6, dataOffset + 3 * 8);
+		putEntry(tiff, 34735, 3, 8, dataOffset + 9 * 8);
+		tiff.putInt(0);
+
+		tiff.putDouble(30).putDouble(30).putDouble(0);
+		tiff.putDouble(0).putDouble(0).putDouble(0);
+		tiff.putDouble(159285).putDouble(-449985).putDouble(0);
+		tiff.putShort((short) 1).putShort((short) 1).putShort((short) 0).putShort((short) 1);
+		tiff.putShort((short) 1025).putShort((short) 0).putShort((short) 1)
+				.putShort((short) rasterType);
+
+		FileUtils.writeByteArrayToFile(tiffFile, tiff.array());
+	}
+
+	private static void putEntry(ByteBuffer tiff, int tag, int type, int count, int value) {
+		tiff.putShort((short) tag);
+		tiff.putShort((short) type);
+		tiff.putInt(count);
+		tiff.putInt(value);
+	}
+}
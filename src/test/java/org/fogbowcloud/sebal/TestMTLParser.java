@@ -0,0 +1,194 @@
+package org.fogbowcloud.sebal;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.fogbowcloud.sebal.SceneMetadata.Corner;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestMTLParser {
+
+	@Test
+	public void testParsesCurrentFormat() {
+		// exercise
+		SceneMetadata metadata = MTLParser.parse(createMTL("LT52150652002026CUB00", 23));
+
+		// expect
+		Assert.assertEquals("LANDSAT_5", metadata.getSpacecraftId());
+		Assert.assertEquals("TM", metadata.getSensorId());
+		Assert.assertEquals(215, metadata.getWrsPath());
+		Assert.assertEquals(65, metadata.getWrsRow());
+		Assert.assertEquals(23, metadata.getUtmZone());
+		Assert.assertEquals("2002-01-26", metadata.getDateAcquired());
+		Assert.assertEquals(1012049230000L, metadata.getAcquisitionTime().getTime());
+		Assert.assertEquals(52.65, metadata.getSunElevation(), 0);
+		Assert.assertEquals(112.82, metadata.getSunAzimuth(), 0);
+		Assert.assertEquals(-4.48, metadata.getCornerLatitude(Corner.UL), 0);
+		Assert.assertEquals(-43.51, metadata.getCornerLongitude(Corner.LR), 0);
+		Assert.assertEquals(159300, metadata.getCornerEasting(Corner.UL), 0);
+		Assert.assertEquals(-450000, metadata.getCornerNorthing(Corner.UL), 0);
+		Assert.assertEquals("LT52150652002026CUB00_B1.TIF", metadata.getBandFileName("1"));
+		Assert.assertEquals(7, metadata.getBandFileNames().size());
+		Assert.assertEquals(0.765827, metadata.getRadianceMultiplier("1"), 0);
+		Assert.assertEquals(-2.28583, metadata.getRadianceAddition("1"), 0);
+		Assert.assertEquals(0.0012, metadata.getReflectanceMultiplier("3"), 0);
+		Assert.assertEquals(-0.0040, metadata.getReflectanceAddition("3"), 0);
+		Assert.assertEquals(607.76, metadata.getK1Constant("6"), 0);
+		Assert.assertEquals(1260.56, metadata.getK2Constant("6"), 0);
+		Assert.assertEquals("L1T", metadata.getValue("DATA_TYPE"));
+		Assert.assertNull(metadata.getValue("GROUP"));
+	}
+
+	@Test
+	public void testParsesOlderFormat() {
+		// set up
+		String mtl = "GROUP = L1_METADATA_FILE\r\n"
+				+ "  GROUP = PRODUCT_METADATA\r\n"
+				+ "    SPACECRAFT_ID = \"Landsat7\"\r\n"
+				+ "    WRS_PATH = 215\r\n"
+				+ "    STARTING_ROW = 65\r\n"
+				+ "    ACQUISITION_DATE = 2002-01-26\r\n"
+				+ "    SCENE_CENTER_SCAN_TIME = 12:47:10.1234560Z\r\n"
+				+ "    PRODUCT_UL_CORNER_MAPX = 159300.000\r\n"
+				+ "    PRODUCT_UL_CORNER_MAPY = -450000.000\r\n"
+				+ "    BAND1_FILE_NAME = \"L71215065_06520020126_B10.TIF\"\r\n"
+				+ "    BAND61_FILE_NAME = \"L71215065_06520020126_B61.TIF\"\r\n"
+				+ "  END_GROUP = PRODUCT_METADATA\r\n"
+				+ "  GROUP = PROJECTION_PARAMETERS\r\n"
+				+ "    ZONE_NUMBER = 23\r\n"
+				+ "  END_GROUP = PROJECTION_PARAMETERS\r\n"
+				+ "END_GROUP = L1_METADATA_FILE\r\n"
+				+ "END\r\n";
+
+		// exercise
+		SceneMetadata metadata = MTLParser.parse(mtl);
+
+		// expect
+		Assert.assertEquals("Landsat7", metadata.getSpacecraftId());
+		Assert.assertEquals(65, metadata.getWrsRow());
+		Assert.assertEquals(23, metadata.getUtmZone());
+		Assert.assertEquals(1012049230000L, metadata.getAcquisitionTime().getTime());
+		Assert.assertEquals(159300, metadata.getCornerEasting(Corner.UL), 0);
+		Assert.assertEquals("L71215065_06520020126_B10.TIF", metadata.getBandFileName("1"));
+		Assert.assertEquals("L71215065_06520020126_B61.TIF", metadata.getBandFileName("61"));
+	}
+
+	@Test
+	public void testMissingValues() {
+		// exercise
+		SceneMetadata metadata = MTLParser.parse("GROUP = L1_METADATA_FILE\nEND\n");
+
+		// expect
+		Assert.assertNull(metadata.getSensorId());
+		Assert.assertEquals(-1, metadata.getUtmZone());
+		Assert.assertNull(metadata.getAcquisitionTime());
+		Assert.assertTrue(Double.isNaN(metadata.getSunElevation()));
+		Assert.assertTrue(Double.isNaN(metadata.getCornerEasting(Corner.UR)));
+		Assert.assertTrue(Double.isNaN(metadata.getK1Constant("10")));
+		Assert.assertNull(metadata.getBandFileName("1"));
+	}
+
+	@Test
+	public void testMalformedNumbersAreMissing() {
+		// set up
+		String mtl = createMTL("LT52150652002026CUB00", 23).replace("WRS_PATH = 215",
+				"WRS_PATH = N/A").replace("SUN_ELEVATION = 52.65", "SUN_ELEVATION = ").replace(
+				"K1_CONSTANT_BAND_6 = 607.76", "K1_CONSTANT_BAND_6 = 607,76");
+
+		// exercise
+		SceneMetadata metadata = MTLParser.parse(mtl);
+
+		// expect
+		Assert.assertEquals(-1, metadata.getWrsPath());
+		Assert.assertTrue(Double.isNaN(metadata.getSunElevation()));
+		Assert.assertTrue(Double.isNaN(metadata.getK1Constant("6")));
+		Assert.assertEquals(23, metadata.getUtmZone());
+		Assert.assertEquals(112.82, metadata.getSunAzimuth(), 0);
+	}
+
+	@Test
+	public void testParsesFile() throws Exception {
+		// set up
+		File mtlFile = File.createTempFile("sebal-scene", "_MTL.txt");
+		FileUtils.writeStringToFile(mtlFile, createMTL("LT52150652002026CUB00", 23));
+
+		try {
+			// exercise
+			SceneMetadata metadata = MTLParser.parse(mtlFile);
+
+			// expect
+			Assert.assertEquals(23, metadata.getUtmZone());
+			Assert.assertEquals(1012049230000L,
+					SEBALHelper.getAcquisitionDate(mtlFile.getPath()).getTime());
+		} finally {
+			mtlFile.delete();
+		}
+	}
+
+	/**
+	 * @return an MTL in the current format, with the groups and values of a
+	 *         Landsat 5 TM scene
+	 */
+	protected static String createMTL(String sceneId, int zone) {
+		StringBuilder mtl = new StringBuilder();
+		mtl.append("GROUP = L1_METADATA_FILE\n");
+		mtl.append("  GROUP = METADATA_FILE_INFO\n");
+		mtl.append("    ORIGIN = \"Image courtesy of the U.S. Geological Survey\"\n");
+		mtl.append("    LANDSAT_SCENE_ID = \"").append(sceneId).append("\"\n");
+		mtl.append("  END_GROUP = METADATA_FILE_INFO\n");
+		mtl.append("  GROUP = PRODUCT_METADATA\n");
+		mtl.append("    DATA_TYPE = \"L1T\"\n");
+		mtl.append("    SPACECRAFT_ID = \"LANDSAT_5\"\n");
+		mtl.append("    SENSOR_ID = \"TM\"\n");
+		mtl.append("    WRS_PATH = 215\n");
+		mtl.append("    WRS_ROW = 65\n");
+		mtl.append("    DATE_ACQUIRED = 2002-01-26\n");
+		mtl.append("    SCENE_CENTER_TIME = \"12:47:10.1234560Z\"\n");
+		String[][] corners = { { "UL", "-4.48", "-45.54", "159300.000", "-450000.000" },
+				{ "UR", "-4.47", "-43.48", "387900.000", "-450000.000" },
+				{ "LL", "-6.45", "-45.56", "159300.000", "-658800.000" },
+				{ "LR", "-6.44", "-43.51", "387900.000", "-658800.000" } };
+		for (String[] corner : corners) {
+			mtl.append("    CORNER_").append(corner[0]).append("_LAT_PRODUCT = ").append(corner[1]).append('\n');
+			mtl.append("    CORNER_").append(corner[0]).append("_LON_PRODUCT = ").append(corner[2]).append('\n');
+		}
+		for (String[] corner : corners) {
+			mtl.append("    CORNER_").append(corner[0]).append("_PROJECTION_X_PRODUCT = ").append(corner[3]).append('\n');
+			mtl.append("    CORNER_").append(corner[0]).append("_PROJECTION_Y_PRODUCT = ").append(corner[4]).append('\n');
+		}
+		for (int band = 1; band <= 7; band++) {
+			mtl.append("    FILE_NAME_BAND_").append(band).append(" = \"").append(sceneId)
+					.append("_B").append(band).append(".TIF\"\n");
+		}
+		mtl.append("  END_GROUP = PRODUCT_METADATA\n");
+		mtl.append("  GROUP = IMAGE_ATTRIBUTES\n");
+		mtl.append("    CLOUD_COVER = 12.00\n");
+		mtl.append("    SUN_AZIMUTH = 112.82\n");
+		mtl.append("    SUN_ELEVATION = 52.65\n");
+		mtl.append("  END_GROUP = IMAGE_ATTRIBUTES\n");
+		mtl.append("  GROUP = RADIOMETRIC_RESCALING\n");
+		for (int band = 1; band <= 7; band++) {
+			mtl.append("    RADIANCE_MULT_BAND_").append(band).append(" = ").append(band == 1 ? "0.765827" : "1.2").append('\n');
+			mtl.append("    RADIANCE_ADD_BAND_").append(band).append(" = ").append(band == 1 ? "-2.28583" : "-1.5").append('\n');
+		}
+		for (int band = 1; band <= 7; band++) {
+			if (band != 6) {
+				mtl.append("    REFLECTANCE_MULT_BAND_").append(band).append(" = 0.0012\n");
+				mtl.append("    REFLECTANCE_ADD_BAND_").append(band).append(" = -0.0040\n");
+			}
+		}
+		mtl.append("  END_GROUP = RADIOMETRIC_RESCALING\n");
+		mtl.append("  GROUP = PROJECTION_PARAMETERS\n");
+		mtl.append("    MAP_PROJECTION = \"UTM\"\n");
+		mtl.append("    UTM_ZONE = ").append(zone).append('\n');
+		mtl.append("  END_GROUP = PROJECTION_PARAMETERS\n");
+		mtl.append("  GROUP = TIRS_THERMAL_CONSTANTS\n");
+		mtl.append("    K1_CONSTANT_BAND_6 = 607.76\n");
+		mtl.append("    K2_CONSTANT_BAND_6 = 1260.56\n");
+		mtl.append("  END_GROUP = TIRS_THERMAL_CONSTANTS\n");
+		mtl.append("END_GROUP = L1_METADATA_FILE\n");
+		mtl.append("END\n");
+		return mtl.toString();
+	}
+}
@@ -0,0 +1,157 @@
+package org.fogbowcloud.sebal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPreProcessDaemon {
+
+	private static final Logger LOGGER = Logger.getLogger(TestPreProcessDaemon.class);
+
+	private static final long TIMEOUT_MILLIS = 10000;
+
+	private File spoolDir;
+
+	@Before
+	public void setUp() throws IOException {
+		spoolDir = File.createTempFile("sebal-spool", "");
+		spoolDir.delete();
+		spoolDir.mkdirs();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(spoolDir);
+	}
+
+	@Test
+	public void testRunsJobsConcurrentlyUpToTheFreeSlots() throws Exception {
+		// set up
+		writeJob("scene-a", PreProcessMain.NUMBER_OF_ARGUMENTS);
+		writeJob("scene-b", PreProcessMain.NUMBER_OF_ARGUMENTS);
+		writeJob("scene-c", PreProcessMain.NUMBER_OF_ARGUMENTS);
+
+		final CountDownLatch running = new CountDownLatch(2);
+		final CountDownLatch release = new CountDownLatch(1);
+		PreProcessDaemon daemon = new PreProcessDaemon(spoolDir, 2, 0) {
+			@Override
+			protected void runJob(String[] args) throws Exception {
+				running.countDown();
+				release.await();
+			}
+		};
+
+		// exercise
+		List<String> startedJobs = daemon.pollSpool();
+
+		// expect
+		Assert.assertEquals(Arrays.asList("scene-a", "scene-b"), startedJobs);
+		Assert.assertTrue(running.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+		Assert.assertTrue(new File(spoolDir, "scene-a.running").exists());
+		Assert.assertTrue(new File(spoolDir, "scene-c.job").exists());
+		Assert.assertTrue(daemon.pollSpool().isEmpty());
+
+		// exercise
+		release.countDown();
+		waitFor(new File(spoolDir, "scene-b.done"));
+		// the slot of a job is freed right after it is marked as done
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (daemon.pollSpool().isEmpty() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		waitFor(new File(spoolDir, "scene-a.done"));
+		waitFor(new File(spoolDir, "scene-c.done"));
+
+		// expect
+		Assert.assertFalse(new File(spoolDir, "scene-c.job").exists());
+	}
+
+	@Test
+	public void testWritesJobLogAndExitStatus() throws Exception {
+		// set up
+		writeJob("good", PreProcessMain.NUMBER_OF_ARGUMENTS);
+		writeJob("short", PreProcessMain.NUMBER_OF_ARGUMENTS - 1);
+
+		PreProcessDaemon daemon = new PreProcessDaemon(spoolDir, 2, 0) {
+			@Override
+			protected void runJob(String[] args) throws Exception {
+				LOGGER.info("Preprocessing image [" + args[0] + "]");
+			}
+		};
+
+		// exercise
+		daemon.pollSpool();
+		waitFor(new File(spoolDir, "good.done"));
+		waitFor(new File(spoolDir, "short.done"));
+
+		// expect
+		Assert.assertEquals("0", readFile("good.exit"));
+		Assert.assertEquals("1", readFile("short.exit"));
+		Assert.assertTrue(readFile("good.log").contains("Preprocessing image [argument-0]"));
+		Assert.assertFalse(readFile("short.log").contains("Preprocessing image"));
+		Assert.assertTrue(readFile("short.log").contains("arguments instead of"));
+	}
+
+	@Test
+	public void testJobLogKeepsEventsOfThreadsStartedByTheJob() throws Exception {
+		// set up
+		writeJob("scene-a", PreProcessMain.NUMBER_OF_ARGUMENTS);
+		writeJob("scene-b", PreProcessMain.NUMBER_OF_ARGUMENTS);
+
+		PreProcessDaemon daemon = new PreProcessDaemon(spoolDir, 2, 0) {
+			@Override
+			protected void runJob(String[] args) throws Exception {
+				Thread download = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						LOGGER.error("Download failed for [" + MDC.get(JOB_MDC_KEY) + "]");
+					}
+				});
+				download.start();
+				download.join();
+			}
+		};
+
+		// exercise
+		daemon.pollSpool();
+		waitFor(new File(spoolDir, "scene-a.done"));
+		waitFor(new File(spoolDir, "scene-b.done"));
+
+		// expect
+		Assert.assertTrue(readFile("scene-a.log").contains("Download failed for [scene-a]"));
+		Assert.assertFalse(readFile("scene-a.log").contains("scene-b]"));
+		Assert.assertTrue(readFile("scene-b.log").contains("Download failed for [scene-b]"));
+	}
+
+	private void writeJob(String name, int numberOfArguments) throws IOException {
+		StringBuilder job = new StringBuilder();
+		for (int i = 0; i < numberOfArguments; i++) {
+			job.append("argument-").append(i).append('\n');
+		}
+		FileUtils.writeStringToFile(new File(spoolDir, name + PreProcessDaemon.JOB_SUFFIX),
+				job.toString());
+	}
+
+	private String readFile(String name) throws IOException {
+		return FileUtils.readFileToString(new File(spoolDir, name)).trim();
+	}
+
+	private static void waitFor(File file) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (!file.exists() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		Assert.assertTrue(file.exists());
+	}
+}
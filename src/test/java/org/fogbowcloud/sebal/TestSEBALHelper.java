@@ -0,0 +1,68 @@
+package org.fogbowcloud.sebal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fogbowcloud.sebal.model.image.BoundingBox;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestSEBALHelper {
+
+	@Test
+	public void testBatchConversionMatchesSingleConversions() throws Exception {
+		// set up
+		double[] coordinates = { -5.035041, -42.768209, -7.2, -44.9, 0, -45 };
+
+		// exercise
+		double[] projected = SEBALHelper.convertLatLonToUtm(coordinates, 23, 0);
+
+		// expect
+		Assert.assertEquals(coordinates.length, projected.length);
+		for (int i = 0; i < coordinates.length; i += 2) {
+			UTMCoordinate expected = SEBALHelper.convertLatLonToUtm(coordinates[i],
+					coordinates[i + 1], 23);
+			Assert.assertEquals(expected.getEasting(), projected[i], 0);
+			Assert.assertEquals(expected.getNorthing(), projected[i + 1], 0);
+		}
+	}
+
+	@Test
+	public void testBatchConversionPrecision() throws Exception {
+		// set up
+		double[] coordinates = { -5.035041, -42.768209 };
+
+		// exercise
+		double[] unrounded = SEBALHelper.convertLatLonToUtm(coordinates, 23, -1);
+		double[] centimeters = SEBALHelper.convertLatLonToUtm(coordinates, 23, 2);
+
+		// expect
+		Assert.assertEquals(unrounded[0], centimeters[0], 0.005);
+		Assert.assertEquals(unrounded[1], centimeters[1], 0.005);
+		Assert.assertEquals(Math.round(unrounded[0] * 100) / 100.0, centimeters[0], 0);
+	}
+
+	@Test
+	public void testProductGeometryFromParsedMTL() throws Exception {
+		// set up
+		SceneMetadata metadata = MTLParser.parse(TestMTLParser.createMTL("LT52150652002026CUB00",
+				23));
+		List<BoundingBoxVertice> vertices = new ArrayList<BoundingBoxVertice>();
+		vertices.add(new BoundingBoxVertice(-4.6, -45.3));
+		vertices.add(new BoundingBoxVertice(-4.6, -44.9));
+		vertices.add(new BoundingBoxVertice(-5.0, -44.9));
+		vertices.add(new BoundingBoxVertice(-5.0, -45.3));
+
+		// exercise
+		BoundingBox boundingBox = SEBALHelper.buildBoundingBox(vertices, null, metadata);
+		String sceneCenterTime = SEBALHelper.getSceneCenterTime(null, metadata);
+
+		// expect, without touching the product
+		BoundingBox expected = SEBALHelper.buildBoundingBox(vertices, 23, 159300, -450000);
+		Assert.assertEquals(expected.getX(), boundingBox.getX());
+		Assert.assertEquals(expected.getY(), boundingBox.getY());
+		Assert.assertEquals(expected.getW(), boundingBox.getW());
+		Assert.assertEquals(expected.getH(), boundingBox.getH());
+		Assert.assertEquals("1247", sceneCenterTime);
+	}
+}
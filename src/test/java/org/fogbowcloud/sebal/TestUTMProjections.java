@@ -0,0 +1,32 @@
+package org.fogbowcloud.sebal;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestUTMProjections {
+
+	@Test
+	public void testCentralMeridian() {
+		Assert.assertEquals(-177, UTMProjections.centralMeridian(1));
+		Assert.assertEquals(-45, UTMProjections.centralMeridian(23));
+		Assert.assertEquals(-39, UTMProjections.centralMeridian(24));
+		Assert.assertEquals(177, UTMProjections.centralMeridian(60));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCentralMeridianOfInvalidZone() {
+		UTMProjections.centralMeridian(61);
+	}
+
+	@Test
+	public void testTransformIsBuiltOncePerZone() throws Exception {
+		// exercise
+		UTMCoordinate center = UTMProjections.toUTM(0, -45, 23);
+
+		// expect
+		Assert.assertSame(UTMProjections.getTransform(23), UTMProjections.getTransform(23));
+		Assert.assertNotSame(UTMProjections.getTransform(23), UTMProjections.getTransform(24));
+		Assert.assertEquals(500000, center.getEasting());
+		Assert.assertEquals(0, center.getNorthing());
+	}
+}
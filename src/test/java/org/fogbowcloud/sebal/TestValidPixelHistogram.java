@@ -0,0 +1,112 @@
+package org.fogbowcloud.sebal;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestValidPixelHistogram {
+
+	private File maskFile;
+	private File cacheFile;
+
+	@Before
+	public void setUp() throws IOException {
+		maskFile = File.createTempFile("sebal-fmask", ".TIF");
+		FileUtils.writeStringToFile(maskFile, "mask");
+		cacheFile = ValidPixelHistogram.getCacheFile("", maskFile);
+	}
+
+	@After
+	public void tearDown() {
+		maskFile.delete();
+		cacheFile.delete();
+	}
+
+	@Test
+	public void testReadsCachedHistogram() throws IOException {
+		// set up
+		new ValidPixelHistogram(new long[] { 3, 0, 7 }).write(cacheFile, maskFile,
+				ValidPixelHistogram.CLEAR_VALUE);
+
+		// exercise
+		ValidPixelHistogram histogram = ValidPixelHistogram.read(maskFile,
+				ValidPixelHistogram.CLEAR_VALUE, cacheFile);
+
+		// expect
+		Assert.assertArrayEquals(new long[] { 3, 0, 7 }, histogram.getColumnCounts());
+	}
+
+	@Test
+	public void testIgnoresHistogramOfAnotherMaskOrValue() throws IOException {
+		// set up
+		new ValidPixelHistogram(new long[] { 3, 0, 7 }).write(cacheFile, maskFile,
+				ValidPixelHistogram.CLEAR_VALUE);
+
+		// exercise and expect
+		Assert.assertNull(ValidPixelHistogram.load(cacheFile, maskFile,
+				ValidPixelHistogram.LANDSAT_8_CLEAR_VALUE));
+
+		maskFile.setLastModified(maskFile.lastModified() - 60000);
+		Assert.assertNull(ValidPixelHistogram.load(cacheFile, maskFile,
+				ValidPixelHistogram.CLEAR_VALUE));
+	}
+
+	@Test
+	public void testConcurrentWritersLeaveOneHistogram() throws Exception {
+		// set up
+		final ValidPixelHistogram histogram = new ValidPixelHistogram(new long[] { 3, 0, 7 });
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+		Thread[] writers = new Thread[8];
+		for (int i = 0; i < writers.length; i++) {
+			writers[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int j = 0; j < 20; j++) {
+							histogram.write(cacheFile, maskFile, ValidPixelHistogram.CLEAR_VALUE);
+						}
+					} catch (Throwable e) {
+						errors.add(e);
+					}
+				}
+			};
+		}
+
+		// exercise
+		for (Thread writer : writers) {
+			writer.start();
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+
+		// expect
+		Assert.assertTrue(errors.toString(), errors.isEmpty());
+		Assert.assertArrayEquals(new long[] { 3, 0, 7 }, ValidPixelHistogram.load(cacheFile,
+				maskFile, ValidPixelHistogram.CLEAR_VALUE).getColumnCounts());
+		Assert.assertEquals(0, cacheFile.getAbsoluteFile().getParentFile().listFiles(
+				new FilenameFilter() {
+					@Override
+					public boolean accept(File dir, String name) {
+						return name.startsWith(cacheFile.getName()) && name.endsWith(".part");
+					}
+				}).length);
+	}
+
+	@Test
+	public void testCacheFileLocation() {
+		Assert.assertEquals(new File(maskFile.getPath() + ".histogram"),
+				ValidPixelHistogram.getCacheFile(null, maskFile));
+		Assert.assertEquals(new File("/tmp/histograms", maskFile.getName() + ".histogram"),
+				ValidPixelHistogram.getCacheFile("/tmp/histograms", maskFile));
+	}
+}
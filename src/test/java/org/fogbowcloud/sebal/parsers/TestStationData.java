@@ -0,0 +1,68 @@
+package org.fogbowcloud.sebal.parsers;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.fogbowcloud.sebal.util.SEBALAppConstants;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class TestStationData {
+
+	private static final Double DISTANCE = 5.9728933028073445;
+
+	@Test
+	public void testWriteToMatchesTrimmedLines() throws IOException {
+		// set up
+		HourlyRecords records = new HourlyRecords(1);
+		records.add(newRecord(" 825790", "1200", "1.5"), 1.5, 26.8);
+		records.add(newRecord("825790", "1300", ""), 1.5, 28.0);
+		records.add(newRecord("825790", "1400", "2.1"), 2.1, 29.0);
+		StationData stationData = new StationData(records, DISTANCE);
+
+		StringBuilder lines = new StringBuilder();
+		for (int i = 0; i < records.size(); i++) {
+			records.appendLine(lines, i, DISTANCE);
+		}
+
+		// exercise
+		StringWriter writer = new StringWriter();
+		stationData.writeTo(writer);
+
+		// expect
+		assertEquals(lines.toString().trim(), writer.toString());
+		assertEquals(lines.toString().trim(), stationData.toCSV());
+		assertEquals("825790;20020126;1200;-5.05;-42.82;1.5;26.8;24.6;NA;NA;NA;NA;NA;"
+				+ DISTANCE + ";" + System.lineSeparator(),
+				writer.toString().substring(0, writer.toString().indexOf(System.lineSeparator())
+						+ System.lineSeparator().length()));
+	}
+
+	@Test
+	public void testWriteToWithoutRecords() throws IOException {
+		// set up
+		StationData stationData = new StationData(new HourlyRecords(0), DISTANCE);
+
+		// exercise
+		StringWriter writer = new StringWriter();
+		stationData.writeTo(writer);
+
+		// expect
+		assertEquals("", writer.toString());
+	}
+
+	private static JSONObject newRecord(String stationId, String time, String windSpeed) {
+		JSONObject record = new JSONObject();
+		record.put(SEBALAppConstants.JSON_STATION_ID, stationId);
+		record.put(SEBALAppConstants.JSON_STATION_DATE, "20020126");
+		record.put(SEBALAppConstants.JSON_STATION_TIME, time);
+		record.put(SEBALAppConstants.JSON_STATION_LATITUDE, "-5.05");
+		record.put(SEBALAppConstants.JSON_STATION_LONGITUDE, "-42.82");
+		record.put(SEBALAppConstants.JSON_STATION_WIND_SPEED, windSpeed);
+		record.put(SEBALAppConstants.JSON_AIR_TEMPERATURE, "26.8");
+		record.put(SEBALAppConstants.JSON_DEWPOINT_TEMPERATURE, "24.6");
+		return record;
+	}
+}
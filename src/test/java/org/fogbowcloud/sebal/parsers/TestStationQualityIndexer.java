@@ -0,0 +1,77 @@
+package org.fogbowcloud.sebal.parsers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+import org.fogbowcloud.sebal.parsers.plugins.ISDHourlyDataParser;
+import org.fogbowcloud.sebal.parsers.plugins.StationQualityIndex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestStationQualityIndexer {
+
+	private static final File STATION_FILE = new File("src/test/resource/827910-99999-2002.gz");
+
+	private File indexDir;
+
+	@Before
+	public void setUp() {
+		indexDir = new File(System.getProperty("java.io.tmpdir"),
+				"sebal-quality-index-" + System.nanoTime());
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(indexDir);
+	}
+
+	@Test
+	public void testIndexedDaysValidateAsReadDays() throws IOException {
+		// set up
+		WeatherStation weatherStation = new WeatherStation(new Properties(), null);
+		StationQualityIndexer indexer = new StationQualityIndexer();
+
+		// exercise
+		indexer.add(STATION_FILE);
+		indexer.writeTo(new StationQualityIndex(indexDir));
+
+		// expect
+		StationQualityIndex index = new StationQualityIndex(indexDir);
+		SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd");
+		Calendar day = Calendar.getInstance();
+		day.clear();
+		day.set(2002, Calendar.JANUARY, 1);
+		int validDays = 0;
+		while (day.get(Calendar.YEAR) == 2002) {
+			String date = format.format(day.getTime());
+			long summary = index.getSummary("827910", date);
+			assertTrue(date, summary >= 0);
+
+			for (int hour = 0; hour < 24; hour++) {
+				List<String> mainHours = weatherStation.getMainHours(String.format("%02d00", hour));
+				HourlyRecords records = weatherStation.correctStationData(
+						ISDHourlyDataParser.readHourlyData(STATION_FILE, date), mainHours);
+
+				boolean expected = weatherStation.validateStationRecords(records, mainHours);
+				assertEquals(date + " " + hour, expected,
+						WeatherStation.isValidStationDay(summary, mainHours));
+				if (expected) {
+					validDays++;
+				}
+			}
+			day.add(Calendar.DAY_OF_MONTH, 1);
+		}
+		assertTrue(validDays > 0);
+		assertEquals(-1, index.getSummary("827910", "20030126"));
+		assertEquals(-1, index.getSummary("825790", "20020126"));
+	}
+}
@@ -7,16 +7,22 @@ import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import org.fogbowcloud.sebal.parsers.plugins.StationOperatorConstants;
 import org.fogbowcloud.sebal.parsers.plugins.ftp.FTPStationOperator;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import com.vividsolutions.jts.util.Assert;
 
@@ -59,8 +65,14 @@ public class TestWeatherStation {
 		JSONArray stationRecords = new JSONArray(
 				"[{\"VelocidadeVento\":\"2.6\",\"TempBulboUmido\":\"26.0\",\"TempBulboSeco\":\"28.1\",\"Hora\":\"0000\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"},{\"VelocidadeVento\":\"2.6\",\"TempBulboUmido\":\"25.0\",\"TempBulboSeco\":\"27.0\",\"Hora\":\"0100\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"},{\"VelocidadeVento\":\"1.0\",\"TempBulboUmido\":\"24.0\",\"TempBulboSeco\":\"26.0\",\"Hora\":\"0200\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"},{\"VelocidadeVento\":\"1.0\",\"TempBulboUmido\":\"24.1\",\"TempBulboSeco\":\"25.5\",\"Hora\":\"0300\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"},{\"VelocidadeVento\":\"1.0\",\"TempBulboUmido\":\"24.0\",\"TempBulboSeco\":\"25.0\",\"Hora\":\"0400\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"},{\"VelocidadeVento\":\"1.5\",\"TempBulboUmido\":\"24.0\",\"TempBulboSeco\":\"25.0\",\"Hora\":\"0500\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"},{\"VelocidadeVento\":\"15.4\",\"TempBulboUmido\":\"23.8\",\"TempBulboSeco\":\"24.5\",\"Hora\":\"0600\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"},{\"VelocidadeVento\":\"999.9\",\"TempBulboUmido\":\"24.0\",\"TempBulboSeco\":\"24.0\",\"Hora\":\"0700\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"},{\"VelocidadeVento\":\"999.9\",\"TempBulboUmido\":\"24.0\",\"TempBulboSeco\":\"24.0\",\"Hora\":\"0800\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"},{\"VelocidadeVento\":\"0.0\",\"TempBulboUmido\":\"23.8\",\"TempBulboSeco\":\"24.0\",\"Hora\":\"0900\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"},{\"VelocidadeVento\":\"1.0\",\"TempBulboUmido\":\"24.0\",\"TempBulboSeco\":\"24.0\",\"Hora\":\"1000\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"},{\"VelocidadeVento\":\"999.9\",\"TempBulboUmido\":\"25.0\",\"TempBulboSeco\":\"25.0\",\"Hora\":\"1100\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"},{\"VelocidadeVento\":\"1.5\",\"TempBulboUmido\":\"24.6\",\"TempBulboSeco\":\"26.8\",\"Hora\":\"1200\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"},{\"VelocidadeVento\":\"1.5\",\"TempBulboUmido\":\"25.0\",\"TempBulboSeco\":\"28.0\",\"Hora\":\"1300\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"},{\"VelocidadeVento\":\"1.5\",\"TempBulboUmido\":\"24.0\",\"TempBulboSeco\":\"29.0\",\"Hora\":\"1400\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"},{\"VelocidadeVento\":\"2.1\",\"TempBulboUmido\":\"24.0\",\"TempBulboSeco\":\"29.9\",\"Hora\":\"1500\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"},{\"VelocidadeVento\":\"1.5\",\"TempBulboUmido\":\"25.0\",\"TempBulboSeco\":\"30.0\",\"Hora\":\"1600\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"},{\"VelocidadeVento\":\"3.1\",\"TempBulboUmido\":\"24.0\",\"TempBulboSeco\":\"31.0\",\"Hora\":\"1700\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"},{\"VelocidadeVento\":\"2.1\",\"TempBulboUmido\":\"23.1\",\"TempBulboSeco\":\"32.5\",\"Hora\":\"1800\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"},{\"VelocidadeVento\":\"3.1\",\"TempBulboUmido\":\"23.0\",\"TempBulboSeco\":\"33.0\",\"Hora\":\"1900\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"},{\"VelocidadeVento\":\"1.5\",\"TempBulboUmido\":\"23.0\",\"TempBulboSeco\":\"33.0\",\"Hora\":\"2000\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"},{\"VelocidadeVento\":\"1.0\",\"TempBulboUmido\":\"22.9\",\"TempBulboSeco\":\"32.3\",\"Hora\":\"2100\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"},{\"VelocidadeVento\":\"2.6\",\"TempBulboUmido\":\"24.0\",\"TempBulboSeco\":\"30.0\",\"Hora\":\"2200\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"},{\"VelocidadeVento\":\"3.6\",\"TempBulboUmido\":\"23.0\",\"TempBulboSeco\":\"27.0\",\"Hora\":\"2300\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"}]");
 
-		Mockito.when(ftp.findNearestStation(Mockito.any(Date.class), Mockito.anyDouble(),
-				Mockito.anyDouble(), Mockito.anyInt())).thenReturn(nearStations);
+		final List<JSONObject> candidates = nearStations;
+		Mockito.when(ftp.nearestStations(Mockito.any(Date.class), Mockito.anyDouble(),
+				Mockito.anyDouble(), Mockito.anyInt())).thenAnswer(new Answer<Iterator<JSONObject>>() {
+					@Override
+					public Iterator<JSONObject> answer(InvocationOnMock invocation) {
+						return candidates.iterator();
+					}
+				});
 
 		Mockito.when(ftp.readStation("825790", "20020126", "20020126")).thenReturn(stationRecords);
 
@@ -208,10 +220,92 @@ public class TestWeatherStation {
 		String actual = this.weatherStation.selectStation(date, nearStations, 0, "1200");
 
 		Assert.equals(expected, actual);
+		Mockito.verify(ftp, Mockito.never()).readStation("825780", "20020126", "20020126");
 
 		assertNull(this.weatherStation.selectStation(date, null, 0, "1200"));
 	}
 
+	@Test
+	public void testSelectStationWithPrefetchKeepsNearestValid() throws Exception {
+		// set up
+		FTPStationOperator ftp = Mockito.mock(FTPStationOperator.class);
+
+		this.properties.setProperty(StationOperatorConstants.STATION_PREFETCH_SIZE, "3");
+		this.weatherStation = new WeatherStation(this.properties, ftp);
+
+		Date date = new SimpleDateFormat("dd-MM-yyyy").parse("26-01-2002");
+
+		List<JSONObject> nearStations = new LinkedList<JSONObject>();
+		nearStations.add(new JSONObject(
+				"{\"distance\":5.9728933028073445,\"lon\":\"-42.82\",\"id\":\"825790\",\"lat\":\"-5.05\"}"));
+		nearStations.add(new JSONObject(
+				"{\"distance\":6.929536290402324,\"lon\":\"-42.82\",\"id\":\"825780\",\"lat\":\"-5.07\"}"));
+
+		final JSONArray stationRecords = new JSONArray(
+				"[{\"VelocidadeVento\":\"2.6\",\"TempBulboUmido\":\"26.0\",\"TempBulboSeco\":\"28.1\",\"Hora\":\"0000\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"},{\"VelocidadeVento\":\"1.5\",\"TempBulboUmido\":\"24.6\",\"TempBulboSeco\":\"26.8\",\"Hora\":\"1200\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"},{\"VelocidadeVento\":\"2.1\",\"TempBulboUmido\":\"23.1\",\"TempBulboSeco\":\"32.5\",\"Hora\":\"1800\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"}]");
+
+		// the nearest read only completes once the next one was started
+		final CountDownLatch secondReadStarted = new CountDownLatch(1);
+		Mockito.when(ftp.readStation("825790", "20020126", "20020126"))
+				.thenAnswer(new Answer<JSONArray>() {
+					@Override
+					public JSONArray answer(InvocationOnMock invocation) throws Throwable {
+						if (!secondReadStarted.await(5, TimeUnit.SECONDS)) {
+							return null;
+						}
+						return stationRecords;
+					}
+				});
+		Mockito.when(ftp.readStation("825780", "20020126", "20020126"))
+				.thenAnswer(new Answer<JSONArray>() {
+					@Override
+					public JSONArray answer(InvocationOnMock invocation) throws Throwable {
+						secondReadStarted.countDown();
+						return stationRecords;
+					}
+				});
+
+		String expected = "825790;20020126;0000;-5.05;-42.82;2.6;28.1;26.0;NA;NA;NA;NA;NA;5.9728933028073445;"
+				+ System.lineSeparator()
+				+ "825790;20020126;1200;-5.05;-42.82;1.5;26.8;24.6;NA;NA;NA;NA;NA;5.9728933028073445;"
+				+ System.lineSeparator()
+				+ "825790;20020126;1800;-5.05;-42.82;2.1;32.5;23.1;NA;NA;NA;NA;NA;5.9728933028073445;";
+
+		// exercise
+		String actual = this.weatherStation.selectStation(date, nearStations, 0, "1200");
+
+		// expect
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testSelectStationSkipsKnownInvalid() throws Exception {
+		// set up
+		FTPStationOperator ftp = Mockito.mock(FTPStationOperator.class);
+
+		this.weatherStation = new WeatherStation(this.properties, ftp);
+
+		Date date = new SimpleDateFormat("dd-MM-yyyy").parse("26-01-2002");
+
+		List<JSONObject> nearStations = new LinkedList<JSONObject>();
+		nearStations.add(new JSONObject(
+				"{\"distance\":5.9728933028073445,\"lon\":\"-42.82\",\"id\":\"825790\",\"lat\":\"-5.05\"}"));
+
+		// no record at the main hours
+		JSONArray stationRecords = new JSONArray(
+				"[{\"VelocidadeVento\":\"2.6\",\"TempBulboUmido\":\"26.0\",\"TempBulboSeco\":\"28.1\",\"Hora\":\"0000\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"},{\"VelocidadeVento\":\"2.1\",\"TempBulboUmido\":\"23.1\",\"TempBulboSeco\":\"32.5\",\"Hora\":\"1800\",\"Data\":\"20020126\",\"Latitude\":\"-5.05\",\"Estacao\":\"825790\",\"Longitude\":\"-42.82\"}]");
+		Mockito.when(ftp.readStation("825790", "20020126", "20020126")).thenReturn(stationRecords);
+
+		// exercise
+		String first = this.weatherStation.selectStation(date, nearStations, 0, "1200");
+		String second = this.weatherStation.selectStation(date, nearStations, 0, "1200");
+
+		// expect
+		assertNull(first);
+		assertNull(second);
+		Mockito.verify(ftp, Mockito.times(1)).readStation("825790", "20020126", "20020126");
+	}
+
 	@Test
 	public void testSelectStationDataInvalid() throws Exception {
 		FTPStationOperator ftp = Mockito.mock(FTPStationOperator.class);
@@ -414,6 +508,43 @@ public class TestWeatherStation {
 		assertEquals(expected.toString(), station.toString());
 	}
 
+	@Test
+	public void testCorrectStationDataMatchesStagedCorrections() {
+		// set up
+		FTPStationOperator ftp = Mockito.mock(FTPStationOperator.class);
+
+		this.weatherStation = new WeatherStation(this.properties, ftp);
+
+		List<String> mainHours = new ArrayList<String>();
+		mainHours.add("1200");
+		mainHours.add("1300");
+
+		// calm wind, cold air, missing dew point and a main hour gust
+		JSONArray station = new JSONArray(
+				"[{\"Data\":\"20170815\",\"Estacao\":\"827980\",\"VelocidadeVento\":\"0.0\",\"TempBulboUmido\":\"21.0\",\"Latitude\":\"-7.148\",\"TempBulboSeco\":\"23.0\",\"Longitude\":\"-34.951\",\"Hora\":\"0000\"},{\"Data\":\"20170815\",\"Estacao\":\"827980\",\"VelocidadeVento\":\"2.0\",\"TempBulboUmido\":\"3.0\",\"Latitude\":\"-7.148\",\"TempBulboSeco\":\"4.0\",\"Longitude\":\"-34.951\",\"Hora\":\"0300\"},{\"Data\":\"20170815\",\"Estacao\":\"827980\",\"VelocidadeVento\":\"2.0\",\"Latitude\":\"-7.148\",\"TempBulboSeco\":\"24.0\",\"Longitude\":\"-34.951\",\"Hora\":\"0600\"},{\"Data\":\"20170815\",\"Estacao\":\"827980\",\"VelocidadeVento\":\"40.0\",\"TempBulboUmido\":\"20.0\",\"Latitude\":\"-7.148\",\"TempBulboSeco\":\"26.0\",\"Longitude\":\"-34.951\",\"Hora\":\"1200\"},{\"Data\":\"20170815\",\"Estacao\":\"827980\",\"VelocidadeVento\":\"5.7\",\"TempBulboUmido\":\"20.0\",\"Latitude\":\"-7.148\",\"TempBulboSeco\":\"26.0\",\"Longitude\":\"-34.951\",\"Hora\":\"1300\"}]");
+
+		JSONArray staged = this.weatherStation.windSpeedCorrection(
+				this.weatherStation.temperatureCorrection(
+						this.weatherStation.removeNonRepresentativeRecords(station)),
+				mainHours);
+
+		// exercise
+		HourlyRecords records = this.weatherStation.correctStationData(station, mainHours);
+
+		// expect
+		assertEquals(2, records.size());
+		assertEquals(staged.length(), records.size());
+		for (int i = 0; i < staged.length(); i++) {
+			assertEquals(staged.optJSONObject(i).optString("Hora"), records.getTime(i));
+			assertEquals(staged.optJSONObject(i).optDouble("VelocidadeVento"),
+					records.getWindSpeed(i), 0.0);
+			assertEquals(staged.optJSONObject(i).optDouble("TempBulboSeco"),
+					records.getAirTemperature(i), 0.0);
+		}
+		assertEquals("0.3", records.toJSONArray().optJSONObject(0).optString("VelocidadeVento"));
+		assertNull(this.weatherStation.correctStationData(null, mainHours));
+	}
+
 	@Test
 	public void testCheckVariablesAndBuildString() {
 		FTPStationOperator ftp = Mockito.mock(FTPStationOperator.class);
@@ -538,4 +669,55 @@ public class TestWeatherStation {
 		assertEquals(actual.toString(), expected.toString());
 	}
 
+	@Test
+	public void testHourMasks() {
+		// set up
+		FTPStationOperator ftp = Mockito.mock(FTPStationOperator.class);
+
+		this.weatherStation = new WeatherStation(this.properties, ftp);
+
+		// exercise and expect
+		assertEquals((1 << 23) | 1, this.weatherStation.getMainHoursMask("2300"));
+		assertEquals(1 << 12, HourlyRecords.hourBit("1200"));
+		assertEquals(0, HourlyRecords.hourBit("1230"));
+		assertEquals(0, HourlyRecords.hourBit("2400"));
+
+		List<String> interval = this.weatherStation.getHoursInterval("0300");
+		assertEquals(13, interval.size());
+		assertEquals("0900", interval.get(0));
+		assertEquals("2100", interval.get(12));
+
+		// main hours 2300 and 0000 take the interval of 2300, 0500 to 1700
+		long hours = (1L << 5) | (1L << 11) | (1L << 23);
+		int mainHoursMask = this.weatherStation.getMainHoursMask("2300");
+		assertTrue(WeatherStation.isValidStationDay(hours << 24 | hours, mainHoursMask));
+		assertEquals(WeatherStation.isValidStationDay(hours << 24 | hours, mainHoursMask),
+				WeatherStation.isValidStationDay(hours << 24 | hours,
+						this.weatherStation.getMainHours("2300")));
+	}
+
+	@Test
+	public void testEveryHourAsMainHourTakesIntervalOfLowestHour() {
+		// set up
+		int allHoursMask = (1 << 24) - 1;
+		long hours = (1L << 0) | (1L << 6) | (1L << 12);
+
+		// exercise and expect, main hour 0000 takes the interval 0600 to 1800
+		assertTrue(WeatherStation.isValidStationDay(hours << 24 | hours, allHoursMask));
+		assertFalse(WeatherStation.isValidStationDay(1L << 24 | 1L, allHoursMask));
+	}
+
+	@Test
+	public void testPrefetchesStationIndexOfTheDateYear() throws Exception {
+		// set up
+		FTPStationOperator ftp = Mockito.mock(FTPStationOperator.class);
+		this.weatherStation = new WeatherStation(this.properties, ftp);
+		Date date = new SimpleDateFormat("dd-MM-yyyy").parse("26-01-2002");
+
+		// exercise
+		this.weatherStation.prefetchStationIndex(date).get(10, TimeUnit.SECONDS);
+
+		// expect
+		Mockito.verify(ftp).getStationIndex("2002");
+	}
 }
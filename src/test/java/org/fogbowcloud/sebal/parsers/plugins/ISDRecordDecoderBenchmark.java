@@ -0,0 +1,78 @@
+package org.fogbowcloud.sebal.parsers.plugins;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.fogbowcloud.sebal.util.SEBALAppConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares decoding the lines of an ISD file through substrings, as
+ * {@link ISDHourlyDataParser#toHourlyRecord(String)} does, with
+ * {@link ISDRecordDecoder}. It is not a test; run it by hand through
+ * {@link #main(String[])} or the JMH launcher, with -p stationFile=[file] to
+ * decode another station file. Scores are per decoded file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ISDRecordDecoderBenchmark {
+
+	@Param("src/test/resource/827910-99999-2002.gz")
+	public String stationFile;
+
+	private byte[][] lines;
+
+	@Setup
+	public void setUp() throws Exception {
+		List<String> stationLines = TestISDRecordDecoder.readLines(new File(stationFile));
+		lines = new byte[stationLines.size()][];
+		for (int i = 0; i < lines.length; i++) {
+			lines[i] = stationLines.get(i).getBytes("ISO-8859-1");
+		}
+	}
+
+	@Benchmark
+	public double decodeStrings() throws Exception {
+		double sum = 0;
+		for (byte[] line : lines) {
+			String data = new String(line, "ISO-8859-1");
+			sum += Double.parseDouble(ISDHourlyDataParser.toHourlyRecord(data).optString(
+					SEBALAppConstants.JSON_AIR_TEMPERATURE));
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double decodeBytes() {
+		ISDRecordDecoder decoder = new ISDRecordDecoder();
+		double sum = 0;
+		for (byte[] line : lines) {
+			if (decoder.decode(line, 0, line.length)) {
+				sum += decoder.getAirTemperature();
+			}
+		}
+		return sum;
+	}
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().include(ISDRecordDecoderBenchmark.class.getSimpleName())
+				.build()).run();
+	}
+}
@@ -0,0 +1,118 @@
+package org.fogbowcloud.sebal.parsers.plugins;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class TestHedgedStationOperator {
+
+	private StationOperator primary;
+	private StationOperator secondary;
+	private HedgedStationOperator hedgedOperator;
+	private CountDownLatch release;
+
+	@Before
+	public void setUp() {
+		primary = Mockito.mock(StationOperator.class);
+		secondary = Mockito.mock(StationOperator.class);
+		release = new CountDownLatch(1);
+
+		Properties properties = new Properties();
+		properties.setProperty(StationOperatorConstants.STATION_HEDGE_INITIAL_DELAY_MILLIS, "50");
+		hedgedOperator = new HedgedStationOperator(primary, secondary, properties);
+	}
+
+	@After
+	public void tearDown() {
+		release.countDown();
+	}
+
+	@Test
+	public void testFastPrimaryIsNotHedged() throws Exception {
+		// set up
+		JSONArray records = new JSONArray("[{\"Estacao\":\"825790\"}]");
+		Mockito.when(primary.readStation("825790", "20020126", "20020126")).thenReturn(records);
+
+		// exercise
+		JSONArray actual = hedgedOperator.readStation("825790", "20020126", "20020126");
+
+		// expect
+		Assert.assertSame(records, actual);
+		Mockito.verify(secondary, Mockito.never()).readStation(Mockito.anyString(),
+				Mockito.anyString(), Mockito.anyString());
+		Assert.assertEquals(1, hedgedOperator.getPrimaryLatencies().getCount());
+	}
+
+	@Test
+	public void testSlowPrimaryIsHedged() throws Exception {
+		// set up
+		JSONArray records = new JSONArray("[{\"Estacao\":\"825790\"}]");
+		Mockito.when(primary.readStation("825790", "20020126", "20020126")).thenAnswer(
+				new Answer<JSONArray>() {
+					@Override
+					public JSONArray answer(InvocationOnMock invocation) throws Throwable {
+						release.await(10, TimeUnit.SECONDS);
+						return new JSONArray();
+					}
+				});
+		Mockito.when(secondary.readStation("825790", "20020126", "20020126")).thenReturn(records);
+
+		// exercise
+		JSONArray actual = hedgedOperator.readStation("825790", "20020126", "20020126");
+
+		// expect
+		Assert.assertSame(records, actual);
+		Assert.assertEquals(1, hedgedOperator.getSecondaryLatencies().getCount());
+		// the cancelled primary read counts as at least the hedge delay
+		Assert.assertEquals(1, hedgedOperator.getPrimaryLatencies().getCount());
+		Assert.assertTrue(hedgedOperator.getPrimaryLatencies().getPercentile(100) >= 50);
+	}
+
+	@Test
+	public void testFailedPrimaryFallsBackToSecondary() throws Exception {
+		// set up
+		JSONArray records = new JSONArray("[{\"Estacao\":\"825790\"}]");
+		Mockito.when(primary.readStation("825790", "20020126", "20020126")).thenReturn(null);
+		Mockito.when(secondary.readStation("825790", "20020126", "20020126")).thenReturn(records);
+		Mockito.when(primary.readStation("825780", "20020126", "20020126")).thenThrow(
+				new IllegalStateException());
+		Mockito.when(secondary.readStation("825780", "20020126", "20020126")).thenReturn(null);
+
+		// exercise and expect
+		Assert.assertSame(records, hedgedOperator.readStation("825790", "20020126", "20020126"));
+		try {
+			hedgedOperator.readStation("825780", "20020126", "20020126");
+			Assert.fail("the primary failure should be thrown");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testLatencyPercentiles() {
+		// set up
+		LatencyHistogram latencies = new LatencyHistogram();
+
+		// exercise
+		for (int millis = 1; millis <= 100; millis++) {
+			latencies.record(millis);
+		}
+
+		// expect
+		Assert.assertEquals(100, latencies.getCount());
+		Assert.assertTrue(latencies.getPercentile(50) >= 50);
+		Assert.assertTrue(latencies.getPercentile(50) <= 60);
+		Assert.assertTrue(latencies.getPercentile(95) >= 95);
+		Assert.assertTrue(latencies.getPercentile(95) <= 114);
+		Assert.assertEquals(0, new LatencyHistogram().getPercentile(95));
+	}
+}
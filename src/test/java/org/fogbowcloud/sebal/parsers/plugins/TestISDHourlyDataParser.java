@@ -0,0 +1,41 @@
+package org.fogbowcloud.sebal.parsers.plugins;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.fogbowcloud.sebal.util.SEBALAppConstants;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestISDHourlyDataParser {
+
+	private static final File STATION_FILE = new File("src/test/resource/827910-99999-2002.gz");
+
+	@Test
+	public void testReadHourlyDataOfOneDay() throws IOException {
+		// exercise
+		JSONArray hourlyData = ISDHourlyDataParser.readHourlyData(STATION_FILE, "20020126");
+
+		// expect
+		Assert.assertEquals(3, hourlyData.length());
+
+		JSONObject record = hourlyData.optJSONObject(1);
+		Assert.assertEquals("827910", record.optString(SEBALAppConstants.JSON_STATION_ID));
+		Assert.assertEquals("20020126", record.optString(SEBALAppConstants.JSON_STATION_DATE));
+		Assert.assertEquals("1200", record.optString(SEBALAppConstants.JSON_STATION_TIME));
+		Assert.assertEquals("-7.01", record.optString(SEBALAppConstants.JSON_STATION_LATITUDE));
+		Assert.assertEquals("-37.26", record.optString(SEBALAppConstants.JSON_STATION_LONGITUDE));
+		Assert.assertEquals("4.6", record.optString(SEBALAppConstants.JSON_STATION_WIND_SPEED));
+		Assert.assertEquals("25.8", record.optString(SEBALAppConstants.JSON_AIR_TEMPERATURE));
+		Assert.assertEquals("20.8", record.optString(SEBALAppConstants.JSON_DEWPOINT_TEMPERATURE));
+	}
+
+	@Test
+	public void testReadHourlyDataOfMissingDay() throws IOException {
+		// exercise and expect
+		Assert.assertEquals(0, ISDHourlyDataParser.readHourlyData(STATION_FILE, "20020101").length());
+		Assert.assertEquals(0, ISDHourlyDataParser.readHourlyData(STATION_FILE, "20030126").length());
+	}
+}
@@ -0,0 +1,77 @@
+package org.fogbowcloud.sebal.parsers.plugins;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestISDRecordDecoder {
+
+	private static final File STATION_FILE = new File("src/test/resource/827910-99999-2002.gz");
+
+	@Test
+	public void testDecodedRecordsMatchStringRecords() throws IOException {
+		// set up
+		List<String> lines = readLines(STATION_FILE);
+		ISDRecordDecoder decoder = new ISDRecordDecoder();
+
+		for (String line : lines) {
+			byte[] bytes = line.getBytes("ISO-8859-1");
+
+			// exercise
+			Assert.assertTrue(line, decoder.decode(bytes, 0, bytes.length));
+
+			// expect
+			String date = line.substring(ISDHourlyDataParser.DATE_BEGIN,
+					ISDHourlyDataParser.DATE_BEGIN + ISDHourlyDataParser.DATE_LENGTH);
+			Assert.assertEquals(Integer.parseInt(date), decoder.getDate());
+			Assert.assertEquals(ISDHourlyDataParser.toHourlyRecord(line).toString(),
+					ISDHourlyDataParser.toHourlyRecord(date, decoder).toString());
+		}
+	}
+
+	@Test
+	public void testRejectsOtherNotations() throws IOException {
+		// set up
+		String line = readLines(STATION_FILE).get(0);
+		ISDRecordDecoder decoder = new ISDRecordDecoder();
+
+		// exercise and expect
+		Assert.assertFalse(decode(decoder, line.substring(0, ISDHourlyDataParser.MIN_RECORD_LENGTH - 1)));
+		Assert.assertFalse(decode(decoder, replace(line, 65, "+012")));
+		Assert.assertFalse(decode(decoder, replace(line, 28, "-0 010")));
+		Assert.assertTrue(decode(decoder, replace(line, 28, "-00000")));
+		Assert.assertEquals("-0.0", String.valueOf(decoder.getLatitude()));
+	}
+
+	private static boolean decode(ISDRecordDecoder decoder, String line) throws IOException {
+		byte[] bytes = ("xx" + line).getBytes("ISO-8859-1");
+		return decoder.decode(bytes, 2, bytes.length - 2);
+	}
+
+	private static String replace(String line, int begin, String value) {
+		return line.substring(0, begin) + value + line.substring(begin + value.length());
+	}
+
+	static List<String> readLines(File compressedStationFile) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(
+				new FileInputStream(compressedStationFile)), "ISO-8859-1"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+		return lines;
+	}
+}
@@ -0,0 +1,102 @@
+package org.fogbowcloud.sebal.parsers.plugins;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestStationCatalog {
+
+	private File catalogDir;
+
+	@Before
+	public void setUp() {
+		catalogDir = new File(System.getProperty("java.io.tmpdir"),
+				"sebal-station-catalog-" + System.nanoTime());
+		catalogDir.mkdirs();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(catalogDir);
+	}
+
+	@Test
+	public void testCompiledCatalogMatchesCSV() throws IOException {
+		// set up
+		File csvFile = new File(catalogDir, "2002-stations.csv");
+		FileUtils.write(csvFile, "827910;-7.10;-37.26\n010010;70.933;-8.667\nbroken\n", "UTF-8");
+		File compiledFile = new File(catalogDir, "2002-stations.csv.bin");
+
+		// exercise
+		StationCatalog catalog = StationCatalog.fromCSV(csvFile);
+		catalog.write(compiledFile, csvFile);
+		StationCatalog mappedCatalog = StationCatalog.map(compiledFile, csvFile);
+
+		// expect
+		Assert.assertEquals(2, catalog.size());
+		Assert.assertNotNull(mappedCatalog);
+		Assert.assertEquals(2, mappedCatalog.size());
+		Assert.assertEquals("827910", mappedCatalog.getIdAsString(0));
+		Assert.assertEquals("010010", mappedCatalog.getIdAsString(1));
+		Assert.assertEquals(-7.10, mappedCatalog.getLatitude(0), 0);
+		Assert.assertEquals(-8.667, mappedCatalog.getLongitude(1), 0);
+	}
+
+	@Test
+	public void testAlphanumericIdsAreKept() throws IOException {
+		// set up
+		File csvFile = new File(catalogDir, "2002-stations.csv");
+		FileUtils.write(csvFile, "827910;-7.10;-37.26\nA00023;-7.20;-37.30\n010010;70.933;-8.667\n",
+				"UTF-8");
+		File compiledFile = new File(catalogDir, "2002-stations.csv.bin");
+
+		// exercise
+		StationCatalog catalog = StationCatalog.fromCSV(csvFile);
+		catalog.write(compiledFile, csvFile);
+		StationCatalog mappedCatalog = StationCatalog.map(compiledFile, csvFile);
+
+		// expect
+		Assert.assertEquals(3, catalog.size());
+		Assert.assertEquals("A00023", catalog.getIdAsString(1));
+		Assert.assertNotNull(mappedCatalog);
+		Assert.assertEquals(3, mappedCatalog.size());
+		Assert.assertEquals("827910", mappedCatalog.getIdAsString(0));
+		Assert.assertEquals("A00023", mappedCatalog.getIdAsString(1));
+		Assert.assertEquals(-1, mappedCatalog.getId(1));
+		Assert.assertEquals("010010", mappedCatalog.getIdAsString(2));
+		Assert.assertEquals(-7.20, mappedCatalog.getLatitude(1), 0);
+		Assert.assertEquals("A00023", new StationIndex(mappedCatalog).nearest(-7.20, -37.30, 1).get(0)
+				.optString("id"));
+	}
+
+	@Test
+	public void testCompiledCatalogIsIgnoredWhenCSVChanges() throws IOException {
+		// set up
+		File csvFile = new File(catalogDir, "2002-stations.csv");
+		FileUtils.write(csvFile, "827910;-7.10;-37.26\n", "UTF-8");
+		File compiledFile = new File(catalogDir, "2002-stations.csv.bin");
+		StationCatalog.fromCSV(csvFile).write(compiledFile, csvFile);
+
+		// exercise
+		FileUtils.write(csvFile, "827910;-7.10;-37.26\n825790;-5.05;-42.82\n", "UTF-8");
+
+		// expect
+		Assert.assertNull(StationCatalog.map(compiledFile, csvFile));
+	}
+
+	@Test
+	public void testCatalogFromBundledJSON() throws IOException {
+		// exercise
+		StationCatalog catalog = StationCatalog.fromJSON(new File("stations.json"));
+
+		// expect
+		Assert.assertTrue(catalog.size() > 0);
+		Assert.assertNotNull(new StationIndex(catalog).nearest(-7.11, -34.86, 1).get(0)
+				.optString("id"));
+	}
+}
@@ -0,0 +1,130 @@
+package org.fogbowcloud.sebal.parsers.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.fogbowcloud.sebal.parsers.plugins.ftp.FTPStationOperator;
+import org.json.JSONArray;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class TestStationCatalogCache {
+
+	private static final String CATALOG = "827910;-7.10;-37.26\n825790;-5.05;-42.82\n";
+	private static final String ETAG = "\"catalog-v1\"";
+
+	private HttpServer server;
+	private AtomicInteger requests = new AtomicInteger();
+	private AtomicInteger fullResponses = new AtomicInteger();
+	private Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+	private File cacheDir;
+
+	@Before
+	public void setUp() throws IOException {
+		cacheDir = new File(System.getProperty("java.io.tmpdir"),
+				"sebal-catalog-cache-" + System.nanoTime());
+		cacheDir.mkdirs();
+
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				requests.incrementAndGet();
+				clientPorts.add(exchange.getRemoteAddress().getPort());
+				if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+					exchange.sendResponseHeaders(304, -1);
+				} else {
+					fullResponses.incrementAndGet();
+					byte[] body = CATALOG.getBytes("UTF-8");
+					exchange.getResponseHeaders().add("ETag", ETAG);
+					exchange.sendResponseHeaders(200, body.length);
+					OutputStream out = exchange.getResponseBody();
+					out.write(body);
+					out.close();
+				}
+				exchange.close();
+			}
+		});
+		server.start();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		server.stop(0);
+		FileUtils.deleteDirectory(cacheDir);
+	}
+
+	@Test
+	public void testRevalidateDownloadsOnceAndThenGetsNotModified() throws IOException {
+		// set up
+		Properties properties = new Properties();
+		properties.setProperty(StationOperatorConstants.STATION_CATALOG_TTL_HOURS, "0");
+		StationCatalogCache catalogCache = new StationCatalogCache(properties);
+		String catalogFilePath = cacheDir.getPath() + File.separator + "2002-stations.csv";
+
+		// exercise, as two jobs would, each one with its own cache
+		boolean firstRevalidation = catalogCache.revalidate(catalogFilePath, serverUrl());
+		boolean secondRevalidation = new StationCatalogCache(properties).revalidate(
+				catalogFilePath, serverUrl());
+
+		// expect
+		Assert.assertTrue(firstRevalidation);
+		Assert.assertTrue(secondRevalidation);
+		Assert.assertEquals(2, requests.get());
+		Assert.assertEquals(1, fullResponses.get());
+		// both revalidations went through the same pooled connection
+		Assert.assertEquals(1, clientPorts.size());
+		Assert.assertEquals(CATALOG, FileUtils.readFileToString(new File(catalogFilePath), "UTF-8"));
+		Assert.assertFalse(catalogCache.isFresh(catalogFilePath));
+	}
+
+	@Test
+	public void testRevalidateFailsWhenServerIsUnreachable() throws IOException {
+		// set up
+		StationCatalogCache catalogCache = new StationCatalogCache(new Properties());
+		String catalogFilePath = cacheDir.getPath() + File.separator + "2002-stations.csv";
+		String url = serverUrl();
+		server.stop(0);
+
+		// exercise and expect
+		Assert.assertFalse(catalogCache.revalidate(catalogFilePath, url));
+		Assert.assertFalse(new File(catalogFilePath).exists());
+	}
+
+	@Test
+	public void testWarmRunMakesNoCatalogRequests() {
+		// set up
+		Properties properties = new Properties();
+		properties.setProperty(StationOperatorConstants.STATIONS_CSV_FROM_YEAR_FILE_PATH,
+				cacheDir.getPath());
+		properties.setProperty(StationOperatorConstants.STATION_CSV_SERVER_URL,
+				"http://localhost:" + server.getAddress().getPort());
+
+		// exercise
+		JSONArray coldStations = new FTPStationOperator(properties).getStations("2002");
+		JSONArray warmStations = new FTPStationOperator(properties).getStations("2002");
+
+		// expect
+		Assert.assertEquals(2, coldStations.length());
+		Assert.assertEquals(2, warmStations.length());
+		Assert.assertEquals(1, requests.get());
+	}
+
+	private String serverUrl() {
+		return "http://localhost:" + server.getAddress().getPort() + "/2002/2002-stations.csv";
+	}
+}
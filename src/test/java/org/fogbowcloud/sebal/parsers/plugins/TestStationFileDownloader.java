@@ -0,0 +1,277 @@
+package org.fogbowcloud.sebal.parsers.plugins;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class TestStationFileDownloader {
+
+	private static final int FILES = 30;
+	private static final String CONTENT = "0130827910999992002012612004-07100-037260FM-12";
+
+	private HttpServer server;
+	private Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+	private File downloadDir;
+
+	@Before
+	public void setUp() throws IOException {
+		downloadDir = new File(System.getProperty("java.io.tmpdir"),
+				"sebal-downloads-" + System.nanoTime());
+		downloadDir.mkdirs();
+
+		// otherwise the stand-in server delays keep-alive responses on Nagle
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				clientPorts.add(exchange.getRemoteAddress().getPort());
+				if (exchange.getRequestURI().getPath().contains("missing")) {
+					exchange.sendResponseHeaders(404, -1);
+				} else {
+					byte[] body = (CONTENT + exchange.getRequestURI().getPath()).getBytes("UTF-8");
+					exchange.sendResponseHeaders(200, body.length);
+					OutputStream out = exchange.getResponseBody();
+					out.write(body);
+					out.close();
+				}
+				exchange.close();
+			}
+		});
+		server.start();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		server.stop(0);
+		FileUtils.deleteDirectory(downloadDir);
+	}
+
+	@Test
+	public void testHttpDownloadsReuseConnections() throws IOException {
+		// set up
+		StationFileDownloader downloader = new StationFileDownloader(new Properties());
+
+		// exercise
+		for (int i = 0; i < FILES; i++) {
+			Assert.assertTrue(downloader.download(url("/2002/" + i + "-99999-2002.gz"),
+					new File(downloadDir, i + ".gz")));
+		}
+		downloader.close();
+
+		// expect
+		Assert.assertEquals(1, clientPorts.size());
+		Assert.assertEquals(CONTENT + "/2002/7-99999-2002.gz",
+				FileUtils.readFileToString(new File(downloadDir, "7.gz"), "UTF-8"));
+	}
+
+	@Test
+	public void testHttpDownloadFailsOnMissingFile() {
+		// set up
+		StationFileDownloader downloader = new StationFileDownloader(new Properties());
+		File destination = new File(downloadDir, "missing.gz");
+
+		// exercise and expect
+		Assert.assertFalse(downloader.download(url("/2002/missing.gz"), destination));
+		Assert.assertFalse(destination.exists());
+		downloader.close();
+	}
+
+	@Test
+	public void testOperatorsShareDownloaderOfSameConfiguration() {
+		// set up
+		Properties properties = new Properties();
+		Properties otherProperties = new Properties();
+		otherProperties.setProperty(StationOperatorConstants.STATION_DOWNLOAD_MAX_CONNECTIONS, "2");
+
+		// exercise
+		StationFileDownloader downloader = StationFileDownloader.getShared(properties);
+
+		// expect
+		Assert.assertSame(downloader, StationFileDownloader.getShared(new Properties()));
+		Assert.assertNotSame(downloader, StationFileDownloader.getShared(otherProperties));
+		Assert.assertEquals(2, StationFileDownloader.getShared(otherProperties).getMaxConnections());
+	}
+
+	@Test
+	public void testFtpDownloadsReuseControlConnection() throws Exception {
+		// set up
+		FakeFtpServer ftpServer = new FakeFtpServer();
+		ftpServer.start();
+		StationFileDownloader downloader = new StationFileDownloader(new Properties());
+		String baseUrl = "ftp://localhost:" + ftpServer.getPort() + "/pub/data/noaa/2002/";
+
+		// exercise
+		boolean first = downloader.download(baseUrl + "827910-99999-2002.gz",
+				new File(downloadDir, "first.gz"));
+		boolean second = downloader.download(baseUrl + "825790-99999-2002.gz",
+				new File(downloadDir, "second.gz"));
+		boolean missing = downloader.download(baseUrl + "missing-99999-2002.gz",
+				new File(downloadDir, "missing.gz"));
+		downloader.close();
+		ftpServer.stop();
+
+		// expect
+		Assert.assertTrue(first);
+		Assert.assertTrue(second);
+		Assert.assertFalse(missing);
+		Assert.assertEquals(1, ftpServer.controlConnections.get());
+		Assert.assertEquals(CONTENT + "/pub/data/noaa/2002/825790-99999-2002.gz",
+				FileUtils.readFileToString(new File(downloadDir, "second.gz"), "UTF-8"));
+	}
+
+	@Test
+	public void testPooledDownloadsAreFasterThanWget() throws Exception {
+		Assume.assumeTrue(new File("/usr/bin/wget").exists());
+
+		// set up
+		StationFileDownloader downloader = new StationFileDownloader(new Properties());
+		Assert.assertTrue(downloader.download(url("/warm-up"), new File(downloadDir, "warm-up")));
+
+		// exercise
+		long wgetStart = System.nanoTime();
+		for (int i = 0; i < FILES; i++) {
+			Process process = new ProcessBuilder("wget", "-q", "-O",
+					new File(downloadDir, "wget-" + i + ".gz").getAbsolutePath(),
+					url("/2002/" + i + "-99999-2002.gz")).start();
+			Assert.assertEquals(0, process.waitFor());
+		}
+		long wgetTime = System.nanoTime() - wgetStart;
+
+		long pooledStart = System.nanoTime();
+		for (int i = 0; i < FILES; i++) {
+			Assert.assertTrue(downloader.download(url("/2002/" + i + "-99999-2002.gz"),
+					new File(downloadDir, i + ".gz")));
+		}
+		long pooledTime = System.nanoTime() - pooledStart;
+		downloader.close();
+
+		// expect
+		Assert.assertTrue("pooled [" + pooledTime + "]ns, wget [" + wgetTime + "]ns",
+				pooledTime < wgetTime);
+	}
+
+	private String url(String path) {
+		return "http://localhost:" + server.getAddress().getPort() + path;
+	}
+
+	/**
+	 * Serves any RETR path whose name does not contain "missing", in passive
+	 * mode, one control connection at a time.
+	 */
+	private static class FakeFtpServer implements Runnable {
+
+		private final ServerSocket controlSocket;
+		private final AtomicInteger controlConnections = new AtomicInteger();
+		private Thread thread;
+
+		FakeFtpServer() throws IOException {
+			controlSocket = new ServerSocket(0);
+		}
+
+		int getPort() {
+			return controlSocket.getLocalPort();
+		}
+
+		void start() {
+			thread = new Thread(this);
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		void stop() throws Exception {
+			controlSocket.close();
+			thread.join(5000);
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					Socket control = controlSocket.accept();
+					controlConnections.incrementAndGet();
+					serve(control);
+				}
+			} catch (IOException e) {
+				// server stopped
+			}
+		}
+
+		private void serve(Socket control) throws IOException {
+			BufferedReader reader = new BufferedReader(
+					new InputStreamReader(control.getInputStream(), "ISO-8859-1"));
+			Writer writer = new OutputStreamWriter(control.getOutputStream(), "ISO-8859-1");
+			ServerSocket dataSocket = null;
+			try {
+				reply(writer, "220-Fake ftp\r\n220 ready");
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (line.startsWith("USER")) {
+						reply(writer, "331 password please");
+					} else if (line.startsWith("PASS")) {
+						reply(writer, "230 logged in");
+					} else if (line.startsWith("TYPE")) {
+						reply(writer, "200 binary");
+					} else if (line.startsWith("PASV")) {
+						dataSocket = new ServerSocket(0);
+						int port = dataSocket.getLocalPort();
+						reply(writer, "227 Entering Passive Mode (10,0,0,1," + port / 256 + ","
+								+ port % 256 + ")");
+					} else if (line.startsWith("RETR")) {
+						String path = line.substring(5);
+						Socket data = dataSocket.accept();
+						if (path.contains("missing")) {
+							data.close();
+							reply(writer, "550 not found");
+						} else {
+							reply(writer, "150 opening");
+							OutputStream out = data.getOutputStream();
+							out.write((CONTENT + path).getBytes("UTF-8"));
+							data.close();
+							reply(writer, "226 done");
+						}
+						dataSocket.close();
+					} else if (line.startsWith("QUIT")) {
+						reply(writer, "221 bye");
+						break;
+					} else {
+						reply(writer, "502 not implemented");
+					}
+				}
+			} finally {
+				control.close();
+				if (dataSocket != null) {
+					dataSocket.close();
+				}
+			}
+		}
+
+		private void reply(Writer writer, String reply) throws IOException {
+			writer.write(reply + "\r\n");
+			writer.flush();
+		}
+	}
+}
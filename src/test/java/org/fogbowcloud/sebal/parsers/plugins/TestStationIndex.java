@@ -0,0 +1,181 @@
+package org.fogbowcloud.sebal.parsers.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestStationIndex {
+
+	@Test
+	public void testWithinRadius() {
+		// set up
+		JSONObject stationOne = new JSONObject();
+		stationOne.put("id", "82294");
+		stationOne.put("lon", "-44.3068");
+		stationOne.put("lat", "-2.53073");
+
+		JSONObject stationTwo = new JSONObject();
+		stationTwo.put("id", "83096");
+		stationTwo.put("lon", "-46.20");
+		stationTwo.put("lat", "-3.00");
+
+		JSONObject stationThree = new JSONObject();
+		stationThree.put("id", "80000");
+		stationThree.put("lon", "-34.861");
+		stationThree.put("lat", "-7.11532");
+
+		JSONArray stations = new JSONArray();
+		stations.put(stationOne);
+		stations.put(stationTwo);
+		stations.put(stationThree);
+
+		List<String> expectedStations = new ArrayList<String>();
+		expectedStations.add("83096");
+		expectedStations.add("82294");
+
+		StationIndex stationIndex = new StationIndex(StationCatalog.fromJSON(stations));
+
+		// exercise
+		List<JSONObject> nearStations = stationIndex.withinRadius(-3.40, -45.20, 500);
+
+		// expect
+		Assert.assertEquals(expectedStations, ids(nearStations));
+		Assert.assertEquals(StationIndex.distance(-3.40, -45.20, -3.00, -46.20),
+				nearStations.get(0).optDouble("distance"), 0);
+	}
+
+	@Test
+	public void testNearestAcrossAntimeridian() {
+		// set up
+		JSONObject westStation = new JSONObject();
+		westStation.put("id", "1");
+		westStation.put("lon", "179.9");
+		westStation.put("lat", "0.0");
+
+		JSONObject eastStation = new JSONObject();
+		eastStation.put("id", "2");
+		eastStation.put("lon", "-179.8");
+		eastStation.put("lat", "0.0");
+
+		JSONObject farStation = new JSONObject();
+		farStation.put("id", "3");
+		farStation.put("lon", "170.0");
+		farStation.put("lat", "0.0");
+
+		JSONArray stations = new JSONArray();
+		stations.put(farStation);
+		stations.put(eastStation);
+		stations.put(westStation);
+
+		StationIndex stationIndex = new StationIndex(StationCatalog.fromJSON(stations));
+
+		// exercise
+		List<JSONObject> nearStations = stationIndex.nearest(0.0, 179.95, 2);
+
+		// expect
+		Assert.assertEquals(2, nearStations.size());
+		Assert.assertEquals("1", nearStations.get(0).optString("id"));
+		Assert.assertEquals("2", nearStations.get(1).optString("id"));
+	}
+
+	@Test
+	public void testQueriesMatchLinearScan() {
+		// set up
+		Random random = new Random(42);
+		JSONArray stations = new JSONArray();
+		for (int i = 0; i < 2000; i++) {
+			JSONObject station = new JSONObject();
+			station.put("id", String.valueOf(i));
+			station.put("lat", String.valueOf(random.nextDouble() * 180 - 90));
+			station.put("lon", String.valueOf(random.nextDouble() * 360 - 180));
+			stations.put(station);
+		}
+
+		StationIndex stationIndex = new StationIndex(StationCatalog.fromJSON(stations));
+
+		for (int query = 0; query < 50; query++) {
+			double lat = random.nextDouble() * 180 - 90;
+			double lon = random.nextDouble() * 360 - 180;
+			List<String> expectedIds = linearScan(stations, lat, lon);
+
+			// exercise
+			List<JSONObject> withinRadius = stationIndex.withinRadius(lat, lon, 500);
+			List<JSONObject> nearest = stationIndex.nearest(lat, lon, 5);
+
+			// expect
+			List<String> expectedWithinRadius = new ArrayList<String>();
+			for (String id : expectedIds) {
+				JSONObject station = stations.optJSONObject(Integer.parseInt(id));
+				if (StationIndex.distance(lat, lon, station.optDouble("lat"),
+						station.optDouble("lon")) <= 500) {
+					expectedWithinRadius.add(id);
+				}
+			}
+			Assert.assertEquals(expectedWithinRadius, ids(withinRadius));
+			Assert.assertEquals(expectedIds.subList(0, 5), ids(nearest));
+			Assert.assertEquals(expectedWithinRadius,
+					ids(stationIndex.nearestFirst(lat, lon, 500)));
+		}
+	}
+
+	@Test
+	public void testNearestFirstYieldsOnDemand() {
+		// set up
+		JSONArray stations = new JSONArray();
+		for (int i = 0; i < 100; i++) {
+			JSONObject station = new JSONObject();
+			station.put("id", String.valueOf(i));
+			station.put("lat", "0.0");
+			station.put("lon", String.valueOf(i * 0.1));
+			stations.put(station);
+		}
+
+		StationIndex stationIndex = new StationIndex(StationCatalog.fromJSON(stations));
+
+		// exercise
+		Iterator<JSONObject> nearStations = stationIndex.nearestFirst(0.0, 0.0, 50);
+
+		// expect
+		Assert.assertEquals("0", nearStations.next().optString("id"));
+		Assert.assertEquals("1", nearStations.next().optString("id"));
+		Assert.assertEquals(StationIndex.distance(0.0, 0.0, 0.0, 0.2),
+				nearStations.next().optDouble("distance"), 0);
+		Assert.assertEquals(2, ids(nearStations).size());
+	}
+
+	private List<String> linearScan(JSONArray stations, final double lat, final double lon) {
+		List<JSONObject> ordered = new ArrayList<JSONObject>();
+		for (int i = 0; i < stations.length(); i++) {
+			ordered.add(stations.optJSONObject(i));
+		}
+		Collections.sort(ordered, new Comparator<JSONObject>() {
+			@Override
+			public int compare(JSONObject o1, JSONObject o2) {
+				return Double.compare(
+						StationIndex.distance(lat, lon, o1.optDouble("lat"), o1.optDouble("lon")),
+						StationIndex.distance(lat, lon, o2.optDouble("lat"), o2.optDouble("lon")));
+			}
+		});
+		return ids(ordered);
+	}
+
+	private List<String> ids(List<JSONObject> stations) {
+		return ids(stations.iterator());
+	}
+
+	private List<String> ids(Iterator<JSONObject> stations) {
+		List<String> ids = new ArrayList<String>();
+		while (stations.hasNext()) {
+			ids.add(stations.next().optString("id"));
+		}
+		return ids;
+	}
+}
@@ -0,0 +1,132 @@
+package org.fogbowcloud.sebal.parsers.plugins;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.json.JSONArray;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestStationRecordStore {
+
+	private static final File STATION_FILE = new File("src/test/resource/827910-99999-2002.gz");
+	private static final String STATION_FILE_NAME = "827910-99999-2002";
+
+	private File storeDir;
+
+	@Before
+	public void setUp() {
+		storeDir = new File(System.getProperty("java.io.tmpdir"),
+				"sebal-record-store-" + System.nanoTime());
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(storeDir);
+	}
+
+	@Test
+	public void testStoredDaysMatchParsedDays() throws IOException {
+		// set up
+		StationRecordStore store = new StationRecordStore(storeDir);
+		Assert.assertFalse(store.contains(STATION_FILE_NAME, "20020126"));
+
+		// exercise
+		store.ingest(STATION_FILE, STATION_FILE_NAME);
+
+		// expect
+		Assert.assertTrue(store.contains(STATION_FILE_NAME, "20021231"));
+
+		SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd");
+		Calendar day = Calendar.getInstance();
+		day.clear();
+		day.set(2002, Calendar.JANUARY, 1);
+		while (day.get(Calendar.YEAR) == 2002) {
+			String date = format.format(day.getTime());
+			JSONArray expected = ISDHourlyDataParser.readHourlyData(STATION_FILE, date);
+			Assert.assertEquals(date, expected.toString(),
+					store.read(STATION_FILE_NAME, date).toString());
+			day.add(Calendar.DAY_OF_MONTH, 1);
+		}
+		Assert.assertEquals(0, store.read(STATION_FILE_NAME, "20030126").length());
+	}
+
+	@Test
+	public void testStoredWindowMatchesParsedWindow() throws IOException {
+		// set up
+		StationRecordStore store = new StationRecordStore(storeDir);
+		store.ingest(STATION_FILE, STATION_FILE_NAME);
+
+		// exercise
+		JSONArray window = store.read(STATION_FILE_NAME, "20020125", "20020303");
+
+		// expect
+		Assert.assertEquals(
+				ISDHourlyDataParser.readHourlyData(STATION_FILE, "20020125", "20020303").toString(),
+				window.toString());
+		Assert.assertTrue(window.length() > store.read(STATION_FILE_NAME, "20020126").length());
+	}
+
+	@Test
+	public void testIngestDirectory() throws IOException {
+		// set up
+		File isdDir = new File(storeDir, "isd" + File.separator + "2002");
+		FileUtils.copyFileToDirectory(STATION_FILE, isdDir);
+		StationRecordStore store = new StationRecordStore(new File(storeDir, "store"));
+
+		// exercise
+		int ingested = store.ingestDirectory(new File(storeDir, "isd"));
+
+		// expect
+		Assert.assertEquals(1, ingested);
+		Assert.assertEquals(3, store.read(STATION_FILE_NAME, "20020126").length());
+	}
+
+	@Test
+	public void testCurrentYearIsContainedUpToLastIngestedDay() throws IOException {
+		// set up
+		String year = String.valueOf(Calendar.getInstance().get(Calendar.YEAR));
+		String stationFileName = "827910-99999-" + year;
+		File currentYearFile = new File(storeDir, stationFileName + ".gz");
+		storeDir.mkdirs();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(
+				new FileInputStream(STATION_FILE))));
+		Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(
+				currentYearFile)));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				// only the January 2002 records, moved to the current year
+				if (line.length() >= ISDHourlyDataParser.MIN_RECORD_LENGTH
+						&& line.startsWith("200201", ISDHourlyDataParser.DATE_BEGIN)) {
+					writer.write(line.substring(0, ISDHourlyDataParser.DATE_BEGIN) + year
+							+ line.substring(ISDHourlyDataParser.DATE_BEGIN + 4) + "\n");
+				}
+			}
+		} finally {
+			reader.close();
+			writer.close();
+		}
+		StationRecordStore store = new StationRecordStore(storeDir);
+
+		// exercise
+		store.ingest(currentYearFile, stationFileName);
+
+		// expect
+		Assert.assertTrue(store.contains(stationFileName, year + "0126"));
+		Assert.assertFalse(store.contains(stationFileName, year + "0215"));
+	}
+}
@@ -0,0 +1,68 @@
+package org.fogbowcloud.sebal.parsers.plugins;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestStationValidationCache {
+
+	private static final List<String> MAIN_HOURS = Arrays.asList("1200", "1300");
+
+	private File cacheFile;
+	private Properties properties;
+
+	@Before
+	public void setUp() {
+		cacheFile = new File(System.getProperty("java.io.tmpdir"),
+				"sebal-invalid-stations-" + System.nanoTime());
+		properties = new Properties();
+		properties.setProperty(StationOperatorConstants.STATION_INVALID_CACHE_PATH,
+				cacheFile.getPath());
+	}
+
+	@After
+	public void tearDown() {
+		cacheFile.delete();
+	}
+
+	@Test
+	public void testInvalidStationsSurviveRestart() {
+		// set up
+		StationValidationCache validationCache = new StationValidationCache(properties);
+
+		// exercise
+		validationCache.markInvalid("825790", "20020126", "20020126", MAIN_HOURS);
+		StationValidationCache reloadedCache = new StationValidationCache(properties);
+
+		// expect
+		Assert.assertTrue(reloadedCache.isKnownInvalid("825790", "20020126", "20020126",
+				MAIN_HOURS));
+		Assert.assertFalse(reloadedCache.isKnownInvalid("825790", "20020126", "20020126",
+				Arrays.asList("0600", "0700")));
+		Assert.assertFalse(reloadedCache.isKnownInvalid("825780", "20020126", "20020126",
+				MAIN_HOURS));
+	}
+
+	@Test
+	public void testInvalidStationsExpire() {
+		// set up
+		properties.setProperty(StationOperatorConstants.STATION_INVALID_CACHE_TTL_HOURS, "0");
+		StationValidationCache validationCache = new StationValidationCache(properties);
+
+		// exercise
+		validationCache.markInvalid("825790", "20020126", "20020126", MAIN_HOURS);
+
+		// expect
+		Assert.assertFalse(validationCache.isKnownInvalid("825790", "20020126", "20020126",
+				MAIN_HOURS));
+		Assert.assertFalse(new StationValidationCache(properties).isKnownInvalid("825790",
+				"20020126", "20020126", MAIN_HOURS));
+		Assert.assertEquals(0, cacheFile.length());
+	}
+}
@@ -0,0 +1,69 @@
+package org.fogbowcloud.sebal.parsers.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestStationWindow {
+
+	@Test
+	public void testReadsWindowWithinAYear() throws Exception {
+		// set up
+		final List<String> reads = new ArrayList<String>();
+		StationWindow.YearReader reader = new StationWindow.YearReader() {
+			@Override
+			public JSONArray read(String year, String beginDate, String endDate) {
+				reads.add(year + ":" + beginDate + "-" + endDate);
+				return new JSONArray().put(beginDate).put(endDate);
+			}
+		};
+
+		// exercise
+		JSONArray records = StationWindow.read(reader, "20020125", "20020127");
+
+		// expect
+		Assert.assertEquals("[\"20020125\",\"20020127\"]", records.toString());
+		Assert.assertEquals(Collections.singletonList("2002:20020125-20020127"), reads);
+	}
+
+	@Test
+	public void testReadsBothYearsOfAWindowCrossingNewYear() throws Exception {
+		// set up
+		final List<String> reads = Collections.synchronizedList(new ArrayList<String>());
+		StationWindow.YearReader reader = new StationWindow.YearReader() {
+			@Override
+			public JSONArray read(String year, String beginDate, String endDate) {
+				reads.add(year + ":" + beginDate + "-" + endDate);
+				return new JSONArray().put(beginDate).put(endDate);
+			}
+		};
+
+		// exercise
+		JSONArray records = StationWindow.read(reader, "20021230", "20030102");
+
+		// expect
+		Assert.assertEquals("[\"20021230\",\"20021231\",\"20030101\",\"20030102\"]",
+				records.toString());
+		Assert.assertEquals(2, reads.size());
+		Assert.assertTrue(reads.contains("2002:20021230-20021231"));
+		Assert.assertTrue(reads.contains("2003:20030101-20030102"));
+	}
+
+	@Test
+	public void testWindowIsNotFetchedWhenAYearIsNot() throws Exception {
+		// set up
+		StationWindow.YearReader reader = new StationWindow.YearReader() {
+			@Override
+			public JSONArray read(String year, String beginDate, String endDate) {
+				return year.equals("2003") ? null : new JSONArray().put(beginDate);
+			}
+		};
+
+		// exercise and expect
+		Assert.assertNull(StationWindow.read(reader, "20021230", "20030102"));
+	}
+}
@@ -17,6 +17,7 @@ import java.util.Properties;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.http.HttpException;
+import org.fogbowcloud.sebal.parsers.plugins.StationCatalog;
 import org.fogbowcloud.sebal.parsers.plugins.StationOperatorConstants;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -66,16 +67,16 @@ public class TestFTPStationOperator {
 		stations.put(stationTwo);
 		stations.put(stationThree);
 		
-		List<JSONObject> expectedStation = new ArrayList<JSONObject>();
-		expectedStation.add(stationTwo);
-		expectedStation.add(stationOne);
+		List<String> expectedStation = new ArrayList<String>();
+		expectedStation.add("83096");
+		expectedStation.add("82294");
 		
 		FTPStationOperator stationOperator = spy(new FTPStationOperator(properties));
-		doReturn(stations).when(stationOperator).getStations(year);
+		doReturn(StationCatalog.fromJSON(stations)).when(stationOperator).getStationCatalog(year);
 		
 		List<JSONObject> chosenStation = stationOperator.findNearestStation(date, lat, lon, numberOfDays);
 		
-		Assert.assertEquals(expectedStation, chosenStation);
+		Assert.assertEquals(expectedStation, ids(chosenStation));
 	}
 	
 	@Test
@@ -106,7 +107,7 @@ public class TestFTPStationOperator {
 		List<JSONObject> expectedStation = new ArrayList<JSONObject>();
 		
 		FTPStationOperator stationOperator = spy(new FTPStationOperator(properties));
-		doReturn(stations).when(stationOperator).getStations(year);
+		doReturn(StationCatalog.fromJSON(stations)).when(stationOperator).getStationCatalog(year);
 		
 		List<JSONObject> chosenStation = stationOperator.findNearestStation(date, lat, lon, numberOfDays);
 		
@@ -177,5 +178,17 @@ public class TestFTPStationOperator {
 		
 		// expect
 		Assert.assertNotNull(stations);
+		
+		// tear down
+		new File(localStationCSVFilePath).delete();
+		new File(localStationCSVFilePath + ".bin").delete();
+	}
+
+	private List<String> ids(List<JSONObject> stations) {
+		List<String> ids = new ArrayList<String>();
+		for (JSONObject station : stations) {
+			ids.add(station.optString("id"));
+		}
+		return ids;
 	}
 }
@@ -17,6 +17,7 @@ import java.util.Properties;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.http.HttpException;
+import org.fogbowcloud.sebal.parsers.plugins.StationCatalog;
 import org.fogbowcloud.sebal.parsers.plugins.StationOperatorConstants;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -32,7 +33,7 @@ public class TestSwiftStationOperator {
 		Properties properties = mock(Properties.class);
 		String year = "2002";
 		int numberOfDays = 0;
-		double lat = -3.40;
+		double lat = -3.40; // Maranhao - Moncao
 		double lon = -45.20;
 		
 		String stringDate = "26-01-2002";		
@@ -43,33 +44,43 @@ public class TestSwiftStationOperator {
 		
 		JSONObject stationOne = new JSONObject();
 		stationOne.put("id", "82294");
-		stationOne.put("lon", "-40.13333333");
+		stationOne.put("lon", "-44.3068");
 		stationOne.put("altitude", "16.5");
-		stationOne.put("name", "ACARAU - CE");
-		stationOne.put("lat", "-2.88333333");
+		stationOne.put("name", "SAO LUIS - MA");
+		stationOne.put("lat", "-2.53073");
 		
 		JSONObject stationTwo = new JSONObject();
 		stationTwo.put("id", "83096");
-		stationTwo.put("lon", "-37.05");
+		stationTwo.put("lon", "-46.20");
 		stationTwo.put("altitude", "4.72");
-		stationTwo.put("name", "ARACAJU - SE");
-		stationTwo.put("lat", "-10.95");
+		stationTwo.put("name", "ALTO TURIACU - MA");
+		stationTwo.put("lat", "-3.00");
+		
+		JSONObject stationThree = new JSONObject();
+		stationThree.put("id", "80000");
+		stationThree.put("lon", "-34.861");
+		stationThree.put("altitude", "16.5");
+		stationThree.put("name", "JOAO PESSOA - PB");
+		stationThree.put("lat", "-7.11532");
 		
 		JSONArray stations = new JSONArray();
 		stations.put(stationOne);
 		stations.put(stationTwo);
+		stations.put(stationThree);
 		
-		List<JSONObject> expectedStation = new ArrayList<JSONObject>();
-		expectedStation.add(stationOne);
+		// every station within the region, nearest first, like the ftp operator
+		List<String> expectedStation = new ArrayList<String>();
+		expectedStation.add(stationTwo.optString("id"));
+		expectedStation.add(stationOne.optString("id"));
 		
 		SwiftStationOperator stationOperator = spy(new SwiftStationOperator(properties));
-		doReturn(stations).when(stationOperator).getStations(year);
+		doReturn(StationCatalog.fromJSON(stations)).when(stationOperator).getStationCatalog(year);
 		
 		// exercise
 		List<JSONObject> chosenStation = stationOperator.findNearestStation(date, lat, lon, numberOfDays);
 		
 		// expect
-		Assert.assertEquals(expectedStation, chosenStation);
+		Assert.assertEquals(expectedStation, ids(chosenStation));
 	}
 	
 	@Test
@@ -136,5 +147,17 @@ public class TestSwiftStationOperator {
 		
 		// expect
 		Assert.assertNotNull(stations);
+		
+		// tear down
+		new File(localStationCSVFilePath).delete();
+		new File(localStationCSVFilePath + ".bin").delete();
+	}
+
+	private List<String> ids(List<JSONObject> stations) {
+		List<String> ids = new ArrayList<String>();
+		for (JSONObject station : stations) {
+			ids.add(station.optString("id"));
+		}
+		return ids;
 	}
 }
@@ -0,0 +1,44 @@
+package org.fogbowcloud.sebal.parsers.plugins.swift;
+
+import java.security.GeneralSecurityException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestSwiftTempURLSigner {
+
+	private static final String OBJECT_PATH = "/swift/v1/sebal/2002/2002-stations.csv";
+
+	@Test
+	public void testSignsLikeSwiftTempURL() throws GeneralSecurityException {
+		// exercise and expect
+		Assert.assertEquals("a8b107fc15f02b62ad1d63381a6762d43a4d975d",
+				SwiftTempURLSigner.sign("mykey", "GET", 1440619048L, OBJECT_PATH));
+	}
+
+	@Test
+	public void testReusesEndpointUntilCloseToExpiration() throws GeneralSecurityException {
+		// set up
+		final long[] now = { 1440615448L };
+		SwiftTempURLSigner signer = new SwiftTempURLSigner("mykey", 3600) {
+			@Override
+			protected long now() {
+				return now[0];
+			}
+		};
+
+		// exercise
+		String first = signer.getEndpoint("GET", OBJECT_PATH);
+		now[0] += 3600 - 61;
+		String beforeRenewal = signer.getEndpoint("GET", OBJECT_PATH);
+		now[0] += 1;
+		String renewed = signer.getEndpoint("GET", OBJECT_PATH);
+
+		// expect
+		Assert.assertEquals(OBJECT_PATH + "?temp_url_sig=a8b107fc15f02b62ad1d63381a6762d43a4d975d"
+				+ "&temp_url_expires=1440619048", first);
+		Assert.assertSame(first, beforeRenewal);
+		Assert.assertEquals(OBJECT_PATH + "?temp_url_sig=fe010bc36bee98236b47cfdce48543cbf832bed8"
+				+ "&temp_url_expires=1440622588", renewed);
+	}
+}